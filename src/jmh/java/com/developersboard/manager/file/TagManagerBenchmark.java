@@ -0,0 +1,221 @@
+package com.developersboard.manager.file;
+
+import com.developersboard.manager.file.cache.ContentCache;
+import com.developersboard.manager.file.impl.FileTagManager;
+import com.developersboard.manager.file.io.Durability;
+import com.developersboard.manager.file.io.FileSync;
+import com.developersboard.manager.file.io.ParallelFileIo;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.manager.file.pack.PackStore;
+import com.developersboard.manager.file.persist.TagStore;
+import com.developersboard.manager.file.version.ContentVersions;
+import com.developersboard.shared.TaggedFile;
+import com.developersboard.shared.impl.DefaultTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the hot paths of {@link FileTagManager} against indexes of 500
+ * to one million files.
+ * <p>
+ * Only the files of the {@value #CAT_TAG} tag exist on disk, in a scratch
+ * directory of {@link TagManager#BASEDIR}; the others are only known to the
+ * index. Mutating operations are measured in pairs that undo each other, so
+ * that the index stays the same size throughout a run.
+ * <p>
+ * JMH takes a single thread count per run: use {@code ./gradlew jmh
+ * -PjmhIncludes=TagManagerBenchmark -PjmhThreads=N} for one count, or
+ * {@code ./gradlew jmhThreadSweep} for 1 to 64 threads through {@link #main}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagManagerBenchmark {
+
+    private static final String HOT_TAG = "hot";
+    private static final String CAT_TAG = "cat";
+    private static final String TOGGLED_TAG = "toggled";
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    @Param({"500", "10000", "100000", "1000000"})
+    private int fileCount;
+
+    /**
+     * Percentage of the files carrying {@value #HOT_TAG}, listed by listFilesByTag
+     */
+    @Param({"1"})
+    private int hotPercent;
+
+    /**
+     * Number of real files carrying {@value #CAT_TAG}, read and written by catAll and echoAll
+     */
+    @Param({"64"})
+    private int catFiles;
+
+    /**
+     * Whether catAll reads multi-version contents instead of locking the files
+     */
+    @Param({"false", "true"})
+    private boolean versioned;
+
+    /**
+     * How far echoAll forces the files it writes; FSYNC and GROUP_COMMIT are run with -p durability=...
+     */
+    @Param({"NONE"})
+    private Durability durability;
+
+    /**
+     * Whether catAll and echoAll read and write packed contents instead of plain files; run with -p packed=true
+     */
+    @Param({"false"})
+    private boolean packed;
+
+    private final AtomicLong tagNames = new AtomicLong();
+    private Path directory;
+    private String[] names;
+    private FileTagManager manager;
+    private ParallelFileIo io;
+    private PackStore pack;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory(Files.createDirectories(TagManager.BASEDIR), "jmh");
+        this.names = new String[this.fileCount];
+        var files = new ArrayList<Path>(this.fileCount);
+        for (int i = 0; i < this.fileCount; i++) {
+            var path = this.directory.resolve("f" + i);
+            if (i < this.catFiles) {
+                Files.writeString(path, "content of f" + i);
+            }
+            this.names[i] = path.toString();
+            files.add(path);
+        }
+
+        this.io = new ParallelFileIo(ParallelFileIo.DEFAULT_THREADS);
+        this.pack = new PackStore(this.packed, this.directory.resolve("pack"), PackStore.DEFAULT_MAX_FILE_BYTES,
+                PackStore.DEFAULT_SEGMENT_BYTES, PackStore.DEFAULT_COMPACT_SECONDS);
+        this.manager = new FileTagManager(new DefaultTag(TagManager.DEFAULT_TAG_NAME), new FileLockManager(), this.io,
+                new ContentCache(ContentCache.DEFAULT_MAX_BYTES), new ContentVersions(this.versioned), new TagStore(false, null, 0),
+                new FileSync(this.durability, this.io), this.pack);
+        this.manager.init(files);
+        this.manager.addTag(HOT_TAG);
+        this.manager.addTag(CAT_TAG);
+        this.manager.addTag(TOGGLED_TAG);
+        int hotStep = Math.max(1, 100 / this.hotPercent);
+        for (int i = 0; i < this.fileCount; i += hotStep) {
+            this.manager.tagFile(this.names[i], HOT_TAG);
+        }
+        for (int i = 0; i < Math.min(this.catFiles, this.fileCount); i++) {
+            this.manager.tagFile(this.names[i], CAT_TAG);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.io.close();
+        this.pack.close();
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Random file picked by each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class RandomFiles {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        String next(TagManagerBenchmark benchmark) {
+            return benchmark.names[this.random.nextInt(benchmark.fileCount)];
+        }
+    }
+
+    @Benchmark
+    public Object addTagThenDeleteTag() throws Exception {
+        var name = "tag" + this.tagNames.incrementAndGet();
+        this.manager.addTag(name);
+
+        return this.manager.deleteTag(name);
+    }
+
+    @Benchmark
+    public boolean tagFileThenRemoveTag(RandomFiles files) throws Exception {
+        var file = files.next(this);
+        this.manager.tagFile(file, TOGGLED_TAG);
+
+        return this.manager.removeTag(file, TOGGLED_TAG);
+    }
+
+    @Benchmark
+    public void listFilesByTag(Blackhole blackhole) throws Exception {
+        for (TaggedFile file : this.manager.listFilesByTag(HOT_TAG)) {
+            blackhole.consume(file.getName());
+        }
+    }
+
+    @Benchmark
+    public void getTags(RandomFiles files, Blackhole blackhole) throws Exception {
+        for (var tag : this.manager.getTags(files.next(this))) {
+            blackhole.consume(tag);
+        }
+    }
+
+    @Benchmark
+    public String catAllFiles() throws Exception {
+        return this.manager.catAllFiles(CAT_TAG);
+    }
+
+    @Benchmark
+    public void echoToAllFiles() throws Exception {
+        this.manager.echoToAllFiles(CAT_TAG, "echoed");
+    }
+
+    /**
+     * Runs the benchmarks once per thread count.
+     *
+     * @param args the thread counts, 1, 4, 16 and 64 by default
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        var threadCounts = args.length == 0 ? THREAD_COUNTS : Stream.of(args).mapToInt(Integer::parseInt).toArray();
+        for (int threads : threadCounts) {
+            var options = new OptionsBuilder()
+                    .include(TagManagerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.developersboard.manager.file.lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.InterruptedIOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares striped and per-file lock tables on single locks and on batches.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=FileLockManagerBenchmark}, and
+ * vary contention with {@code -PjmhThreads=N}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileLockManagerBenchmark {
+
+    private static final int BATCHES = 256;
+
+    @Param({"STRIPED", "PER_FILE"})
+    private LockMode mode;
+
+    @Param({"64", "1024", "16384"})
+    private int stripes;
+
+    @Param({"100000"})
+    private int fileCount;
+
+    @Param({"1", "64"})
+    private int batchSize;
+
+    private FileLockManager locks;
+
+    @Setup
+    public void setUp() {
+        this.locks = new FileLockManager(this.mode.newTable(this.stripes));
+    }
+
+    /**
+     * Pre-generated random batches, so that generating them is not measured.
+     */
+    @State(Scope.Thread)
+    public static class Batches {
+
+        private final RoaringBitmap[] batches = new RoaringBitmap[BATCHES];
+        private int next;
+
+        @Setup
+        public void setUp(FileLockManagerBenchmark benchmark) {
+            var random = new SplittableRandom();
+            for (int i = 0; i < BATCHES; i++) {
+                var batch = new RoaringBitmap();
+                while (batch.getCardinality() < benchmark.batchSize) {
+                    batch.add(random.nextInt(benchmark.fileCount));
+                }
+                this.batches[i] = batch;
+            }
+        }
+
+        RoaringBitmap next() {
+            var batch = this.batches[this.next];
+            this.next = (this.next + 1) % BATCHES;
+            return batch;
+        }
+    }
+
+    @Benchmark
+    public int writeLockBatch(Batches batches) throws InterruptedIOException {
+        try (var lockSet = this.locks.lockAll(batches.next(), true)) {
+            return lockSet.size();
+        }
+    }
+
+    @Benchmark
+    public int readLockBatch(Batches batches) throws InterruptedIOException {
+        try (var lockSet = this.locks.lockAll(batches.next(), false)) {
+            return lockSet.size();
+        }
+    }
+
+    @Benchmark
+    public long writeLockSingle(Batches batches) {
+        int fileId = batches.next().first();
+        long stamp = this.locks.lock(fileId, true);
+        this.locks.unlock(fileId, stamp, true);
+
+        return stamp;
+    }
+}
@@ -1,13 +1,29 @@
 package com.developersboard.config;
 
+import com.developersboard.manager.file.AsyncTagManager;
 import com.developersboard.manager.file.TagManager;
+import com.developersboard.manager.file.cache.ContentCache;
+import com.developersboard.manager.file.impl.ExecutorAsyncTagManager;
+import com.developersboard.manager.file.impl.FileTagManager;
+import com.developersboard.manager.file.impl.MeteredTagManager;
+import com.developersboard.manager.file.io.Durability;
+import com.developersboard.manager.file.io.FileSync;
+import com.developersboard.manager.file.io.ParallelFileIo;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.manager.file.lock.LockMode;
+import com.developersboard.manager.file.metrics.LockMetrics;
+import com.developersboard.manager.file.metrics.TagManagerMetrics;
+import com.developersboard.manager.file.pack.PackStore;
+import com.developersboard.manager.file.persist.TagStore;
+import com.developersboard.manager.file.version.ContentVersions;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStyle;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.shell.jline.PromptProvider;
 
-import java.nio.file.Path;
 import java.nio.file.Paths;
 
 @Configuration
@@ -19,22 +35,148 @@ public class ApplicationConfig {
     }
 
     /**
-     * Default path to get started. Not a valid path.
+     * Bean for the default tag name "untagged".
      *
-     * @return path
+     * @return the default tag name
      */
     @Bean
-    Path defaultPath() {
-        return Paths.get("files");
+    String name() {
+        return TagManager.DEFAULT_TAG_NAME;
     }
 
     /**
-     * Bean for the default tag name "untagged".
+     * Bean for the file locks, striped or per file as configured.
      *
-     * @return the default tag name
+     * @param mode    how files are mapped to locks
+     * @param stripes the number of stripes in striped mode
+     * @param metrics the metrics of the tag manager, lock metrics included
+     * @return the file lock manager
      */
     @Bean
-    String name() {
-        return TagManager.DEFAULT_TAG_NAME;
+    FileLockManager fileLockManager(@Value("${file-manager.locks.mode:PER_FILE}") LockMode mode,
+                                    @Value("${file-manager.locks.stripes:" + FileLockManager.DEFAULT_STRIPES + "}") int stripes,
+                                    TagManagerMetrics metrics) {
+        return new FileLockManager(mode.newTable(stripes), metrics.getLocks());
+    }
+
+    /**
+     * Bean for the latency and lock metrics, published to Micrometer.
+     *
+     * @return the metrics of the tag manager
+     */
+    @Bean
+    TagManagerMetrics tagManagerMetrics() {
+        return new TagManagerMetrics(new LockMetrics());
+    }
+
+    /**
+     * Bean for the tag manager used by the shell, recording the latency of
+     * every operation.
+     *
+     * @param fileTagManager the tag manager doing the work
+     * @param metrics        the metrics to record into
+     * @return the metered tag manager
+     */
+    @Bean
+    @Primary
+    TagManager meteredTagManager(FileTagManager fileTagManager, TagManagerMetrics metrics) {
+        return new MeteredTagManager(fileTagManager, metrics);
+    }
+
+    /**
+     * Bean for the asynchronous tag manager, for callers pipelining
+     * operations instead of blocking a thread on each of them.
+     *
+     * @param tagManager the tag manager running the operations
+     * @param threads    the size of the pool running the operations, without virtual threads
+     * @param virtual    true to run every operation on its own virtual thread, from Java 21 on
+     * @return the asynchronous tag manager
+     */
+    @Bean
+    AsyncTagManager asyncTagManager(TagManager tagManager,
+                                    @Value("${file-manager.async.threads:" + ExecutorAsyncTagManager.DEFAULT_THREADS + "}") int threads,
+                                    @Value("${file-manager.async.virtual-threads:true}") boolean virtual) {
+        return new ExecutorAsyncTagManager(tagManager, ExecutorAsyncTagManager.newExecutor(threads, virtual));
+    }
+
+    /**
+     * Bean for the pool reading and writing the files of a tag concurrently.
+     *
+     * @param threads the maximum number of files accessed at once
+     * @return the file I/O pool
+     */
+    @Bean
+    ParallelFileIo parallelFileIo(@Value("${file-manager.io.threads:" + ParallelFileIo.DEFAULT_THREADS + "}") int threads) {
+        return new ParallelFileIo(threads);
+    }
+
+    /**
+     * Bean for the syncs of the files written, as durable as configured.
+     *
+     * @param durability how far writes are forced to disk before returning
+     * @param io         the pool forcing the files of a group commit concurrently
+     * @return the file sync
+     */
+    @Bean
+    FileSync fileSync(@Value("${file-manager.durability.mode:NONE}") Durability durability, ParallelFileIo io) {
+        return new FileSync(durability, io);
+    }
+
+    /**
+     * Bean for the cache of file contents.
+     *
+     * @param maxBytes the memory budget of the cache, 0 to disable it
+     * @return the content cache
+     */
+    @Bean
+    ContentCache contentCache(@Value("${file-manager.cache.max-bytes:" + ContentCache.DEFAULT_MAX_BYTES + "}") long maxBytes) {
+        return new ContentCache(maxBytes);
+    }
+
+    /**
+     * Bean for the multi-version contents, letting cat-all read without
+     * locking the files out of echo-all.
+     *
+     * @param versioned true to read consistent generations instead of locking the files
+     * @return the content versions
+     */
+    @Bean
+    ContentVersions contentVersions(@Value("${file-manager.content.versioned:false}") boolean versioned) {
+        return new ContentVersions(versioned);
+    }
+
+    /**
+     * Bean for the packed storage of small files, read and written in place
+     * of their plain files.
+     *
+     * @param enabled        true to pack small files
+     * @param directory      the directory of the segments
+     * @param maxFileBytes   the largest content packed
+     * @param segmentBytes   the size of a segment
+     * @param compactSeconds the period of the compaction checks
+     * @return the pack store
+     */
+    @Bean
+    PackStore packStore(@Value("${file-manager.pack.enabled:false}") boolean enabled,
+                        @Value("${file-manager.pack.dir:.file-manager/pack}") String directory,
+                        @Value("${file-manager.pack.max-file-bytes:" + PackStore.DEFAULT_MAX_FILE_BYTES + "}") int maxFileBytes,
+                        @Value("${file-manager.pack.segment-bytes:" + PackStore.DEFAULT_SEGMENT_BYTES + "}") long segmentBytes,
+                        @Value("${file-manager.pack.compact-seconds:" + PackStore.DEFAULT_COMPACT_SECONDS + "}") long compactSeconds) {
+        return new PackStore(enabled, Paths.get(directory), maxFileBytes, segmentBytes, compactSeconds);
+    }
+
+    /**
+     * Bean for the persistence of the tags across restarts.
+     *
+     * @param enabled           true to restore the tags on startup and journal their changes
+     * @param directory         the directory of the snapshot and the journal
+     * @param checkpointSeconds the period of the snapshots
+     * @return the tag store
+     */
+    @Bean
+    TagStore tagStore(@Value("${file-manager.persistence.enabled:false}") boolean enabled,
+                      @Value("${file-manager.persistence.dir:.file-manager}") String directory,
+                      @Value("${file-manager.persistence.checkpoint-seconds:" + TagStore.DEFAULT_CHECKPOINT_SECONDS + "}") long checkpointSeconds) {
+        return new TagStore(enabled, Paths.get(directory), checkpointSeconds);
     }
 }
@@ -7,4 +7,19 @@ public class TagExistsException extends IOException {
 
     @Serial
     private static final long serialVersionUID = -5978182560025899697L;
+
+    /**
+     * Thrown without a stack trace, as a name collision is an expected
+     * outcome of automated tagging, and capturing the stack every time would
+     * dominate its cost. Instances are not shared: the cause and suppressed
+     * exceptions of a throwable cannot be switched off from an
+     * {@link IOException}, so a shared instance would collect those of every
+     * caller.
+     *
+     * @return this exception, with an empty stack trace
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
 }
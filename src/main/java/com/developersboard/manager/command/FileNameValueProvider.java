@@ -0,0 +1,53 @@
+package com.developersboard.manager.command;
+
+import com.developersboard.manager.file.TagManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.shell.CompletionContext;
+import org.springframework.shell.CompletionProposal;
+import org.springframework.shell.standard.ValueProvider;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Completes file names on the command line from the sorted file names of the tag
+ * manager, one directory at a time. Names typed relative to
+ * {@link TagManager#BASEDIR} are completed as relative names, which the
+ * commands resolve against it, and absolute names as absolute ones.
+ */
+@Component
+public class FileNameValueProvider implements ValueProvider {
+
+    private final TagManager tagManager;
+    private final int limit;
+
+    /**
+     * @param tagManager the tag manager holding the files
+     * @param limit      the maximum number of names proposed at once
+     */
+    public FileNameValueProvider(TagManager tagManager, @Value("${file-manager.completion.limit:100}") int limit) {
+        this.tagManager = tagManager;
+        this.limit = limit;
+    }
+
+    @Override
+    public List<CompletionProposal> complete(CompletionContext completionContext) {
+        var word = completionContext.currentWordUpToCursor();
+        if (word == null) {
+            word = "";
+        }
+        var base = Path.of(word).isAbsolute() ? "" : TagManager.BASEDIR.toString() + File.separatorChar;
+        var names = this.tagManager.completeFiles(base + word, this.limit);
+        var proposals = new ArrayList<CompletionProposal>(names.size());
+        for (String name : names) {
+            // a directory is only a step towards a file, so no space is added after it
+            boolean directory = name.charAt(name.length() - 1) == File.separatorChar;
+            proposals.add(new CompletionProposal(name.substring(base.length())).complete(!directory));
+        }
+
+        return proposals;
+    }
+}
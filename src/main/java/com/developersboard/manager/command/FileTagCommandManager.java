@@ -3,23 +3,38 @@ package com.developersboard.manager.command;
 import com.developersboard.exception.NoSuchTagException;
 import com.developersboard.exception.TagExistsException;
 import com.developersboard.manager.file.TagManager;
+import com.developersboard.manager.file.cache.ContentCache;
 import com.developersboard.manager.file.impl.AbstractFileTagManager;
+import com.developersboard.manager.file.io.DirectoryScanner;
+import com.developersboard.manager.file.metrics.LatencyHistogram;
+import com.developersboard.manager.file.metrics.LockMetrics;
+import com.developersboard.manager.file.metrics.TagManagerMetrics;
+import com.developersboard.manager.file.pack.PackStore;
+import com.developersboard.manager.file.watch.IndexWatcher;
+import com.developersboard.shared.Page;
 import com.developersboard.shared.Tag;
 import com.developersboard.shared.TaggedFile;
+import org.jline.terminal.Terminal;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStyle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @ShellComponent
 @SuppressWarnings("unused")
@@ -27,46 +42,171 @@ public class FileTagCommandManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileTagCommandManager.class);
 
+    /**
+     * Number of files fetched at a time when a listing is printed whole
+     */
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+
     private final TagManager tagManager;
+    private final Terminal terminal;
+    private final ContentCache cache;
+    private final TagManagerMetrics metrics;
+    private final PackStore pack;
 
-    public FileTagCommandManager(TagManager tagManager) {
+    public FileTagCommandManager(TagManager tagManager, Terminal terminal, ContentCache cache, IndexWatcher watcher,
+                                 TagManagerMetrics metrics, PackStore pack) {
         this.tagManager = tagManager;
+        this.terminal = terminal;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.pack = pack;
 
-        init(tagManager);
+        init(tagManager, watcher);
     }
 
-    private static void init(TagManager tagManager) {
-        try {
-            tagManager.init(listAllFiles());
-        } catch (IOException e) {
-            LOG.error("Could not initialize tag manager", e);
+    /**
+     * Starts the tag manager, empty or with the tags it persisted, and indexes
+     * the files of {@link AbstractFileTagManager#BASEDIR} in the background, so
+     * that the shell is usable before the scan ends. The directory is watched
+     * from the start, so files created during the scan are not missed.
+     * <p>
+     * Files restored from a previous run but no longer on disk once the scan
+     * ends are dropped from the index.
+     */
+    private static void init(TagManager tagManager, IndexWatcher watcher) {
+        tagManager.init(List.of());
+        var restored = new ArrayList<String>();
+        for (TaggedFile file : tagManager.listAllFiles()) {
+            restored.add(file.getName());
         }
+        Set<String> found = ConcurrentHashMap.newKeySet();
+        Consumer<List<Path>> sink = restored.isEmpty() ? tagManager::addFiles : files -> {
+            for (Path file : files) {
+                found.add(file.toString());
+            }
+            tagManager.addFiles(files);
+        };
+        watcher.start();
+        long start = System.nanoTime();
+        DirectoryScanner.scanAsync(AbstractFileTagManager.BASEDIR, AbstractFileTagManager::isManagedFile, sink)
+                .whenComplete((count, e) -> {
+                    if (e != null) {
+                        LOG.error("Could not scan {}", AbstractFileTagManager.BASEDIR, e);
+                        return;
+                    }
+                    // the watcher may have seen some of them created again since
+                    var gone = restored.stream()
+                            .filter(file -> !found.contains(file))
+                            .map(Path::of)
+                            .filter(file -> !Files.exists(file))
+                            .toList();
+                    int removed = gone.isEmpty() ? 0 : tagManager.removeFiles(gone);
+                    LOG.info("Indexed {} files, dropped {} restored files no longer found, in {} ms", count, removed,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                });
     }
 
     public static List<Path> listAllFiles() throws IOException {
-        try (var stream = Files.walk(AbstractFileTagManager.BASEDIR)) {
-            return stream.filter(Files::isRegularFile).collect(Collectors.toList());
+        return DirectoryScanner.scan(AbstractFileTagManager.BASEDIR, AbstractFileTagManager::isManagedFile);
+    }
+
+    @ShellMethod("List the files of a tag, one page at a time with --limit, resumed with the --page cursor it prints")
+    public CharSequence listFiles(@ShellOption(valueProvider = TagNameValueProvider.class) final String tag,
+                                  @ShellOption(defaultValue = ShellOption.NULL) String page,
+                                  @ShellOption(defaultValue = "0") int limit) {
+        int size = limit > 0 ? limit : DEFAULT_PAGE_SIZE;
+        try {
+            return listPages(cursor -> tagManager.listFilesByTag(tag, cursor, size), page, limit);
+        } catch (NoSuchTagException ex) {
+            LOG.error("Tag {} does not exist", tag, ex);
+            return new AttributedString("Error: Tag " + tag + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+        } catch (IllegalArgumentException ex) {
+            LOG.error("Invalid page {} of size {}", page, limit, ex);
+            return new AttributedString("Error: " + ex.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         }
     }
 
-    @ShellMethod("List the files")
-    public CharSequence listFiles(final String tag) {
+    @ShellMethod("List all the files, one page at a time with --limit, resumed with the --page cursor it prints")
+    public CharSequence allFiles(@ShellOption(defaultValue = ShellOption.NULL) String page,
+                                 @ShellOption(defaultValue = "0") int limit) {
+        int size = limit > 0 ? limit : DEFAULT_PAGE_SIZE;
         try {
+            return listPages(cursor -> tagManager.listAllFiles(cursor, size), page, limit);
+        } catch (NoSuchTagException | IllegalArgumentException ex) {
+            LOG.error("Invalid page {} of size {}", page, limit, ex);
+            return new AttributedString("Error: " + ex.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+        }
+    }
+
+    /**
+     * Source of the pages of a listing.
+     */
+    @FunctionalInterface
+    private interface PageSource {
+        Page<? extends TaggedFile> fetch(String cursor) throws NoSuchTagException;
+    }
+
+    /**
+     * Prints a listing. Without a page size, every page is written to the
+     * terminal as soon as it is fetched, so that only one page is ever held
+     * in memory. With a page size, the page is returned together with the
+     * cursor of the next one.
+     */
+    private CharSequence listPages(PageSource source, String page, int limit) throws NoSuchTagException {
+        if (limit > 0 || page != null) {
+            var current = source.fetch(page);
             var stringBuilder = new StringBuilder();
-            for (TaggedFile taggedFile : tagManager.listFilesByTag(tag)) {
+            for (TaggedFile taggedFile : current.items()) {
+                stringBuilder.append(' ').append(taggedFile.getName());
+            }
+            if (current.hasNext()) {
+                stringBuilder.append(System.lineSeparator()).append("next: --page ").append(current.nextCursor());
+            }
+
+            return stringBuilder.toString();
+        }
+
+        var writer = terminal.writer();
+        String cursor = null;
+        do {
+            var current = source.fetch(cursor);
+            for (TaggedFile taggedFile : current.items()) {
+                writer.append(' ').append(taggedFile.getName());
+            }
+            writer.flush();
+            cursor = current.nextCursor();
+        } while (cursor != null);
+        writer.println();
+        writer.flush();
+
+        return null;
+    }
+
+    @ShellMethod("Find the files matching a tag query, e.g. \"a AND b AND NOT c\"")
+    public CharSequence find(final String query) {
+        try {
+            var stringBuilder = new StringBuilder();
+            for (TaggedFile taggedFile : tagManager.findFiles(query)) {
                 stringBuilder.append(' ').append(taggedFile.getName());
             }
 
             return stringBuilder.toString();
         } catch (NoSuchTagException ex) {
-            LOG.error("Tag {} does not exist", tag, ex);
-            return new AttributedString("Error: Tag " + tag + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            LOG.error("Query {} references a tag that does not exist", query, ex);
+            return new AttributedString("Error: Query " + query + " references a tag that does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+        } catch (IllegalArgumentException ex) {
+            LOG.error("Invalid query {}", query, ex);
+            return new AttributedString("Error: " + ex.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         }
     }
 
-    @ShellMethod("List the tags")
-    public CharSequence tags() {
+    @ShellMethod("List the tags, with the number of files of each if asked")
+    public CharSequence tags(@ShellOption(defaultValue = "false") boolean counts) {
         var stringBuilder = new StringBuilder();
+        if (counts) {
+            tagManager.countTags().forEach((name, count) -> stringBuilder.append(' ').append(name).append(':').append(count));
+            return stringBuilder.toString();
+        }
         for (Tag tag : tagManager.listTags()) {
             stringBuilder.append(' ').append(tag.getName());
         }
@@ -76,10 +216,8 @@ public class FileTagCommandManager {
 
     @ShellMethod("Add a tag to a file")
     public CharSequence addTag(final String tag) {
-        try {
-            tagManager.addTag(tag);
-        } catch (TagExistsException ex) {
-            LOG.error("Tag {} already exist", tag, ex);
+        if (tagManager.tryAddTag(tag) == TagManager.AddTagStatus.TAG_EXISTS) {
+            LOG.error("Tag {} already exist", tag);
             return new AttributedString("Error: Tag " + tag + " exists", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         }
 
@@ -87,7 +225,7 @@ public class FileTagCommandManager {
     }
 
     @ShellMethod("Edit tag name")
-    public CharSequence editTag(String oldTagName, String newTagName) {
+    public CharSequence editTag(@ShellOption(valueProvider = TagNameValueProvider.class) String oldTagName, String newTagName) {
         try {
             tagManager.editTag(oldTagName, newTagName);
         } catch (NoSuchTagException ex) {
@@ -102,7 +240,7 @@ public class FileTagCommandManager {
     }
 
     @ShellMethod("Delete a tag")
-    public CharSequence deleteTag(String tagName) {
+    public CharSequence deleteTag(@ShellOption(valueProvider = TagNameValueProvider.class) String tagName) {
         try {
             tagManager.deleteTag(tagName);
         } catch (NoSuchTagException ex) {
@@ -117,41 +255,89 @@ public class FileTagCommandManager {
     }
 
     @ShellMethod("Add a tag to a file")
-    public CharSequence tagFile(String file, String tag) {
+    public CharSequence tagFile(@ShellOption(valueProvider = FileNameValueProvider.class) String file,
+                                @ShellOption(valueProvider = TagNameValueProvider.class) String tag) {
+        return switch (tagManager.tryTagFile(resolve(file), tag)) {
+            case TAGGED, ALREADY_TAGGED -> null;
+            case NO_SUCH_TAG -> {
+                LOG.error("Tag {} does not exist", tag);
+                yield new AttributedString("Error: Tag " + tag + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            }
+            case NO_SUCH_FILE -> {
+                LOG.error("File: {} does not exist", file);
+                yield new AttributedString("Error: File " + file + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            }
+        };
+    }
+
+    @ShellMethod("Remove a tag from a file")
+    public CharSequence removeTag(@ShellOption(valueProvider = FileNameValueProvider.class) String file,
+                                  @ShellOption(valueProvider = TagNameValueProvider.class) String tag) {
+        return switch (tagManager.tryRemoveTag(resolve(file), tag)) {
+            case REMOVED -> null;
+            case NOT_TAGGED -> new AttributedString("Error: Tag " + tag + " does not exist on file " + file, AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            case NO_SUCH_TAG -> {
+                LOG.error("Tag {} does not exist", tag);
+                yield new AttributedString("Error: Tag " + tag + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            }
+            case NO_SUCH_FILE -> {
+                LOG.error("File: {} does not exist", file);
+                yield new AttributedString("Error: File " + file + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            }
+        };
+    }
+
+    @ShellMethod("Add a tag to many files, given as --files a,b,c or as a --glob such as \"**/*.txt\"")
+    public CharSequence tagFiles(@ShellOption(valueProvider = TagNameValueProvider.class) String tag,
+                                 @ShellOption(defaultValue = ShellOption.NULL) String[] files,
+                                 @ShellOption(defaultValue = ShellOption.NULL) String glob) {
         try {
-            tagManager.tagFile(file, tag);
+            if ((files == null) == (glob == null)) {
+                return new AttributedString("Error: Give either --files or --glob", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            }
+            int count = files != null ? tagManager.tagFiles(resolve(files), tag) : tagManager.tagFilesMatching(glob, tag);
+
+            return count + " files tagged";
         } catch (NoSuchTagException ex) {
             LOG.error("Tag {} does not exist", tag, ex);
             return new AttributedString("Error: Tag " + tag + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         } catch (NoSuchFileException ex) {
-            LOG.error("File: {} does not exist", file, ex);
-            return new AttributedString("Error: File " + file + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            LOG.error("File: {} does not exist", ex.getFile(), ex);
+            return new AttributedString("Error: File " + ex.getFile() + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+        } catch (IllegalArgumentException ex) {
+            LOG.error("Invalid glob {}", glob, ex);
+            return new AttributedString("Error: " + ex.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         }
-        
-        return null;
     }
 
-    @ShellMethod("Remove a tag from a file")
-    public CharSequence removeTag(String file, String tag) {
+    @ShellMethod("Remove a tag from many files, given as --files a,b,c or as a --glob such as \"**/*.txt\"")
+    public CharSequence untagFiles(@ShellOption(valueProvider = TagNameValueProvider.class) String tag,
+                                   @ShellOption(defaultValue = ShellOption.NULL) String[] files,
+                                   @ShellOption(defaultValue = ShellOption.NULL) String glob) {
         try {
-            if (!tagManager.removeTag(file, tag)) {
-                return new AttributedString("Error: Tag " + tag + " does not exist on file " + file, AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            if ((files == null) == (glob == null)) {
+                return new AttributedString("Error: Give either --files or --glob", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
             }
+            int count = files != null ? tagManager.untagFiles(resolve(files), tag) : tagManager.untagFilesMatching(glob, tag);
+
+            return count + " files untagged";
         } catch (NoSuchTagException ex) {
             LOG.error("Tag {} does not exist", tag, ex);
             return new AttributedString("Error: Tag " + tag + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         } catch (NoSuchFileException ex) {
-            LOG.error("File: {} does not exist", file, ex);
-            return new AttributedString("Error: File " + file + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+            LOG.error("File: {} does not exist", ex.getFile(), ex);
+            return new AttributedString("Error: File " + ex.getFile() + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+        } catch (IllegalArgumentException ex) {
+            LOG.error("Invalid glob {}", glob, ex);
+            return new AttributedString("Error: " + ex.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         }
-        return null;
     }
 
     @ShellMethod("List all tags on a file")
-    public CharSequence getTags(String file) {
+    public CharSequence getTags(@ShellOption(valueProvider = FileNameValueProvider.class) String file) {
         try {
             var stringBuilder = new StringBuilder();
-            for (Tag tag : tagManager.getTags(file)) {
+            for (Tag tag : tagManager.getTags(resolve(file))) {
                 stringBuilder.append(' ').append(tag.getName());
             }
             
@@ -163,9 +349,9 @@ public class FileTagCommandManager {
     }
 
     @ShellMethod("Cat a file")
-    public CharSequence cat(String file) {
+    public CharSequence cat(@ShellOption(valueProvider = FileNameValueProvider.class) String file) {
         try {
-            return tagManager.readFile(file);
+            return tagManager.readFile(resolve(file));
         } catch (IOException e) {
             LOG.error("Error reading file: {}", file, e);
         }
@@ -174,9 +360,9 @@ public class FileTagCommandManager {
     }
 
     @ShellMethod("Echo text into a file")
-    public CharSequence echo(String file, String text) {
+    public CharSequence echo(@ShellOption(valueProvider = FileNameValueProvider.class) String file, String text) {
         try {
-            tagManager.writeFile(file, text);
+            tagManager.writeFile(resolve(file), text);
         } catch (IOException e) {
             LOG.error("Error echoing text: {} to file: {}", text, file, e);
             return new AttributedString("Error: " + e.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
@@ -186,9 +372,14 @@ public class FileTagCommandManager {
     }
 
     @ShellMethod("Cat all files matching a tag")
-    public CharSequence catAll(String tag) {
+    public CharSequence catAll(@ShellOption(valueProvider = TagNameValueProvider.class) String tag) {
+        // stream straight to the terminal so that large tags are never held in memory
+        terminal.flush();
         try {
-            return tagManager.catAllFiles(tag);
+            var out = Channels.newChannel(terminal.output());
+            tagManager.catAllFiles(tag, out);
+            terminal.output().flush();
+            return null;
         } catch (NoSuchTagException ex) {
             LOG.error("Tag {} does not exist", tag, ex);
             return new AttributedString("Error: Tag " + tag + " does not exist", AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
@@ -199,7 +390,7 @@ public class FileTagCommandManager {
     }
 
     @ShellMethod("Echo text into all files matching a tag")
-    public CharSequence echoAll(String tag, String text) {
+    public CharSequence echoAll(@ShellOption(valueProvider = TagNameValueProvider.class) String tag, String text) {
         try {
             tagManager.echoToAllFiles(tag, text);
             return null;
@@ -211,4 +402,79 @@ public class FileTagCommandManager {
             return new AttributedString("Error: " + e.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
         }
     }
+
+    @ShellMethod("Write the packed small files back to plain files and empty the pack")
+    public CharSequence exportPack() {
+        if (!pack.isEnabled()) {
+            return "Packing is disabled; every file is plain already";
+        }
+        try {
+            return "Exported " + pack.export() + " files";
+        } catch (IOException e) {
+            LOG.error("Error exporting the packed files", e);
+            return new AttributedString("Error: " + e.getMessage(), AttributedStyle.DEFAULT.foreground(AttributedStyle.RED));
+        }
+    }
+
+    @ShellMethod("Show the hits, misses and evictions of the file content cache")
+    public CharSequence cacheStats() {
+        return String.format("hits: %d misses: %d evictions: %d size: %d/%d bytes",
+                cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.getBytes(), cache.getMaxBytes());
+    }
+
+    @ShellMethod("Show operation latencies and lock contention, in microseconds")
+    public CharSequence stats() {
+        var stringBuilder = new StringBuilder(String.format("%-20s %10s %10s %10s %10s%n", "operation", "count", "p50", "p99", "p999"));
+        for (TagManagerMetrics.Operation operation : TagManagerMetrics.Operation.values()) {
+            var latency = metrics.getLatency(operation);
+            if (latency.count() > 0) {
+                appendHistogram(stringBuilder, operation.tagValue(), latency);
+            }
+        }
+
+        var locks = metrics.getLocks();
+        stringBuilder.append(String.format("%nlocks: %d read, %d write, %d contended%n",
+                locks.getReads(), locks.getWrites(), locks.getContended()));
+        appendHistogram(stringBuilder, "wait (read)", locks.getReadWait());
+        appendHistogram(stringBuilder, "wait (write)", locks.getWriteWait());
+        appendHistogram(stringBuilder, "hold (read)", locks.getReadHold());
+        appendHistogram(stringBuilder, "hold (write)", locks.getWriteHold());
+
+        var hottest = locks.hottest(5);
+        if (!hottest.isEmpty()) {
+            stringBuilder.append(String.format("%nmost contended files:%n"));
+            for (LockMetrics.Contention contention : hottest) {
+                stringBuilder.append(String.format("%10d  %s%n", contention.count(), contention.file()));
+            }
+        }
+
+        return stringBuilder.toString();
+    }
+
+    private static void appendHistogram(StringBuilder stringBuilder, String name, LatencyHistogram histogram) {
+        stringBuilder.append(String.format("%-20s %10d", name, histogram.count()));
+        for (double quantile : TagManagerMetrics.QUANTILES) {
+            stringBuilder.append(String.format(" %10.1f", histogram.percentile(quantile, TimeUnit.MICROSECONDS)));
+        }
+        stringBuilder.append(System.lineSeparator());
+    }
+
+    /**
+     * Resolves a file name typed relative to {@link AbstractFileTagManager#BASEDIR},
+     * as completed by {@link FileNameValueProvider}, to the name it is known by.
+     */
+    private static String resolve(String file) {
+        var path = Path.of(file);
+
+        return path.isAbsolute() ? file : AbstractFileTagManager.BASEDIR.resolve(path).toString();
+    }
+
+    private static List<String> resolve(String[] files) {
+        var resolved = new ArrayList<String>(files.length);
+        for (String file : files) {
+            resolved.add(resolve(file));
+        }
+
+        return resolved;
+    }
 }
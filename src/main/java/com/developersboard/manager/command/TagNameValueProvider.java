@@ -0,0 +1,43 @@
+package com.developersboard.manager.command;
+
+import com.developersboard.manager.file.TagManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.shell.CompletionContext;
+import org.springframework.shell.CompletionProposal;
+import org.springframework.shell.standard.ValueProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Completes tag names on the command line from the sorted tag names of the tag
+ * manager, so that completion never waits on the tag operations.
+ */
+@Component
+public class TagNameValueProvider implements ValueProvider {
+
+    private final TagManager tagManager;
+    private final int limit;
+
+    /**
+     * @param tagManager the tag manager holding the tags
+     * @param limit      the maximum number of names proposed at once
+     */
+    public TagNameValueProvider(TagManager tagManager, @Value("${file-manager.completion.limit:100}") int limit) {
+        this.tagManager = tagManager;
+        this.limit = limit;
+    }
+
+    @Override
+    public List<CompletionProposal> complete(CompletionContext completionContext) {
+        var prefix = completionContext.currentWordUpToCursor();
+        var names = this.tagManager.completeTags(prefix == null ? "" : prefix, this.limit);
+        var proposals = new ArrayList<CompletionProposal>(names.size());
+        for (String name : names) {
+            proposals.add(new CompletionProposal(name));
+        }
+
+        return proposals;
+    }
+}
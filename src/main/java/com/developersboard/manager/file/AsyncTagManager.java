@@ -0,0 +1,138 @@
+package com.developersboard.manager.file;
+
+import com.developersboard.shared.Page;
+import com.developersboard.shared.Tag;
+import com.developersboard.shared.TaggedFile;
+
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link TagManager}, for callers pipelining many
+ * tag and I/O operations without dedicating a thread to each of them.
+ * <p>
+ * Every method returns at once with a future completed by the operation of
+ * the same name in {@link TagManager}, under the same locking guarantees.
+ * Exceptions the operation throws, checked ones included, complete the future
+ * exceptionally, unwrapped. Operations submitted one after the other may run
+ * concurrently, in any order: chain the futures to order them.
+ * <p>
+ * File locks are not exposed, as a lock taken by an operation must be
+ * released within it.
+ */
+public interface AsyncTagManager {
+
+    /**
+     * @see TagManager#addFiles(Collection)
+     */
+    CompletableFuture<Integer> addFiles(Collection<Path> files);
+
+    /**
+     * @see TagManager#removeFiles(Collection)
+     */
+    CompletableFuture<Integer> removeFiles(Collection<Path> files);
+
+    /**
+     * @see TagManager#listTags()
+     */
+    CompletableFuture<Iterable<? extends Tag>> listTags();
+
+    /**
+     * @see TagManager#countTags()
+     */
+    CompletableFuture<Map<String, Long>> countTags();
+
+    /**
+     * @see TagManager#completeTags(String, int)
+     */
+    CompletableFuture<List<String>> completeTags(String prefix, int limit);
+
+    /**
+     * @see TagManager#completeFiles(String, int)
+     */
+    CompletableFuture<List<String>> completeFiles(String prefix, int limit);
+
+    /**
+     * @see TagManager#addTag(String)
+     */
+    CompletableFuture<Tag> addTag(String name);
+
+    /**
+     * @see TagManager#editTag(String, String)
+     */
+    CompletableFuture<Tag> editTag(String oldTagName, String newTagName);
+
+    /**
+     * @see TagManager#deleteTag(String)
+     */
+    CompletableFuture<Tag> deleteTag(String tagName);
+
+    /**
+     * @see TagManager#listAllFiles(String, int)
+     */
+    CompletableFuture<Page<? extends TaggedFile>> listAllFiles(String cursor, int limit);
+
+    /**
+     * @see TagManager#listFilesByTag(String, String, int)
+     */
+    CompletableFuture<Page<? extends TaggedFile>> listFilesByTag(String tag, String cursor, int limit);
+
+    /**
+     * @see TagManager#findFiles(String)
+     */
+    CompletableFuture<Iterable<? extends TaggedFile>> findFiles(String query);
+
+    /**
+     * @see TagManager#tagFile(String, String)
+     */
+    CompletableFuture<Boolean> tagFile(String file, String tag);
+
+    /**
+     * @see TagManager#removeTag(String, String)
+     */
+    CompletableFuture<Boolean> removeTag(String file, String tag);
+
+    /**
+     * @see TagManager#tagFiles(Collection, String)
+     */
+    CompletableFuture<Integer> tagFiles(Collection<String> files, String tag);
+
+    /**
+     * @see TagManager#untagFiles(Collection, String)
+     */
+    CompletableFuture<Integer> untagFiles(Collection<String> files, String tag);
+
+    /**
+     * @see TagManager#getTags(String)
+     */
+    CompletableFuture<Iterable<? extends Tag>> getTags(String file);
+
+    /**
+     * @see TagManager#catAllFiles(String)
+     */
+    CompletableFuture<String> catAllFiles(String tag);
+
+    /**
+     * @see TagManager#catAllFiles(String, WritableByteChannel)
+     */
+    CompletableFuture<Long> catAllFiles(String tag, WritableByteChannel out);
+
+    /**
+     * @see TagManager#echoToAllFiles(String, String)
+     */
+    CompletableFuture<Void> echoToAllFiles(String tag, String content);
+
+    /**
+     * @see TagManager#readFile(String)
+     */
+    CompletableFuture<String> readFile(String file);
+
+    /**
+     * @see TagManager#writeFile(String, String)
+     */
+    CompletableFuture<Void> writeFile(String file, String content);
+}
@@ -2,15 +2,19 @@ package com.developersboard.manager.file;
 
 import com.developersboard.exception.NoSuchTagException;
 import com.developersboard.exception.TagExistsException;
+import com.developersboard.shared.Page;
 import com.developersboard.shared.Tag;
 import com.developersboard.shared.TaggedFile;
 
 import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface TagManager {
 
@@ -18,6 +22,27 @@ public interface TagManager {
 
     String DEFAULT_TAG_NAME = "untagged";
 
+    /**
+     * Outcome of {@link #tryAddTag(String)}.
+     */
+    enum AddTagStatus {
+        ADDED, TAG_EXISTS
+    }
+
+    /**
+     * Outcome of {@link #tryTagFile(String, String)}.
+     */
+    enum TagFileStatus {
+        TAGGED, ALREADY_TAGGED, NO_SUCH_TAG, NO_SUCH_FILE
+    }
+
+    /**
+     * Outcome of {@link #tryRemoveTag(String, String)}.
+     */
+    enum RemoveTagStatus {
+        REMOVED, NOT_TAGGED, NO_SUCH_TAG, NO_SUCH_FILE
+    }
+
     /**
      * Initialize your FileTagManager with the starting set of files. You do not
      * need to persist tags on files from run to run. Each file should start
@@ -27,6 +52,24 @@ public interface TagManager {
      */
     void init(List<Path> files);
 
+    /**
+     * Adds files found after {@link #init(List)}, each starting with the
+     * default tag "untagged". Files already known keep their tags.
+     *
+     * @param files Files to consider from now on
+     * @return The number of files that were not known yet
+     */
+    int addFiles(Collection<Path> files);
+
+    /**
+     * Forgets files that no longer exist, removing them from every tag. A
+     * directory stands for all the files below it.
+     *
+     * @param files Files or directories that were deleted
+     * @return The number of files forgotten
+     */
+    int removeFiles(Collection<Path> files);
+
     /**
      * List all currently known tags.
      *
@@ -34,6 +77,37 @@ public interface TagManager {
      */
     Iterable<? extends Tag> listTags();
 
+    /**
+     * Count the files carrying each known tag. Counts are kept up to date by
+     * the tagging operations, so no tag's files are walked to produce them.
+     *
+     * @return Number of files carrying each tag, by tag name
+     */
+    Map<String, Long> countTags();
+
+    /**
+     * Complete a tag name, e.g. on the command line. Served from the names
+     * of the tags sorted once after each change, without waiting on the tag
+     * operations.
+     *
+     * @param prefix Start of the tag name, possibly empty
+     * @param limit  Maximum number of names returned
+     * @return Names of the tags starting with the prefix, in lexicographic order
+     */
+    List<String> completeTags(String prefix, int limit);
+
+    /**
+     * Complete a file name as {@link #completeTags(String, int)} does for
+     * tags, one directory at a time as a shell does.
+     *
+     * @param prefix Start of the file name, possibly empty
+     * @param limit  Maximum number of names returned
+     * @return Names of the known files starting with the prefix, and of the
+     * directories below it holding some, ending with a separator, in code
+     * point order
+     */
+    List<String> completeFiles(String prefix, int limit);
+
     /**
      * Add a new tag to the list of known tags
      *
@@ -43,6 +117,15 @@ public interface TagManager {
      */
     Tag addTag(String name) throws TagExistsException;
 
+    /**
+     * Add a new tag as {@link #addTag(String)} does, reporting an existing tag
+     * by status rather than by exception.
+     *
+     * @param name Name of tag
+     * @return ADDED, or TAG_EXISTS if a tag already exists with this name
+     */
+    AddTagStatus tryAddTag(String name);
+
     /**
      * Update the name of a tag, also updating any references to that tag to
      * point to the new one
@@ -82,6 +165,44 @@ public interface TagManager {
      */
     Iterable<? extends TaggedFile> listFilesByTag(String tag) throws NoSuchTagException;
 
+    /**
+     * List one page of all files. Files come in a stable order, and the
+     * cursor of a page resumes the listing right after it: files added or
+     * removed meanwhile never shift the pages that follow.
+     *
+     * @param cursor Cursor of the next page, as returned with the previous one,
+     *               or null for the first page
+     * @param limit  Maximum number of files in the page
+     * @return The page of files
+     * @throws IllegalArgumentException If the cursor is malformed or expired, or the limit is not positive
+     */
+    Page<? extends TaggedFile> listAllFiles(String cursor, int limit);
+
+    /**
+     * List one page of the files that have a given tag, paginated as
+     * {@link #listAllFiles(String, int)}.
+     *
+     * @param tag    Tag to look for
+     * @param cursor Cursor of the next page, or null for the first page
+     * @param limit  Maximum number of files in the page
+     * @return The page of files labeled with the specified tag
+     * @throws NoSuchTagException       If no tag exists with that name
+     * @throws IllegalArgumentException If the cursor is malformed or expired, or the limit is not positive
+     */
+    Page<? extends TaggedFile> listFilesByTag(String tag, String cursor, int limit) throws NoSuchTagException;
+
+    /**
+     * List all files matching a boolean tag query, such as
+     * {@code work AND urgent AND NOT done}. Queries combine tag names with
+     * AND, OR, NOT and parentheses.
+     *
+     * @param query Boolean expression over tag names
+     * @return A list of all files matching the query
+     * @throws NoSuchTagException       If the query references a tag that does not exist
+     * @throws IllegalArgumentException If the query is malformed
+     */
+    Iterable<? extends TaggedFile> findFiles(String query) throws NoSuchTagException;
+
     /**
      * Label a file with a tag
      * <p>
@@ -120,6 +241,81 @@ public interface TagManager {
      */
     boolean removeTag(String file, String tag) throws NoSuchFileException, NoSuchTagException;
 
+    /**
+     * Label a file with a tag as {@link #tagFile(String, String)} does,
+     * reporting every outcome by status. Meant for callers expecting misses:
+     * a miss throws nothing, and the file and the tag are looked up without
+     * allocating.
+     *
+     * @param file Path to file to tag
+     * @param tag  The desired tag
+     * @return TAGGED, ALREADY_TAGGED if the file already has that tag, or
+     * NO_SUCH_FILE or NO_SUCH_TAG if either does not exist
+     */
+    TagFileStatus tryTagFile(String file, String tag);
+
+    /**
+     * Remove a tag from a file as {@link #removeTag(String, String)} does,
+     * reporting every outcome by status.
+     *
+     * @param file Path to file to untag
+     * @param tag  The desired tag to remove from that file
+     * @return REMOVED, NOT_TAGGED if the file does not have that tag or the
+     * tag is "untagged", or NO_SUCH_FILE or NO_SUCH_TAG if either does not exist
+     */
+    RemoveTagStatus tryRemoveTag(String file, String tag);
+
+    /**
+     * Label many files with a tag at once, with the same rules as
+     * {@link #tagFile(String, String)} for each file. Either every file
+     * exists and is tagged, or none is.
+     *
+     * @param files Paths to the files to tag
+     * @param tag   The desired tag
+     * @return The number of files that did not have the tag yet
+     * @throws NoSuchFileException If any file does not exist
+     * @throws NoSuchTagException  If no tag exists with the given name
+     */
+    int tagFiles(Collection<String> files, String tag) throws NoSuchFileException, NoSuchTagException;
+
+    /**
+     * Label every file matching a glob with a tag. Relative globs, such as
+     * {@code **}{@code /*.txt}, are matched against the paths relative to
+     * {@link #BASEDIR}.
+     *
+     * @param glob Glob pattern selecting the files
+     * @param tag  The desired tag
+     * @return The number of files that did not have the tag yet
+     * @throws NoSuchTagException       If no tag exists with the given name
+     * @throws IllegalArgumentException If the glob is malformed
+     */
+    int tagFilesMatching(String glob, String tag) throws NoSuchTagException;
+
+    /**
+     * Remove a tag from many files at once, with the same rules as
+     * {@link #removeTag(String, String)} for each file. Either every file
+     * exists and is untagged, or none is.
+     *
+     * @param files Paths to the files to untag
+     * @param tag   The desired tag to remove
+     * @return The number of files that had the tag
+     * @throws NoSuchFileException If any file does not exist
+     * @throws NoSuchTagException  If no tag exists with the given name
+     */
+    int untagFiles(Collection<String> files, String tag) throws NoSuchFileException, NoSuchTagException;
+
+    /**
+     * Remove a tag from every file matching a glob, matched as in
+     * {@link #tagFilesMatching(String, String)}.
+     *
+     * @param glob Glob pattern selecting the files
+     * @param tag  The desired tag to remove
+     * @return The number of files that had the tag
+     * @throws NoSuchTagException       If no tag exists with the given name
+     * @throws IllegalArgumentException If the glob is malformed
+     */
+    int untagFilesMatching(String glob, String tag) throws NoSuchTagException;
+
     /**
      * List all the tags that are applied to a file
      *
@@ -132,11 +328,15 @@ public interface TagManager {
 
     /**
      * Prints out all files that have a given tqg. Must internally synchronize
-     * to guarantee that the list of files with the given tag does not change
-     * during its call, and that each file printed does not change during its
+     * to guarantee that each file printed does not change during its
      * execution (using a read/write lock). You should acquire all the locks,
      * then read all the files and release the locks. Your code should not
      * deadlock while waiting to acquire locks.
+     * <p>
+     * The list of files is the one carrying the tag at the moment all of
+     * their locks are held, and is fixed from then on. The tag itself is not
+     * kept from changing during the call: a file untagged while the files are
+     * read is still printed, and a file tagged meanwhile is not.
      *
      * @param tag Tag to query for
      * @return The concatenation of all the files
@@ -145,11 +345,28 @@ public interface TagManager {
      */
     String catAllFiles(String tag) throws NoSuchTagException, IOException;
 
+    /**
+     * Streams the concatenation of all files that have a given tag into a
+     * channel, under the same locking guarantees as {@link #catAllFiles(String)}.
+     * The content is never buffered on the heap as a whole: the files whose
+     * content is fresh in the content cache, or small enough to be cached,
+     * are written from memory, the larger ones are streamed from disk.
+     *
+     * @param tag Tag to query for
+     * @param out The channel to write the concatenation of all the files to
+     * @return The number of bytes written
+     * @throws NoSuchTagException If no tag exists with the given name
+     * @throws IOException        if any IOException occurs in the underlying read or write
+     */
+    long catAllFiles(String tag, WritableByteChannel out) throws NoSuchTagException, IOException;
+
     /**
      * Echos some content into all files that have a given tag. Must internally
-     * synchronize to guarantee that the list of files with the given tag does
-     * not change during its call, and that each file being printed to do not
-     * change during its execution (using a read/write lock)
+     * synchronize to guarantee that each file being printed to do not change
+     * during its execution (using a read/write lock). The list of files is
+     * the one carrying the tag when all of their write locks are held, as
+     * for {@link #catAllFiles(String)}: a file untagged after that is still
+     * written to, and a file tagged after that is not.
      * <p>
      * Given two concurrent calls to echoToAllFiles, it will be indeterminite
      * which call happens first and which happens last. But what you can (and
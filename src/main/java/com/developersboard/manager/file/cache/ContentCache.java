@@ -0,0 +1,204 @@
+package com.developersboard.manager.file.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of file contents, bounded by a budget of bytes.
+ * <p>
+ * A cached content is only served while the file still has the same file
+ * key, modification time and size, so changes made behind the application's
+ * back are picked up. Writes made through the application are announced with
+ * {@link #invalidate(Path)}; a read racing with such a write never caches the
+ * content it read, whatever the timestamps.
+ */
+public class ContentCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /**
+     * Rough memory taken by an entry besides its characters
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+
+    /**
+     * Entries in access order, guarded by their own monitor
+     */
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * Number of invalidations so far, guarded by the monitor of the entries
+     */
+    private long invalidations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes the memory budget of the cached contents, 0 to disable caching
+     */
+    public ContentCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache budget must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the content of a file, from memory when it has not changed
+     * since it was cached.
+     *
+     * @param path the path of the file
+     * @return the content of the file
+     * @throws IOException if the file cannot be read
+     */
+    public String read(Path path) throws IOException {
+        if (this.maxBytes == 0) {
+            return new String(Files.readAllBytes(path));
+        }
+        var content = readIfFits(path);
+
+        return content != null ? content : new String(Files.readAllBytes(path));
+    }
+
+    /**
+     * Returns the content of a file from memory when it has not changed since
+     * it was cached, or reads and caches it when it fits the budget. Lets
+     * callers stream the files too large to be cached straight from disk.
+     *
+     * @param path the path of the file
+     * @return the content of the file, {@code null} if it is too large to be
+     * cached or caching is disabled
+     * @throws IOException if the file cannot be read
+     */
+    public String readIfFits(Path path) throws IOException {
+        if (this.maxBytes == 0) {
+            return null;
+        }
+
+        long stamp;
+        Entry cached;
+        synchronized (this.entries) {
+            stamp = this.invalidations;
+            cached = this.entries.get(path);
+        }
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (cached != null && cached.matches(attributes)) {
+            this.hits.increment();
+            return cached.content();
+        }
+
+        this.misses.increment();
+        // at most one char per byte: files that may not fit are left to the caller to stream
+        if (ENTRY_OVERHEAD + 2L * attributes.size() > this.maxBytes) {
+            return null;
+        }
+        var content = new String(Files.readAllBytes(path));
+        put(path, new Entry(content, attributes.fileKey(), attributes.lastModifiedTime().toMillis(), attributes.size()), stamp);
+
+        return content;
+    }
+
+    /**
+     * Drops the cached content of a file. Must be called once the file has
+     * been written, before its write lock is released.
+     *
+     * @param path the path of the file
+     */
+    public void invalidate(Path path) {
+        if (this.maxBytes == 0) {
+            return;
+        }
+        synchronized (this.entries) {
+            this.invalidations++;
+            var removed = this.entries.remove(path);
+            if (removed != null) {
+                this.bytes -= removed.weight();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached content.
+     */
+    public void clear() {
+        synchronized (this.entries) {
+            this.invalidations++;
+            this.entries.clear();
+            this.bytes = 0;
+        }
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * @return the approximate memory taken by the cached contents
+     */
+    public long getBytes() {
+        synchronized (this.entries) {
+            return this.bytes;
+        }
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    private void put(Path path, Entry entry, long stamp) {
+        if (entry.weight() > this.maxBytes) {
+            return;
+        }
+        synchronized (this.entries) {
+            // a write was announced while reading: the content may be stale
+            if (this.invalidations != stamp) {
+                return;
+            }
+            var previous = this.entries.put(path, entry);
+            if (previous != null) {
+                this.bytes -= previous.weight();
+            }
+            this.bytes += entry.weight();
+
+            Iterator<Map.Entry<Path, Entry>> eldest = this.entries.entrySet().iterator();
+            while (this.bytes > this.maxBytes) {
+                this.bytes -= eldest.next().getValue().weight();
+                eldest.remove();
+                this.evictions.increment();
+            }
+        }
+    }
+
+    private record Entry(String content, Object fileKey, long modified, long size) {
+
+        boolean matches(BasicFileAttributes attributes) {
+            return Objects.equals(this.fileKey, attributes.fileKey())
+                    && this.modified == attributes.lastModifiedTime().toMillis()
+                    && this.size == attributes.size();
+        }
+
+        long weight() {
+            return ENTRY_OVERHEAD + 2L * this.content.length();
+        }
+    }
+}
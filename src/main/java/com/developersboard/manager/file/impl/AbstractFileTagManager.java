@@ -3,98 +3,232 @@ package com.developersboard.manager.file.impl;
 import com.developersboard.exception.NoSuchTagException;
 import com.developersboard.exception.TagExistsException;
 import com.developersboard.manager.file.TagManager;
+import com.developersboard.manager.file.cache.ContentCache;
+import com.developersboard.manager.file.index.TagRegistry;
+import com.developersboard.manager.file.io.FileSync;
+import com.developersboard.manager.file.pack.PackStore;
 import com.developersboard.shared.Tag;
-import com.developersboard.shared.TaggedFile;
 import com.developersboard.shared.impl.DefaultTag;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Optional;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 
 public abstract class AbstractFileTagManager implements TagManager {
 
     /**
-     * Internal file and tag for this file tag manager
+     * Suffix of the temporary files written next to the files being replaced
+     */
+    public static final String TEMP_SUFFIX = ".echo-tmp";
+
+    /**
+     * Internal tag for this file tag manager
      */
     protected final Tag tag;
-    protected final TaggedFile taggedFile;
 
-    protected AbstractFileTagManager(Tag tag, TaggedFile taggedFile) {
+    /**
+     * Lock-free registry of the known tags
+     */
+    protected final TagRegistry registry = new TagRegistry();
+
+    /**
+     * Contents of the files recently read
+     */
+    protected final ContentCache cache;
+
+    /**
+     * Forces the files written to disk, as far as configured
+     */
+    protected final FileSync sync;
+
+    /**
+     * Packed contents of the small files, read in place of the plain files
+     */
+    protected final PackStore pack;
+
+    protected AbstractFileTagManager(Tag tag, ContentCache cache, FileSync sync, PackStore pack) {
         this.tag = tag;
-        this.taggedFile = taggedFile;
+        this.cache = cache;
+        this.sync = sync;
+        this.pack = pack;
     }
 
     public final String readFile(String file) throws IOException {
-        return new String(Files.readAllBytes(Paths.get(file)));
+        var packed = this.pack.isEnabled() ? this.pack.read(file) : null;
+        return packed != null ? new String(packed) : this.cache.read(Paths.get(file));
     }
 
-    public final void writeFile(String file, String content) throws IOException {
-        Path path = Paths.get(file);
-        if (!path.startsWith(BASEDIR))
-            throw new IOException("Can only write to files in " + BASEDIR);
-        Files.write(path, content.getBytes());
+    /**
+     * Tells apart the files of the users from the temporary files written
+     * while replacing them.
+     *
+     * @param path the path of a file
+     * @return true if the file is to be tagged
+     */
+    public static boolean isManagedFile(Path path) {
+        return !path.getFileName().toString().endsWith(TEMP_SUFFIX);
     }
 
     /**
-     * Checks for non-existence of a tag to prevent duplication.
+     * Copies a file into a channel without going through the heap, letting the
+     * operating system move the bytes when it can.
      *
-     * @param tagName the name of the tag to create and validate.
-     * @return the newly created tag
-     * @throws TagExistsException if a tag already exists with the provided name
+     * @param file the path of the file
+     * @param out  the channel to write to
+     * @return the number of bytes written
+     * @throws IOException if the file cannot be read or the channel written
      */
-    protected final Tag createUniqueTag(String tagName) throws TagExistsException {
-        long stamp = this.taggedFile.getLock().readLock();
-        try {
-            var tag = new DefaultTag(tagName);
-            if (this.taggedFile.getTags().contains(tag)) {
-                throw new TagExistsException();
+    protected final long transferFile(String file, WritableByteChannel out) throws IOException {
+        try (var channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            // transferTo may move fewer bytes than asked, e.g. into a non-blocking or pipe channel
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
             }
 
-            return tag;
+            return position;
+        }
+    }
+
+    public final void writeFile(String file, String content) throws IOException {
+        var bytes = content.getBytes();
+        if (this.pack.accepts(bytes)) {
+            checkWritable(Paths.get(file));
+            this.sync.syncFiles(List.of(this.pack.write(file, bytes)));
+            this.cache.invalidate(Paths.get(file));
+            written(file, content);
+            return;
+        }
+        var temp = writeTempFile(file, bytes);
+        try {
+            this.sync.syncFiles(List.of(temp));
+            commitFile(temp, file);
         } finally {
-            this.taggedFile.getLock().unlockRead(stamp);
+            Files.deleteIfExists(temp);
         }
+        this.sync.syncDirectories(List.of(Paths.get(file)));
+        // too large to be packed, so the plain file is the content now
+        this.pack.removeAll(List.of(file));
+        written(file, content);
     }
 
     /**
-     * Adds the specified tag to the tags associated with this taggedFile.
+     * Called once {@link #writeFile} has replaced a file.
      *
-     * @param tag the new tag
+     * @param file    the path of the file
+     * @param content the new content of the file
      */
-    protected final void addTagToTaggedFiles(Tag tag) {
-        long stamp = this.taggedFile.getLock().writeLock();
-        try {
-            this.taggedFile.getTags().add(tag);
-        } finally {
-            this.taggedFile.getLock().unlockWrite(stamp);
-        }
+    protected void written(String file, String content) {
     }
 
     /**
-     * Removes a tag from the tags associated with this taggedFile.
+     * Writes the future content of a file to a temporary file next to it, to
+     * be moved over the file by {@link #commitFile}. Readers of the file never
+     * see the content half written.
      *
-     * @param tag the tag to remove
+     * @param file    the path of the file
+     * @param content the new content of the file
+     * @return the temporary file
+     * @throws IOException if the file is outside {@link #BASEDIR} or cannot be written
      */
-    protected final void removeTagFromFile(String tag) {
-       removeTagFromFile(new DefaultTag(tag));
+    protected final Path writeTempFile(String file, byte[] content) throws IOException {
+        Path path = Paths.get(file);
+        checkWritable(path);
+        // same directory, hence same file system, so that the commit can be an atomic rename
+        var temp = Files.createTempFile(path.getParent(), "." + path.getFileName(), TEMP_SUFFIX);
+        try {
+            copyPermissions(path, temp);
+            Files.write(temp, content);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        return temp;
+    }
+
+    private static void checkWritable(Path path) throws IOException {
+        if (!path.startsWith(BASEDIR))
+            throw new IOException("Can only write to files in " + BASEDIR);
+    }
+
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (!Files.exists(from)) {
+            return;
+        }
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException e) {
+            // no POSIX permissions on this file system; the file keeps the defaults
+        }
     }
 
     /**
-     * Removes a tag from the tags associated with this taggedFile.
+     * Replaces a file by a temporary file written by {@link #writeTempFile},
+     * atomically where the file system allows it, and drops its cached content.
      *
-     * @param tag the tag to remove
+     * @param temp the temporary file
+     * @param file the path of the file to replace
+     * @throws IOException if the file cannot be replaced
      */
-    protected final void removeTagFromFile(Tag tag) {
-        long stamp = this.taggedFile.getLock().writeLock();
+    protected final void commitFile(Path temp, String file) throws IOException {
         try {
-            this.taggedFile.getTags().remove(tag);
+            Files.move(temp, Paths.get(file), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING);
         } finally {
-            this.taggedFile.getLock().unlockWrite(stamp);
+            this.cache.invalidate(Paths.get(file));
         }
     }
 
+    /**
+     * Atomically creates and registers a tag, checking for non-existence of a
+     * tag with the same name to prevent duplication.
+     *
+     * @param tagName the name of the tag to create and validate.
+     * @return the newly created tag
+     * @throws TagExistsException if a tag already exists with the provided name
+     */
+    protected final Tag createUniqueTag(String tagName) throws TagExistsException {
+        return this.registry.register(tagName, this::newTag);
+    }
+
+    /**
+     * Creates the tag object for a registered tag.
+     *
+     * @param tagId   the id of the tag
+     * @param tagName the name of the tag
+     * @return the new tag
+     */
+    protected Tag newTag(int tagId, String tagName) {
+        return new DefaultTag(tagId, tagName);
+    }
+
+    /**
+     * Atomically moves an existing tag to a new, unused name.
+     *
+     * @param oldTagName the current name of the tag
+     * @param newTagName the new name of the tag
+     * @return the renamed tag
+     * @throws NoSuchTagException if no tag exists with the old name
+     * @throws TagExistsException if a tag already exists with the new name
+     */
+    protected final Tag renameTag(String oldTagName, String newTagName) throws NoSuchTagException, TagExistsException {
+        return this.registry.rename(oldTagName, newTagName, this::newTag);
+    }
+
     /**
      * Checks for existence of a tag to prevent duplication.
      *
@@ -103,14 +237,6 @@ public abstract class AbstractFileTagManager implements TagManager {
      * @throws NoSuchTagException if no tag exits with the provided name.
      */
     protected final Tag getExistingTag(String tag) throws NoSuchTagException {
-        long stamp = this.taggedFile.getLock().readLock();
-        try {
-            return this.taggedFile.getTags().stream()
-                    .filter(new DefaultTag(tag)::equals)
-                    .findFirst()
-                    .orElseThrow(NoSuchTagException::new);
-        } finally {
-            this.taggedFile.getLock().unlockRead(stamp);
-        }
+        return this.registry.get(tag);
     }
 }
@@ -0,0 +1,255 @@
+package com.developersboard.manager.file.impl;
+
+import com.developersboard.manager.file.AsyncTagManager;
+import com.developersboard.manager.file.TagManager;
+import com.developersboard.shared.Page;
+import com.developersboard.shared.Tag;
+import com.developersboard.shared.TaggedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous tag manager running every operation of a blocking one on an
+ * executor. The executor owns the threads blocked on locks and I/O, so that
+ * callers only ever wait on futures.
+ */
+public class ExecutorAsyncTagManager implements AsyncTagManager, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorAsyncTagManager.class);
+
+    public static final int DEFAULT_THREADS = 64;
+
+    /**
+     * First feature release where virtual threads are no preview feature.
+     */
+    private static final int VIRTUAL_THREADS_RELEASE = 21;
+
+    /**
+     * A blocking operation of the delegate.
+     *
+     * @param <T> the result of the operation
+     */
+    @FunctionalInterface
+    private interface Operation<T> {
+        T call() throws Exception;
+    }
+
+    private final TagManager delegate;
+    private final ExecutorService executor;
+
+    /**
+     * @param delegate the tag manager doing the work
+     * @param executor the executor running the operations, closed along with this manager
+     */
+    public ExecutorAsyncTagManager(TagManager delegate, ExecutorService executor) {
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the executor for the operations: a virtual thread per operation
+     * from Java 21 on, if allowed, or else a bounded pool of daemon threads,
+     * queueing the operations beyond its size.
+     *
+     * @param threads the size of the pool, if no virtual threads are used
+     * @param virtual true to use virtual threads when the runtime has them
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(int threads, boolean virtual) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        if (virtual && Runtime.version().feature() >= VIRTUAL_THREADS_RELEASE) {
+            try {
+                // looked up reflectively, as the sources target Java 17
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Virtual threads unavailable, falling back to {} threads", threads, e);
+            }
+        }
+        var count = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "tag-async-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> addFiles(Collection<Path> files) {
+        return submit(() -> this.delegate.addFiles(files));
+    }
+
+    @Override
+    public CompletableFuture<Integer> removeFiles(Collection<Path> files) {
+        return submit(() -> this.delegate.removeFiles(files));
+    }
+
+    @Override
+    public CompletableFuture<Iterable<? extends Tag>> listTags() {
+        return submit(this.delegate::listTags);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> countTags() {
+        return submit(this.delegate::countTags);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> completeTags(String prefix, int limit) {
+        return submit(() -> this.delegate.completeTags(prefix, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> completeFiles(String prefix, int limit) {
+        return submit(() -> this.delegate.completeFiles(prefix, limit));
+    }
+
+    @Override
+    public CompletableFuture<Tag> addTag(String name) {
+        return submit(() -> this.delegate.addTag(name));
+    }
+
+    @Override
+    public CompletableFuture<Tag> editTag(String oldTagName, String newTagName) {
+        return submit(() -> this.delegate.editTag(oldTagName, newTagName));
+    }
+
+    @Override
+    public CompletableFuture<Tag> deleteTag(String tagName) {
+        return submit(() -> this.delegate.deleteTag(tagName));
+    }
+
+    @Override
+    public CompletableFuture<Page<? extends TaggedFile>> listAllFiles(String cursor, int limit) {
+        return submit(() -> this.delegate.listAllFiles(cursor, limit));
+    }
+
+    @Override
+    public CompletableFuture<Page<? extends TaggedFile>> listFilesByTag(String tag, String cursor, int limit) {
+        return submit(() -> this.delegate.listFilesByTag(tag, cursor, limit));
+    }
+
+    @Override
+    public CompletableFuture<Iterable<? extends TaggedFile>> findFiles(String query) {
+        return submit(() -> this.delegate.findFiles(query));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tagFile(String file, String tag) {
+        return submit(() -> this.delegate.tagFile(file, tag));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> removeTag(String file, String tag) {
+        return submit(() -> this.delegate.removeTag(file, tag));
+    }
+
+    @Override
+    public CompletableFuture<Integer> tagFiles(Collection<String> files, String tag) {
+        return submit(() -> this.delegate.tagFiles(files, tag));
+    }
+
+    @Override
+    public CompletableFuture<Integer> untagFiles(Collection<String> files, String tag) {
+        return submit(() -> this.delegate.untagFiles(files, tag));
+    }
+
+    @Override
+    public CompletableFuture<Iterable<? extends Tag>> getTags(String file) {
+        return submit(() -> this.delegate.getTags(file));
+    }
+
+    @Override
+    public CompletableFuture<String> catAllFiles(String tag) {
+        return submit(() -> this.delegate.catAllFiles(tag));
+    }
+
+    @Override
+    public CompletableFuture<Long> catAllFiles(String tag, WritableByteChannel out) {
+        return submit(() -> this.delegate.catAllFiles(tag, out));
+    }
+
+    @Override
+    public CompletableFuture<Void> echoToAllFiles(String tag, String content) {
+        return submit(() -> {
+            this.delegate.echoToAllFiles(tag, content);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> readFile(String file) {
+        return submit(() -> this.delegate.readFile(file));
+    }
+
+    @Override
+    public CompletableFuture<Void> writeFile(String file, String content) {
+        return submit(() -> {
+            this.delegate.writeFile(file, content);
+            return null;
+        });
+    }
+
+    /**
+     * Stops the executor, interrupting the operations still running. The
+     * operations not started yet are cancelled.
+     */
+    @Override
+    public void close() {
+        for (Runnable pending : this.executor.shutdownNow()) {
+            if (pending instanceof Task<?> task) {
+                task.future.cancel(false);
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        var task = new Task<>(operation);
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.future.completeExceptionally(e);
+        }
+
+        return task.future;
+    }
+
+    /**
+     * An operation queued on the executor, along with its future.
+     */
+    private static final class Task<T> implements Runnable {
+
+        private final Operation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            // cancelled before running, e.g. by a caller that gave up waiting
+            if (this.future.isDone()) {
+                return;
+            }
+            try {
+                this.future.complete(this.operation.call());
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+            }
+        }
+    }
+}
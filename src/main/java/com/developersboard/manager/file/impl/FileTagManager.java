@@ -2,102 +2,1251 @@ package com.developersboard.manager.file.impl;
 
 import com.developersboard.exception.NoSuchTagException;
 import com.developersboard.exception.TagExistsException;
+import com.developersboard.manager.file.cache.ContentCache;
+import com.developersboard.manager.file.index.TagIndex;
+import com.developersboard.manager.file.index.TagQuery;
+import com.developersboard.manager.file.io.FileSync;
+import com.developersboard.manager.file.io.ParallelFileIo;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.manager.file.lock.FileLockSet;
+import com.developersboard.manager.file.pack.PackStore;
+import com.developersboard.manager.file.persist.TagJournal;
+import com.developersboard.manager.file.persist.TagStore;
+import com.developersboard.manager.file.version.ContentVersions;
+import com.developersboard.shared.Page;
 import com.developersboard.shared.Tag;
 import com.developersboard.shared.TaggedFile;
+import com.developersboard.shared.impl.DefaultTag;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class FileTagManager extends AbstractFileTagManager {
 
-    public FileTagManager(Tag tag, TaggedFile taggedFile) {
-        super(tag, taggedFile);
+    private static final Logger LOG = LoggerFactory.getLogger(FileTagManager.class);
+
+    /**
+     * Optimistic reads of a file attempted before waiting on its lock
+     */
+    private static final int OPTIMISTIC_READS = 3;
+
+    /**
+     * Read/write locks of the files, always acquired before the index lock.
+     */
+    private final FileLockManager locks;
+
+    /**
+     * Index of the files carrying each tag; its lock guards every tag membership.
+     */
+    private final TagIndex index;
+
+    /**
+     * Pool reading and writing the files of a tag concurrently once they are locked.
+     */
+    private final ParallelFileIo io;
+
+    /**
+     * Contents of the files as of each echo, read by catAll without file locks when enabled.
+     */
+    private final ContentVersions versions;
+
+    /**
+     * Snapshot and journal of the tags, when they persist across restarts.
+     */
+    private final TagStore store;
+
+    /**
+     * Journal recording every change to the tags, or null when they do not
+     * persist. Changes are appended under the index lock, in the order they
+     * are applied in, which is why additions to the catalog of tags also take
+     * the lock when journaled.
+     */
+    private volatile TagJournal journal;
+
+    private Tag untagged;
+
+    public FileTagManager(Tag tag, FileLockManager locks, ParallelFileIo io, ContentCache cache,
+                          ContentVersions versions, TagStore store, FileSync sync, PackStore pack) {
+        super(tag, cache, sync, pack);
+        this.locks = locks;
+        this.index = new TagIndex(this.registry, locks);
+        this.io = io;
+        this.versions = versions;
+        this.store = store;
+        locks.getMetrics().setFileNames(this::fileName);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When the tags persist, the index starts from the tags and files
+     * recovered from the store instead of starting empty.
+     */
     @Override
     public void init(List<Path> files) {
-        // TODO Auto-generated method stub
+        long stamp = this.index.getLock().writeLock();
+        try {
+            this.index.clear();
+            this.locks.clear();
+            this.cache.clear();
+            this.versions.clear();
+            this.journal = null;
+            this.untagged = createUniqueTag(this.tag.getName());
+            if (this.store.isEnabled()) {
+                this.journal = this.store.recover(this::restore, this::replay);
+            }
+            this.pack.open();
+
+            for (Path path : files) {
+                this.index.addFile(path.toString(), this.untagged.getName());
+            }
+        } catch (TagExistsException | NoSuchTagException e) {
+            throw new IllegalStateException("Default tag could not be registered", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover the tags or packed files", e);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        if (this.journal != null) {
+            this.store.scheduleCheckpoints(this::checkpoint);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the index to the store and drops the journal it
+     * makes redundant. Only the capture of the index holds its lock.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void checkpoint() throws IOException {
+        TagIndex.Image image;
+        long generation;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            var current = this.journal;
+            if (current == null) {
+                return;
+            }
+            image = this.index.capture();
+            generation = current.rotate();
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        this.store.writeSnapshot(generation, image);
+    }
+
+    /**
+     * Restores the index from a snapshot, registering the default tag anew
+     * if the snapshot lacks it. Called under the write lock of the index.
+     */
+    private void restore(TagIndex.Image image) throws IOException {
+        try {
+            this.index.restore(image, this::newTag);
+            var restored = this.registry.find(this.tag.getName());
+            this.untagged = restored != null ? restored : createUniqueTag(this.tag.getName());
+        } catch (TagExistsException e) {
+            throw new IOException("Snapshot holds a tag twice", e);
+        }
+    }
+
+    /**
+     * Applies a change read back from the journal. Called under the write lock
+     * of the index, before the journal is opened, so nothing is recorded again.
+     * Files tagged are registered on the way, as they may have been added
+     * after the snapshot.
+     */
+    private void replay(TagJournal.Entry entry) {
+        var args = entry.args();
+        try {
+            switch (entry.op()) {
+                case ADD_TAG -> createUniqueTag(args.get(0));
+                case EDIT_TAG -> renameTag(args.get(0), args.get(1));
+                case DELETE_TAG -> this.registry.removeEmpty(args.get(0));
+                case TAG_FILES -> {
+                    var fileIds = new RoaringBitmap();
+                    for (String file : args.subList(1, args.size())) {
+                        fileIds.add(this.index.addFile(file, this.untagged.getName()));
+                    }
+                    tagAll(fileIds, args.get(0));
+                }
+                case UNTAG_FILES -> {
+                    var fileIds = new RoaringBitmap();
+                    for (String file : args.subList(1, args.size())) {
+                        int fileId = this.index.fileId(file);
+                        if (fileId >= 0) {
+                            fileIds.add(fileId);
+                        }
+                    }
+                    untagAll(fileIds, args.get(0));
+                }
+                case FORGET_FILES -> forget(args.stream().map(Paths::get).toList());
+            }
+        } catch (IOException e) {
+            // covers the checked tag exceptions, which a consistent journal never raises
+            LOG.warn("Skipping journal entry {}: {}", entry, e.toString());
+        }
+    }
+
+    /**
+     * Records a change in the journal, if the tags persist. Called under the
+     * lock ordering the change.
+     */
+    private void log(TagJournal.Op op, List<String> args) {
+        var current = this.journal;
+        if (current != null) {
+            current.append(op, args);
+        }
+    }
+
+    private void log(TagJournal.Op op, String... args) {
+        log(op, List.of(args));
+    }
+
+    /**
+     * Records files gaining or losing a tag, by name, as ids are not kept
+     * across restarts when files are added in a different order.
+     */
+    private void log(TagJournal.Op op, String tag, RoaringBitmap fileIds) {
+        if (this.journal == null || fileIds.isEmpty()) {
+            return;
+        }
+        var args = new ArrayList<String>(fileIds.getCardinality() + 1);
+        args.add(tag);
+        args.addAll(names(fileIds));
+        log(op, args);
+    }
+
+    /**
+     * Waits for the changes recorded so far to be durable. Called once the
+     * locks are released, so that concurrent changes commit together.
+     */
+    private void syncJournal() {
+        var current = this.journal;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the tag journal", e);
+        }
+    }
+
+    @Override
+    public int addFiles(Collection<Path> files) {
+        long stamp = this.index.getLock().writeLock();
+        try {
+            if (this.untagged == null) {
+                throw new IllegalStateException("Files added before init");
+            }
+            int known = this.index.fileCount();
+            for (Path path : files) {
+                this.index.addFile(path.toString(), this.untagged.getName());
+            }
+
+            return this.index.fileCount() - known;
+        } catch (NoSuchTagException e) {
+            throw new IllegalStateException("Default tag is not registered", e);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int removeFiles(Collection<Path> files) {
+        int removed;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            removed = forget(files);
+            if (removed > 0) {
+                log(TagJournal.Op.FORGET_FILES, files.stream().map(Path::toString).toList());
+            }
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        if (removed > 0) {
+            syncJournal();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Drops deleted files from the pack, if packed. A failure only leaves
+     * their contents behind, to be dropped again on the next removal.
+     */
+    private void forgetPacked(Collection<?> files) {
+        try {
+            this.pack.removeAll(files.stream().map(Object::toString).toList());
+        } catch (IOException e) {
+            LOG.warn("Could not drop {} deleted files from the pack", files.size(), e);
+        }
+    }
+
+    /**
+     * Removes files, and the files below directories, from the index. The
+     * caller must hold the write lock of the index.
+     *
+     * @param files the deleted files or directories
+     * @return the number of files removed
+     */
+    private int forget(Collection<Path> files) {
+        int removed = 0;
+        var directories = new HashSet<Path>();
+        for (Path path : files) {
+            int fileId = this.index.fileId(path.toString());
+            if (fileId >= 0) {
+                removed += this.index.removeFile(fileId) ? 1 : 0;
+                this.cache.invalidate(path);
+            } else {
+                directories.add(path);
+            }
+        }
+        if (!directories.isEmpty()) {
+            removed += removeFilesBelow(directories);
+        }
+        if (removed > 0) {
+            forgetPacked(files);
+        }
+
+        return removed;
     }
 
     @Override
     public Iterable<? extends Tag> listTags() {
-        // TODO Auto-generated method stub
-        return null;
+        return this.registry.tags();
+    }
+
+    @Override
+    public Map<String, Long> countTags() {
+        return this.registry.counts();
+    }
+
+    @Override
+    public List<String> completeTags(String prefix, int limit) {
+        return this.registry.complete(prefix, limit);
+    }
+
+    @Override
+    public List<String> completeFiles(String prefix, int limit) {
+        return this.index.completeFiles(prefix, File.separatorChar, limit);
     }
 
     @Override
     public Tag addTag(String name) throws TagExistsException {
-        // TODO Auto-generated method stub
-        return null;
+        if (this.journal == null) {
+            return createUniqueTag(name);
+        }
+        Tag created;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            created = createUniqueTag(name);
+            log(TagJournal.Op.ADD_TAG, name);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        syncJournal();
+
+        return created;
     }
 
     @Override
     public Tag editTag(String oldTagName, String newTagName) throws TagExistsException, NoSuchTagException {
-        // TODO Auto-generated method stub
-        return null;
+        if (oldTagName.equals(newTagName)) {
+            return getExistingTag(oldTagName);
+        }
+
+        // the write lock keeps deletes, which hold the read lock, off the tag while it moves
+        Tag renamed;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            renamed = renameTag(oldTagName, newTagName);
+            log(TagJournal.Op.EDIT_TAG, oldTagName, newTagName);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        syncJournal();
+
+        return renamed;
     }
 
     @Override
     public Tag deleteTag(String tagName) throws NoSuchTagException, DirectoryNotEmptyException {
-        // TODO Auto-generated method stub
-        return null;
+        // the read lock only keeps memberships still while the emptiness is checked
+        Tag deleted;
+        long stamp = this.index.getLock().readLock();
+        try {
+            deleted = this.registry.removeEmpty(tagName);
+            log(TagJournal.Op.DELETE_TAG, tagName);
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+        syncJournal();
+
+        return deleted;
     }
 
     @Override
     public Iterable<? extends TaggedFile> listAllFiles() {
-        // TODO Auto-generated method stub
-        return null;
+        return this.index.allFiles();
+    }
+
+    @Override
+    public Page<TaggedFile> listAllFiles(String cursor, int limit) {
+        long stamp = this.index.getLock().readLock();
+        try {
+            return this.index.page(cursor, limit);
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Page<TaggedFile> listFilesByTag(String tag, String cursor, int limit) throws NoSuchTagException {
+        long stamp = this.index.getLock().readLock();
+        try {
+            return this.index.page(this.index.posting(tag), cursor, limit);
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
     }
 
     @Override
     public Iterable<? extends TaggedFile> listFilesByTag(String tag) throws NoSuchTagException {
-        // TODO Auto-generated method stub
-        return null;
+        long stamp = this.index.getLock().readLock();
+        try {
+            return this.index.resolve(this.index.posting(tag).clone());
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Iterable<? extends TaggedFile> findFiles(String query) throws NoSuchTagException {
+        var tagQuery = TagQuery.parse(query);
+
+        long stamp = this.index.getLock().readLock();
+        try {
+            return this.index.resolve(this.index.query(tagQuery));
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public AddTagStatus tryAddTag(String name) {
+        if (this.registry.contains(name)) {
+            return AddTagStatus.TAG_EXISTS;
+        }
+        try {
+            addTag(name);
+            return AddTagStatus.ADDED;
+        } catch (TagExistsException e) {
+            // lost a race with a concurrent add of the same name
+            return AddTagStatus.TAG_EXISTS;
+        }
     }
 
     @Override
     public boolean tagFile(String file, String tag) throws NoSuchFileException, NoSuchTagException {
-        // TODO Auto-generated method stub
-        return false;
+        return switch (tryTagFile(file, tag)) {
+            case TAGGED -> true;
+            case ALREADY_TAGGED -> false;
+            case NO_SUCH_FILE -> throw new NoSuchFileException(file);
+            case NO_SUCH_TAG -> throw new NoSuchTagException();
+        };
+    }
+
+    @Override
+    public TagFileStatus tryTagFile(String file, String tag) {
+        var status = tagFileLocked(file, tag);
+        if (status == TagFileStatus.TAGGED) {
+            syncJournal();
+        }
+
+        return status;
+    }
+
+    private TagFileStatus tagFileLocked(String file, String tag) {
+        long stamp = this.index.getLock().writeLock();
+        try {
+            int fileId = this.index.fileId(file);
+            if (fileId < 0) {
+                return TagFileStatus.NO_SUCH_FILE;
+            }
+            var existingTag = this.registry.find(tag);
+            if (existingTag == null) {
+                return TagFileStatus.NO_SUCH_TAG;
+            }
+            if (!this.index.tag(tag, fileId)) {
+                return TagFileStatus.ALREADY_TAGGED;
+            }
+            if (!existingTag.equals(this.untagged)) {
+                this.index.untag(this.untagged.getName(), fileId);
+            }
+            log(TagJournal.Op.TAG_FILES, tag, file);
+
+            return TagFileStatus.TAGGED;
+        } catch (NoSuchTagException e) {
+            // renamed since it was found, which the index lock does not prevent
+            return TagFileStatus.NO_SUCH_TAG;
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
     }
 
     @Override
     public boolean removeTag(String file, String tag) throws NoSuchFileException, NoSuchTagException {
-        // TODO Auto-generated method stub
-        return false;
+        return switch (tryRemoveTag(file, tag)) {
+            case REMOVED -> true;
+            case NOT_TAGGED -> false;
+            case NO_SUCH_FILE -> throw new NoSuchFileException(file);
+            case NO_SUCH_TAG -> throw new NoSuchTagException();
+        };
+    }
+
+    @Override
+    public RemoveTagStatus tryRemoveTag(String file, String tag) {
+        var status = removeTagLocked(file, tag);
+        if (status == RemoveTagStatus.REMOVED) {
+            syncJournal();
+        }
+
+        return status;
+    }
+
+    private RemoveTagStatus removeTagLocked(String file, String tag) {
+        long stamp = this.index.getLock().writeLock();
+        try {
+            int fileId = this.index.fileId(file);
+            if (fileId < 0) {
+                return RemoveTagStatus.NO_SUCH_FILE;
+            }
+            var existingTag = this.registry.find(tag);
+            if (existingTag == null) {
+                return RemoveTagStatus.NO_SUCH_TAG;
+            }
+            if (existingTag.equals(this.untagged) || !this.index.untag(tag, fileId)) {
+                return RemoveTagStatus.NOT_TAGGED;
+            }
+            if (this.index.tagCount(fileId) == 0) {
+                this.index.tag(this.untagged.getName(), fileId);
+            }
+            log(TagJournal.Op.UNTAG_FILES, tag, file);
+
+            return RemoveTagStatus.REMOVED;
+        } catch (NoSuchTagException e) {
+            // renamed since it was found
+            return RemoveTagStatus.NO_SUCH_TAG;
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int tagFiles(Collection<String> files, String tag) throws NoSuchFileException, NoSuchTagException {
+        int changed;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            changed = tagAll(getExistingFileIds(files), tag);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        if (changed > 0) {
+            syncJournal();
+        }
+
+        return changed;
+    }
+
+    @Override
+    public int tagFilesMatching(String glob, String tag) throws NoSuchTagException {
+        var matcher = globMatcher(glob);
+
+        int changed;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            changed = tagAll(getMatchingFileIds(glob, matcher), tag);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        if (changed > 0) {
+            syncJournal();
+        }
+
+        return changed;
+    }
+
+    @Override
+    public int untagFiles(Collection<String> files, String tag) throws NoSuchFileException, NoSuchTagException {
+        int changed;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            changed = untagAll(getExistingFileIds(files), tag);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        if (changed > 0) {
+            syncJournal();
+        }
+
+        return changed;
+    }
+
+    @Override
+    public int untagFilesMatching(String glob, String tag) throws NoSuchTagException {
+        var matcher = globMatcher(glob);
+
+        int changed;
+        long stamp = this.index.getLock().writeLock();
+        try {
+            changed = untagAll(getMatchingFileIds(glob, matcher), tag);
+        } finally {
+            this.index.getLock().unlockWrite(stamp);
+        }
+        if (changed > 0) {
+            syncJournal();
+        }
+
+        return changed;
     }
 
     @Override
     public Iterable<? extends Tag> getTags(String file) throws NoSuchFileException {
-        // TODO Auto-generated method stub
-        return null;
+        long stamp = this.index.getLock().readLock();
+        try {
+            return this.index.tags(getExistingFileId(file));
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
     }
 
     @Override
     public String catAllFiles(String tag) throws NoSuchTagException, IOException {
-        // TODO Auto-generated method stub
-        return null;
+        if (this.versions.isEnabled()) {
+            try (var snapshot = this.versions.open()) {
+                return String.join("", readVersions(snapshot, tag));
+            }
+        }
+        try (var files = lockFilesByTag(tag, false)) {
+            return String.join("", readFiles(files.names()));
+        }
+    }
+
+    /**
+     * Reads many files, the packed ones in segment order and the others
+     * concurrently on the I/O pool.
+     *
+     * @param files the names of the files
+     * @return the contents, in the order of the files
+     * @throws IOException if a file cannot be read
+     */
+    private List<String> readFiles(List<String> files) throws IOException {
+        if (!this.pack.isEnabled()) {
+            return this.io.map(files, this::readFile);
+        }
+        var packed = this.pack.readAll(files);
+        var plain = new ArrayList<String>();
+        for (int i = 0; i < packed.length; i++) {
+            if (packed[i] == null) {
+                plain.add(files.get(i));
+            }
+        }
+        var read = this.io.map(plain, this::readFile).iterator();
+        var contents = new ArrayList<String>(packed.length);
+        for (byte[] content : packed) {
+            contents.add(content != null ? new String(content) : read.next());
+        }
+
+        return contents;
+    }
+
+    @Override
+    public long catAllFiles(String tag, WritableByteChannel out) throws NoSuchTagException, IOException {
+        long written = 0;
+        if (this.versions.isEnabled()) {
+            try (var snapshot = this.versions.open()) {
+                var files = taggedFiles(tag);
+                for (int i = 0; i < files.ids().length; i++) {
+                    var buffer = ByteBuffer.wrap(readVersion(snapshot, files.ids()[i], files.names().get(i)).getBytes());
+                    while (buffer.hasRemaining()) {
+                        written += out.write(buffer);
+                    }
+                }
+            }
+
+            return written;
+        }
+        try (var files = lockFilesByTag(tag, false)) {
+            var packed = this.pack.isEnabled() ? this.pack.readAll(files.names()) : new byte[files.names().size()][];
+            for (int i = 0; i < packed.length; i++) {
+                var content = packed[i];
+                if (content == null) {
+                    // fresh cached contents are written from memory, the files too large to be cached from disk
+                    var cached = this.cache.readIfFits(Paths.get(files.names().get(i)));
+                    if (cached == null) {
+                        written += transferFile(files.names().get(i), out);
+                        continue;
+                    }
+                    content = cached.getBytes();
+                }
+                var buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    written += out.write(buffer);
+                }
+            }
+        }
+
+        return written;
     }
 
     @Override
     public void echoToAllFiles(String tag, String content) throws NoSuchTagException, IOException {
-        // TODO Auto-generated method stub
+        var bytes = content.getBytes();
+        if (this.pack.accepts(bytes)) {
+            echoPacked(tag, content, bytes);
+            return;
+        }
+        var temps = new ConcurrentHashMap<String, Path>();
+        ParallelFileIo.FileTask<Path> writeTemp = file -> {
+            var temp = writeTempFile(file, bytes);
+            temps.put(file, temp);
+            return temp;
+        };
+        List<String> committed;
+        try {
+            // phase one, without locks: write the new content next to every file, and force it in one go
+            this.io.map(fileNames(tag), writeTemp);
+            this.sync.syncFiles(temps.values());
+
+            // phase two: under the write locks, only atomic renames are left
+            try (var files = lockFilesByTag(tag, true)) {
+                // files tagged since the first phase
+                var tagged = files.names().stream().filter(file -> !temps.containsKey(file)).toList();
+                this.sync.syncFiles(this.io.map(tagged, writeTemp));
+                if (this.versions.isEnabled()) {
+                    commitVersion(files, temps, content);
+                } else {
+                    commitFiles(files.names(), temps);
+                }
+                // too large to be packed, so the plain files are the contents now, as in writeFile;
+                // dropped under the write locks, as readers look in the pack first
+                this.pack.removeAll(files.names());
+                committed = files.names();
+            }
+        } finally {
+            // files untagged meanwhile, or left over by a failure
+            deleteTempFiles(temps.values());
+        }
+        // once the locks are released, as the renames are already visible
+        this.sync.syncDirectories(committed.stream().map(Paths::get).toList());
+    }
+
+    /**
+     * Echoes into packed files: the whole tag is one append to the pack,
+     * under the write locks of the files, then forced once they are released.
+     */
+    private void echoPacked(String tag, String content, byte[] bytes) throws NoSuchTagException, IOException {
+        Path segment;
+        try (var files = lockFilesByTag(tag, true)) {
+            if (this.versions.isEnabled()) {
+                var commit = this.versions.prepare(files.fileIds());
+                String committed = null;
+                String[] previous = null;
+                try {
+                    previous = readFiles(names(commit.getMissing())).toArray(String[]::new);
+                    segment = packFiles(files.names(), bytes);
+                    committed = content;
+                } finally {
+                    commit.finish(committed, previous);
+                }
+            } else {
+                segment = packFiles(files.names(), bytes);
+            }
+            forgetPackedIfRemoved(files.fileIds());
+        }
+        this.sync.syncFiles(List.of(segment));
+    }
+
+    /**
+     * Drops the packed contents of the files removed from the index since
+     * they were locked, which their removal could not drop as they were not
+     * packed yet. Checked under the read lock, which orders this after any
+     * removal it missed, while later removals drop the contents themselves.
+     */
+    private void forgetPackedIfRemoved(RoaringBitmap fileIds) {
+        long stamp = this.index.getLock().readLock();
+        try {
+            var removed = new ArrayList<String>();
+            fileIds.forEach((int fileId) -> {
+                if (!this.index.contains(fileId)) {
+                    removed.add(this.index.fileName(fileId));
+                }
+            });
+            if (!removed.isEmpty()) {
+                forgetPacked(removed);
+            }
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    private Path packFiles(List<String> files, byte[] content) throws IOException {
+        var segment = this.pack.writeAll(files, content);
+        for (String file : files) {
+            this.cache.invalidate(Paths.get(file));
+        }
+
+        return segment;
+    }
+
+    /**
+     * Moves the temporary files over the files, one at a time: renames within
+     * a directory contend on it, so running them concurrently does not help.
+     */
+    private void commitFiles(List<String> files, Map<String, Path> temps) throws IOException {
+        for (String file : files) {
+            commitFile(temps.get(file), file);
+            temps.remove(file);
+        }
+    }
+
+    /**
+     * Commits an echo as a new generation of the contents. Readers opened
+     * before it keep seeing the previous contents, captured here for the
+     * files that have none in memory yet.
+     */
+    private void commitVersion(LockedFiles files, Map<String, Path> temps, String content) throws IOException {
+        var commit = this.versions.prepare(files.fileIds());
+        String committed = null;
+        String[] previous = null;
+        try {
+            previous = this.io.map(names(commit.getMissing()), this::readFile).toArray(String[]::new);
+            commitFiles(files.names(), temps);
+            committed = content;
+        } finally {
+            commit.finish(committed, previous);
+        }
+    }
+
+    @Override
+    protected void written(String file, String content) {
+        if (!this.versions.isEnabled()) {
+            return;
+        }
+        long stamp = this.index.getLock().readLock();
+        try {
+            int fileId = this.index.fileId(file);
+            if (fileId >= 0) {
+                this.versions.overwrite(fileId, content);
+            }
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
     }
 
     @Override
     public long lockFile(String name, boolean forWrite) throws NoSuchFileException {
-        // TODO Auto-generated method stub
-        return 0;
+        return this.locks.lock(getFileId(name), forWrite);
     }
 
     @Override
     public void unLockFile(String name, long stamp, boolean forWrite) throws NoSuchFileException {
-        // TODO Auto-generated method stub
+        this.locks.unlock(getFileId(name), stamp, forWrite);
+    }
+
+    @Override
+    protected Tag newTag(int tagId, String tagName) {
+        return new DefaultTag(tagId, tagName, this.index.files(tagId));
+    }
+
+    /**
+     * Locks every file carrying a tag, as of a snapshot of its posting.
+     * <p>
+     * File locks are taken first, in ascending id order, and the tag's files
+     * are then checked not to have changed meanwhile; if they did, everything
+     * is released and the acquisition starts over with the new set of files.
+     * The read lock of the index is only held for the check, never across the
+     * I/O done on the files, so that a slow reader, such as a cat streamed to
+     * a terminal, does not hold up the writers of the index. Files tagged or
+     * untagged after the check are not covered by the operation.
+     *
+     * @param tag      the name of the tag
+     * @param forWrite true for write locks, false for read locks
+     * @return the locked files, to be released in bulk
+     * @throws NoSuchTagException     if no tag exists with the provided name
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    private LockedFiles lockFilesByTag(String tag, boolean forWrite) throws NoSuchTagException, InterruptedIOException {
+        while (true) {
+            RoaringBitmap fileIds;
+            long stamp = this.index.getLock().readLock();
+            try {
+                fileIds = this.index.posting(tag).clone();
+            } finally {
+                this.index.getLock().unlockRead(stamp);
+            }
+
+            var fileLocks = this.locks.lockAll(fileIds, forWrite);
+            List<String> names = null;
+            stamp = this.index.getLock().readLock();
+            try {
+                if (this.index.posting(tag).equals(fileIds)) {
+                    names = names(fileIds);
+                }
+            } catch (NoSuchTagException | RuntimeException e) {
+                fileLocks.close();
+                throw e;
+            } finally {
+                this.index.getLock().unlockRead(stamp);
+            }
+            if (names != null) {
+                return new LockedFiles(fileIds, names, fileLocks);
+            }
+            fileLocks.close();
+        }
+    }
+
+    /**
+     * Removes the files below any of a set of directories, in a single pass
+     * over the files. The caller must hold the write lock of the index.
+     *
+     * @param directories the deleted directories
+     * @return the number of files removed
+     */
+    private int removeFilesBelow(Set<Path> directories) {
+        var below = new RoaringBitmap();
+        this.index.universe().forEach((int fileId) -> {
+            var path = Paths.get(this.index.fileName(fileId)).getParent();
+            while (path != null && !directories.contains(path)) {
+                path = path.getParent();
+            }
+            if (path != null) {
+                below.add(fileId);
+            }
+        });
+        below.forEach((int fileId) -> {
+            this.index.removeFile(fileId);
+            this.cache.invalidate(Paths.get(this.index.fileName(fileId)));
+        });
+        forgetPacked(names(below));
+
+        return below.getCardinality();
+    }
+
+    /**
+     * Lists the files of a tag, without locking them.
+     *
+     * @param tag the name of the tag
+     * @return the ids and names of the files, in id order
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    private TaggedFiles taggedFiles(String tag) throws NoSuchTagException {
+        long stamp = this.index.getLock().readLock();
+        try {
+            var fileIds = this.index.posting(tag);
+            return new TaggedFiles(fileIds.toArray(), names(fileIds));
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Reads the files of a tag as of the generation of a snapshot, without
+     * locking them. The reads are spread over the I/O pool and validated
+     * against the lock of each file; the few files found in the middle of a
+     * commit are read again afterwards on this thread, since a pool thread
+     * must not wait on a lock whose holder may be waiting on the pool.
+     *
+     * @param snapshot the generation to read
+     * @param tag      the tag of the files
+     * @return the contents of the files, in id order
+     * @throws NoSuchTagException if no tag exists with the provided name
+     * @throws IOException        if a file cannot be read
+     */
+    private List<String> readVersions(ContentVersions.Snapshot snapshot, String tag) throws NoSuchTagException, IOException {
+        var files = taggedFiles(tag);
+        var positions = new HashMap<String, Integer>();
+        for (int i = 0; i < files.ids().length; i++) {
+            positions.put(files.names().get(i), i);
+        }
+        var contents = this.io.map(files.names(), file -> tryReadVersion(snapshot, files.ids()[positions.get(file)], file));
+        for (int i = 0; i < contents.size(); i++) {
+            if (contents.get(i) == null) {
+                contents.set(i, readVersion(snapshot, files.ids()[i], files.names().get(i)));
+            }
+        }
+
+        return contents;
+    }
+
+    /**
+     * Reads a file as of the generation of a snapshot, waiting for a commit
+     * in progress on the file to end if there is one.
+     */
+    private String readVersion(ContentVersions.Snapshot snapshot, int fileId, String file) throws IOException {
+        var content = tryReadVersion(snapshot, fileId, file);
+        if (content != null) {
+            return content;
+        }
+
+        long stamp = this.locks.lock(fileId, false);
+        try {
+            content = snapshot.get(fileId);
+            return content != null ? content : readFile(file);
+        } finally {
+            this.locks.unlock(fileId, stamp, false);
+        }
+    }
+
+    /**
+     * Reads a file as of the generation of a snapshot under an optimistic
+     * stamp of its lock, which never holds back a writer.
+     *
+     * @return the content, or null if the file was being committed meanwhile
+     */
+    private String tryReadVersion(ContentVersions.Snapshot snapshot, int fileId, String file) throws IOException {
+        // pinned, so that a writer cannot take a fresh lock of the file meanwhile
+        var lock = this.locks.pin(fileId);
+        try {
+            for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+                long stamp = lock.tryOptimisticRead();
+                if (stamp == 0L) {
+                    return null;
+                }
+                var content = snapshot.get(fileId);
+                if (content == null) {
+                    content = readFile(file);
+                }
+                if (lock.validate(stamp)) {
+                    return content;
+                }
+            }
+
+            return null;
+        } finally {
+            this.locks.unpin(fileId);
+        }
+    }
+
+    /**
+     * Lists the files carrying a tag under the read lock of the index. The
+     * files may change as soon as the lock is released.
+     *
+     * @param tag the name of the tag
+     * @return the names of the files
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    private List<String> fileNames(String tag) throws NoSuchTagException {
+        long stamp = this.index.getLock().readLock();
+        try {
+            return names(this.index.posting(tag));
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Resolves file ids to names. The caller must hold the index lock.
+     *
+     * @param fileIds the ids of the files
+     * @return the names of the files, in id order
+     */
+    private List<String> names(RoaringBitmap fileIds) {
+        var names = new ArrayList<String>(fileIds.getCardinality());
+        fileIds.forEach((int fileId) -> names.add(this.index.fileName(fileId)));
+
+        return names;
+    }
+
+    private static void deleteTempFiles(Collection<Path> temps) {
+        for (Path temp : temps) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                // a stale temporary file is skipped when listing files
+            }
+        }
+    }
+
+    /**
+     * Looks up the name of a file under the read lock of the index.
+     *
+     * @param fileId the id of the file
+     * @return the name of the file
+     */
+    private String fileName(int fileId) {
+        long stamp = this.index.getLock().readLock();
+        try {
+            return this.index.contains(fileId) ? this.index.fileName(fileId) : "#" + fileId;
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks up the id of a file under the read lock of the index.
+     *
+     * @param file the name of the file
+     * @return the id of the file
+     * @throws NoSuchFileException if no file exists with the provided name
+     */
+    private int getFileId(String file) throws NoSuchFileException {
+        long stamp = this.index.getLock().readLock();
+        try {
+            return getExistingFileId(file);
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Tags files in one batch, removing the default tag from those that
+     * carried it. The caller must hold the write lock of the index.
+     *
+     * @param fileIds the ids of the files
+     * @param tag     the name of the tag
+     * @return the number of files newly tagged
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    private int tagAll(RoaringBitmap fileIds, String tag) throws NoSuchTagException {
+        var existingTag = getExistingTag(tag);
+        var added = this.index.tagAll(tag, fileIds);
+        if (!existingTag.equals(this.untagged)) {
+            this.index.untagAll(this.untagged.getName(), added);
+        }
+        log(TagJournal.Op.TAG_FILES, tag, added);
+
+        return added.getCardinality();
+    }
+
+    /**
+     * Untags files in one batch, giving the default tag back to those left
+     * without tags. The caller must hold the write lock of the index.
+     *
+     * @param fileIds the ids of the files
+     * @param tag     the name of the tag
+     * @return the number of files untagged
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    private int untagAll(RoaringBitmap fileIds, String tag) throws NoSuchTagException {
+        var existingTag = getExistingTag(tag);
+        if (existingTag.equals(this.untagged)) {
+            return 0;
+        }
+        var removed = this.index.untagAll(tag, fileIds);
+        var emptied = new RoaringBitmap();
+        removed.forEach((int fileId) -> {
+            if (this.index.tagCount(fileId) == 0) {
+                emptied.add(fileId);
+            }
+        });
+        this.index.tagAll(this.untagged.getName(), emptied);
+        log(TagJournal.Op.UNTAG_FILES, tag, removed);
+
+        return removed.getCardinality();
+    }
+
+    /**
+     * Looks up the ids of known files, failing on the first unknown one. The
+     * caller must hold the index lock.
+     *
+     * @param files the names of the files
+     * @return the ids of the files
+     * @throws NoSuchFileException if any file is not registered
+     */
+    private RoaringBitmap getExistingFileIds(Collection<String> files) throws NoSuchFileException {
+        var fileIds = new RoaringBitmap();
+        for (String file : files) {
+            fileIds.add(getExistingFileId(file));
+        }
+
+        return fileIds;
+    }
+
+    /**
+     * Finds the files matching a glob. The caller must hold the index lock.
+     *
+     * @param glob    the glob, absolute or relative to {@link #BASEDIR}
+     * @param matcher the matcher of the glob
+     * @return the ids of the matching files
+     */
+    private RoaringBitmap getMatchingFileIds(String glob, PathMatcher matcher) {
+        boolean absolute = Paths.get(glob.replaceAll("[*?\\[\\]{}]", "_")).isAbsolute();
+        var fileIds = new RoaringBitmap();
+        this.index.universe().forEach((int fileId) -> {
+            var path = Paths.get(this.index.fileName(fileId));
+            if (!absolute && path.startsWith(BASEDIR)) {
+                path = BASEDIR.relativize(path);
+            }
+            if (matcher.matches(path)) {
+                fileIds.add(fileId);
+            }
+        });
+
+        return fileIds;
+    }
+
+    private static PathMatcher globMatcher(String glob) {
+        return FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    }
+
+    /**
+     * Looks up the id of a known file. The caller must hold the index lock.
+     *
+     * @param file the name of the file
+     * @return the id of the file
+     * @throws NoSuchFileException if no file exists with the provided name
+     */
+    private int getExistingFileId(String file) throws NoSuchFileException {
+        int fileId = this.index.fileId(file);
+        if (fileId < 0) {
+            throw new NoSuchFileException(file);
+        }
+
+        return fileId;
+    }
+
+    /**
+     * Files of a tag, as ids and names in the same order.
+     */
+    private record TaggedFiles(int[] ids, List<String> names) {
+    }
+
+    /**
+     * Files of a tag locked by {@link #lockFilesByTag}, as ids and names in
+     * the same order.
+     */
+    private record LockedFiles(RoaringBitmap fileIds, List<String> names, FileLockSet fileLocks)
+            implements AutoCloseable {
+
+        @Override
+        public void close() {
+            this.fileLocks.close();
+        }
     }
 }
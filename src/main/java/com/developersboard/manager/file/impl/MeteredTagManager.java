@@ -0,0 +1,355 @@
+package com.developersboard.manager.file.impl;
+
+import com.developersboard.exception.NoSuchTagException;
+import com.developersboard.exception.TagExistsException;
+import com.developersboard.manager.file.TagManager;
+import com.developersboard.manager.file.metrics.TagManagerMetrics;
+import com.developersboard.manager.file.metrics.TagManagerMetrics.Operation;
+import com.developersboard.shared.Page;
+import com.developersboard.shared.Tag;
+import com.developersboard.shared.TaggedFile;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tag manager recording the latency of every operation of another one,
+ * failed operations included. Lazily traversed results, such as file lists,
+ * are timed up to their creation only.
+ */
+public class MeteredTagManager implements TagManager {
+
+    private final TagManager delegate;
+    private final TagManagerMetrics metrics;
+
+    public MeteredTagManager(TagManager delegate, TagManagerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void init(List<Path> files) {
+        long start = System.nanoTime();
+        try {
+            this.delegate.init(files);
+        } finally {
+            this.metrics.record(Operation.INIT, start);
+        }
+    }
+
+    @Override
+    public int addFiles(Collection<Path> files) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.addFiles(files);
+        } finally {
+            this.metrics.record(Operation.ADD_FILES, start);
+        }
+    }
+
+    @Override
+    public int removeFiles(Collection<Path> files) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.removeFiles(files);
+        } finally {
+            this.metrics.record(Operation.REMOVE_FILES, start);
+        }
+    }
+
+    @Override
+    public Iterable<? extends Tag> listTags() {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.listTags();
+        } finally {
+            this.metrics.record(Operation.LIST_TAGS, start);
+        }
+    }
+
+    @Override
+    public Map<String, Long> countTags() {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.countTags();
+        } finally {
+            this.metrics.record(Operation.COUNT_TAGS, start);
+        }
+    }
+
+    @Override
+    public List<String> completeTags(String prefix, int limit) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.completeTags(prefix, limit);
+        } finally {
+            this.metrics.record(Operation.COMPLETE_TAGS, start);
+        }
+    }
+
+    @Override
+    public List<String> completeFiles(String prefix, int limit) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.completeFiles(prefix, limit);
+        } finally {
+            this.metrics.record(Operation.COMPLETE_FILES, start);
+        }
+    }
+
+    @Override
+    public Tag addTag(String name) throws TagExistsException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.addTag(name);
+        } finally {
+            this.metrics.record(Operation.ADD_TAG, start);
+        }
+    }
+
+    @Override
+    public AddTagStatus tryAddTag(String name) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.tryAddTag(name);
+        } finally {
+            this.metrics.record(Operation.ADD_TAG, start);
+        }
+    }
+
+    @Override
+    public Tag editTag(String oldTagName, String newTagName) throws TagExistsException, NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.editTag(oldTagName, newTagName);
+        } finally {
+            this.metrics.record(Operation.EDIT_TAG, start);
+        }
+    }
+
+    @Override
+    public Tag deleteTag(String tagName) throws NoSuchTagException, DirectoryNotEmptyException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.deleteTag(tagName);
+        } finally {
+            this.metrics.record(Operation.DELETE_TAG, start);
+        }
+    }
+
+    @Override
+    public Iterable<? extends TaggedFile> listAllFiles() {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.listAllFiles();
+        } finally {
+            this.metrics.record(Operation.LIST_ALL_FILES, start);
+        }
+    }
+
+    @Override
+    public Page<? extends TaggedFile> listAllFiles(String cursor, int limit) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.listAllFiles(cursor, limit);
+        } finally {
+            this.metrics.record(Operation.LIST_ALL_FILES, start);
+        }
+    }
+
+    @Override
+    public Page<? extends TaggedFile> listFilesByTag(String tag, String cursor, int limit) throws NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.listFilesByTag(tag, cursor, limit);
+        } finally {
+            this.metrics.record(Operation.LIST_FILES_BY_TAG, start);
+        }
+    }
+
+    @Override
+    public Iterable<? extends TaggedFile> listFilesByTag(String tag) throws NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.listFilesByTag(tag);
+        } finally {
+            this.metrics.record(Operation.LIST_FILES_BY_TAG, start);
+        }
+    }
+
+    @Override
+    public Iterable<? extends TaggedFile> findFiles(String query) throws NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.findFiles(query);
+        } finally {
+            this.metrics.record(Operation.FIND_FILES, start);
+        }
+    }
+
+    @Override
+    public boolean tagFile(String file, String tag) throws NoSuchFileException, NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.tagFile(file, tag);
+        } finally {
+            this.metrics.record(Operation.TAG_FILE, start);
+        }
+    }
+
+    @Override
+    public boolean removeTag(String file, String tag) throws NoSuchFileException, NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.removeTag(file, tag);
+        } finally {
+            this.metrics.record(Operation.REMOVE_TAG, start);
+        }
+    }
+
+    @Override
+    public TagFileStatus tryTagFile(String file, String tag) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.tryTagFile(file, tag);
+        } finally {
+            this.metrics.record(Operation.TAG_FILE, start);
+        }
+    }
+
+    @Override
+    public RemoveTagStatus tryRemoveTag(String file, String tag) {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.tryRemoveTag(file, tag);
+        } finally {
+            this.metrics.record(Operation.REMOVE_TAG, start);
+        }
+    }
+
+    @Override
+    public int tagFiles(Collection<String> files, String tag) throws NoSuchFileException, NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.tagFiles(files, tag);
+        } finally {
+            this.metrics.record(Operation.TAG_FILES, start);
+        }
+    }
+
+    @Override
+    public int tagFilesMatching(String glob, String tag) throws NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.tagFilesMatching(glob, tag);
+        } finally {
+            this.metrics.record(Operation.TAG_FILES, start);
+        }
+    }
+
+    @Override
+    public int untagFiles(Collection<String> files, String tag) throws NoSuchFileException, NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.untagFiles(files, tag);
+        } finally {
+            this.metrics.record(Operation.UNTAG_FILES, start);
+        }
+    }
+
+    @Override
+    public int untagFilesMatching(String glob, String tag) throws NoSuchTagException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.untagFilesMatching(glob, tag);
+        } finally {
+            this.metrics.record(Operation.UNTAG_FILES, start);
+        }
+    }
+
+    @Override
+    public Iterable<? extends Tag> getTags(String file) throws NoSuchFileException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.getTags(file);
+        } finally {
+            this.metrics.record(Operation.GET_TAGS, start);
+        }
+    }
+
+    @Override
+    public String catAllFiles(String tag) throws NoSuchTagException, IOException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.catAllFiles(tag);
+        } finally {
+            this.metrics.record(Operation.CAT_ALL_FILES, start);
+        }
+    }
+
+    @Override
+    public long catAllFiles(String tag, WritableByteChannel out) throws NoSuchTagException, IOException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.catAllFiles(tag, out);
+        } finally {
+            this.metrics.record(Operation.CAT_ALL_FILES, start);
+        }
+    }
+
+    @Override
+    public void echoToAllFiles(String tag, String content) throws NoSuchTagException, IOException {
+        long start = System.nanoTime();
+        try {
+            this.delegate.echoToAllFiles(tag, content);
+        } finally {
+            this.metrics.record(Operation.ECHO_TO_ALL_FILES, start);
+        }
+    }
+
+    @Override
+    public long lockFile(String name, boolean forWrite) throws NoSuchFileException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.lockFile(name, forWrite);
+        } finally {
+            this.metrics.record(Operation.LOCK_FILE, start);
+        }
+    }
+
+    @Override
+    public void unLockFile(String name, long stamp, boolean forWrite) throws NoSuchFileException {
+        long start = System.nanoTime();
+        try {
+            this.delegate.unLockFile(name, stamp, forWrite);
+        } finally {
+            this.metrics.record(Operation.UNLOCK_FILE, start);
+        }
+    }
+
+    @Override
+    public String readFile(String file) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return this.delegate.readFile(file);
+        } finally {
+            this.metrics.record(Operation.READ_FILE, start);
+        }
+    }
+
+    @Override
+    public void writeFile(String file, String content) throws IOException {
+        long start = System.nanoTime();
+        try {
+            this.delegate.writeFile(file, content);
+        } finally {
+            this.metrics.record(Operation.WRITE_FILE, start);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.developersboard.manager.file.index;
+
+import com.developersboard.shared.Tag;
+import com.developersboard.shared.TaggedFile;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Lightweight handle on a file registered with a {@link TagIndex}. Its tags
+ * live in the index, keyed by the file id, so handles are created on demand
+ * and dropped freely.
+ */
+final class IndexedFile implements TaggedFile {
+
+    private final TagIndex index;
+    private final int id;
+    private final String name;
+
+    IndexedFile(TagIndex index, int id, String name) {
+        this.index = index;
+        this.id = id;
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public StampedLock getLock() {
+        return this.index.fileLock(this.id);
+    }
+
+    @Override
+    public Collection<Tag> getTags() {
+        long stamp = this.index.getLock().readLock();
+        try {
+            int fileId = this.index.fileId(this.name);
+            return fileId < 0 ? List.of() : this.index.tags(fileId);
+        } finally {
+            this.index.getLock().unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var that = (IndexedFile) o;
+
+        return this.name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedFile{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+}
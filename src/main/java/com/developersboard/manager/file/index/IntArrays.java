@@ -0,0 +1,60 @@
+package com.developersboard.manager.file.index;
+
+import java.util.Arrays;
+
+/**
+ * Copy-on-write operations on small sorted int arrays used as sets.
+ * <p>
+ * The arrays are never modified in place, so a single instance can be shared
+ * by every file holding the same set of tags.
+ */
+final class IntArrays {
+
+    static final int[] EMPTY = new int[0];
+
+    private IntArrays() {
+    }
+
+    static boolean contains(int[] set, int value) {
+        return Arrays.binarySearch(set, value) >= 0;
+    }
+
+    /**
+     * Adds a value to a set.
+     *
+     * @return a new array holding the value, or the same array if it was already present
+     */
+    static int[] insert(int[] set, int value) {
+        int position = Arrays.binarySearch(set, value);
+        if (position >= 0) {
+            return set;
+        }
+        position = -position - 1;
+        var result = new int[set.length + 1];
+        System.arraycopy(set, 0, result, 0, position);
+        result[position] = value;
+        System.arraycopy(set, position, result, position + 1, set.length - position);
+
+        return result;
+    }
+
+    /**
+     * Removes a value from a set.
+     *
+     * @return a new array without the value, or the same array if it was absent
+     */
+    static int[] remove(int[] set, int value) {
+        int position = Arrays.binarySearch(set, value);
+        if (position < 0) {
+            return set;
+        }
+        if (set.length == 1) {
+            return EMPTY;
+        }
+        var result = new int[set.length - 1];
+        System.arraycopy(set, 0, result, 0, position);
+        System.arraycopy(set, position + 1, result, position, set.length - position - 1);
+
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package com.developersboard.manager.file.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable list of interned paths in sorted order, searched for completion.
+ * <p>
+ * Only the ids of the paths are kept, one int per path, and the paths are
+ * compared as UTF-8 bytes straight in the arena of a
+ * {@link StringInterner.View}, so that sorting and searching decode nothing
+ * but the strings listed. Unsigned UTF-8 byte order is the code point order
+ * of the strings.
+ */
+final class SortedPaths {
+
+    /**
+     * Below this length, runs are sorted by insertion
+     */
+    private static final int INSERTION_SORT_LENGTH = 16;
+
+    private final StringInterner.View paths;
+    private final int[] ids;
+
+    private SortedPaths(StringInterner.View paths, int[] ids) {
+        this.paths = paths;
+        this.ids = ids;
+    }
+
+    /**
+     * Sorts paths of a view by their bytes.
+     *
+     * @param paths the interned paths
+     * @param ids   the ids of the paths to sort, sorted in place and adopted
+     * @return the sorted paths
+     */
+    static SortedPaths sort(StringInterner.View paths, int[] ids) {
+        var sorted = new SortedPaths(paths, ids);
+        sorted.mergeSort(new int[ids.length], 0, ids.length);
+
+        return sorted;
+    }
+
+    /**
+     * Lists the paths starting with a prefix one segment at a time, as a
+     * shell completes paths: paths going on past a separator after the
+     * prefix are cut just after it, and listed once per distinct cut. The
+     * paths sharing a cut are skipped with a single binary search.
+     *
+     * @param prefix    the prefix, possibly empty
+     * @param separator the separator of the segments, an ASCII character
+     * @param limit     the maximum number of paths listed
+     * @return the paths and cut paths starting with the prefix, in code point
+     * order, the first limit of them if there are more
+     * @throws IllegalArgumentException if the separator is not ASCII
+     */
+    List<String> complete(String prefix, char separator, int limit) {
+        if (separator >= 0x80) {
+            throw new IllegalArgumentException("Separator must be ASCII: " + separator);
+        }
+        var matches = new ArrayList<String>(Math.min(Math.max(limit, 0), 64));
+        var bytes = this.paths.bytes();
+        var offsets = this.paths.offsets();
+        var key = prefix.getBytes(StandardCharsets.UTF_8);
+        int position = search(key, 0, key.length, false);
+        while (position < this.ids.length && matches.size() < limit) {
+            int id = this.ids[position];
+            int from = offsets[id];
+            int to = offsets[id + 1];
+            if (!startsWith(from, to, key, 0, key.length)) {
+                break;
+            }
+            int cut = from + key.length;
+            while (cut < to && bytes[cut] != separator) {
+                cut++;
+            }
+            if (cut == to) {
+                matches.add(this.paths.get(id));
+                position++;
+                continue;
+            }
+            // every path sharing this cut follows, and is listed once
+            matches.add(new String(bytes, from, cut + 1 - from, StandardCharsets.UTF_8));
+            position = search(bytes, from, cut + 1, true);
+        }
+
+        return matches;
+    }
+
+    int size() {
+        return this.ids.length;
+    }
+
+    /**
+     * Binary search of the first path not lower than a key or, past the paths
+     * starting with the key, of the first path greater and not starting with it.
+     */
+    private int search(byte[] key, int keyFrom, int keyTo, boolean past) {
+        var offsets = this.paths.offsets();
+        int low = 0;
+        int high = this.ids.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int id = this.ids[middle];
+            int from = offsets[id];
+            int to = offsets[id + 1];
+            boolean before = Arrays.compareUnsigned(this.paths.bytes(), from, to, key, keyFrom, keyTo) < 0
+                    || past && startsWith(from, to, key, keyFrom, keyTo);
+            if (before) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private boolean startsWith(int from, int to, byte[] key, int keyFrom, int keyTo) {
+        int length = keyTo - keyFrom;
+
+        return to - from >= length && Arrays.equals(this.paths.bytes(), from, from + length, key, keyFrom, keyTo);
+    }
+
+    private int compare(int id, int otherId) {
+        var bytes = this.paths.bytes();
+        var offsets = this.paths.offsets();
+
+        return Arrays.compareUnsigned(bytes, offsets[id], offsets[id + 1], bytes, offsets[otherId], offsets[otherId + 1]);
+    }
+
+    /**
+     * Sorts a range of the ids, through a buffer as long as the ids.
+     */
+    private void mergeSort(int[] buffer, int from, int to) {
+        var ids = this.ids;
+        if (to - from < INSERTION_SORT_LENGTH) {
+            for (int i = from + 1; i < to; i++) {
+                int id = ids[i];
+                int j = i;
+                while (j > from && compare(ids[j - 1], id) > 0) {
+                    ids[j] = ids[j - 1];
+                    j--;
+                }
+                ids[j] = id;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(buffer, from, middle);
+        mergeSort(buffer, middle, to);
+        if (compare(ids[middle - 1], ids[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, buffer, from, middle - from);
+        int left = from;
+        int right = middle;
+        int target = from;
+        while (left < middle && right < to) {
+            ids[target++] = compare(ids[right], buffer[left]) < 0 ? ids[right++] : buffer[left++];
+        }
+        // what is left of the right half is in place already
+        System.arraycopy(buffer, left, ids, target, middle - left);
+    }
+}
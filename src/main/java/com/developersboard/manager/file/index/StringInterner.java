@@ -0,0 +1,293 @@
+package com.developersboard.manager.file.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids, in insertion order, to strings such as file paths.
+ * <p>
+ * The strings are kept UTF-8 encoded back to back in a single byte arena and
+ * looked up through an open-addressing table of ids, so each entry costs its
+ * encoded length plus a few ints instead of a {@code String} or {@code Path}
+ * object graph. Strings are only materialised again on {@link #get(int)}.
+ * <p>
+ * Not thread-safe; callers provide their own synchronization. Entries are
+ * only ever appended, so a {@link View} taken under that synchronization
+ * stays readable without it.
+ */
+public class StringInterner {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY * 32];
+    private int[] offsets = new int[INITIAL_CAPACITY + 1];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    /**
+     * Open-addressing table holding {@code id + 1}, where 0 marks a free slot.
+     */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    /**
+     * Returns the id of a string, assigning the next free id if it is new.
+     *
+     * @param value the string to intern
+     * @return the id of the string
+     */
+    public int intern(String value) {
+        var encoded = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(encoded);
+        int slot = find(encoded, hash);
+        if (this.table[slot] != 0) {
+            return this.table[slot] - 1;
+        }
+
+        int id = append(encoded, hash);
+        this.table[slot] = id + 1;
+        if (this.size << 1 > this.table.length) {
+            rehash(this.table.length << 1);
+        }
+
+        return id;
+    }
+
+    /**
+     * Looks up the id of a string without interning it. The string is hashed
+     * and compared as UTF-8 straight from its chars, so a lookup allocates
+     * nothing, whether it hits or misses.
+     *
+     * @param value the string to look up
+     * @return the id of the string, or -1 if it was never interned
+     */
+    public int id(String value) {
+        int hash = hash(value);
+        int mask = this.table.length - 1;
+        int slot = hash & mask;
+        while (this.table[slot] != 0) {
+            int id = this.table[slot] - 1;
+            if (this.hashes[id] == hash && matches(this.bytes, this.offsets[id], this.offsets[id + 1], value)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Decodes the string with the given id.
+     *
+     * @param id an id returned by {@link #intern(String)}
+     * @return the interned string
+     */
+    public String get(int id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException(id);
+        }
+
+        return new String(this.bytes, this.offsets[id], this.offsets[id + 1] - this.offsets[id], StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Captures the strings interned so far. Growing the interner copies its
+     * arrays and appending never overwrites an existing entry, so the view
+     * is immutable.
+     *
+     * @return a view of the current entries
+     */
+    public View view() {
+        return new View(this.bytes, this.offsets, this.size);
+    }
+
+    /**
+     * Immutable view of the first {@code size} entries of an interner, safe to
+     * read from any thread once published.
+     */
+    public record View(byte[] bytes, int[] offsets, int size) {
+
+        /**
+         * Decodes the string with the given id.
+         *
+         * @param id an id lower than the size of the view
+         * @return the interned string
+         */
+        public String get(int id) {
+            if (id < 0 || id >= this.size) {
+                throw new IndexOutOfBoundsException(id);
+            }
+
+            return new String(this.bytes, this.offsets[id], this.offsets[id + 1] - this.offsets[id], StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Replaces the entries by those of a view, such as one read back from a
+     * snapshot, keeping their ids. The arrays of the view are adopted, not
+     * copied.
+     *
+     * @param view the entries to start from
+     */
+    public void restore(View view) {
+        int capacity = Math.max(view.size(), INITIAL_CAPACITY);
+        this.bytes = view.bytes();
+        this.offsets = view.offsets().length > capacity ? view.offsets() : Arrays.copyOf(view.offsets(), capacity + 1);
+        this.hashes = new int[capacity];
+        this.size = view.size();
+        for (int id = 0; id < this.size; id++) {
+            this.hashes[id] = hash(this.bytes, this.offsets[id], this.offsets[id + 1]);
+        }
+        rehash(Integer.highestOneBit(capacity) << 2);
+    }
+
+    public void clear() {
+        this.bytes = new byte[INITIAL_CAPACITY * 32];
+        this.offsets = new int[INITIAL_CAPACITY + 1];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.table = new int[INITIAL_CAPACITY * 2];
+        this.size = 0;
+    }
+
+    private int find(byte[] encoded, int hash) {
+        int mask = this.table.length - 1;
+        int slot = hash & mask;
+        while (this.table[slot] != 0) {
+            int id = this.table[slot] - 1;
+            if (this.hashes[id] == hash && Arrays.equals(this.bytes, this.offsets[id], this.offsets[id + 1],
+                    encoded, 0, encoded.length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private int append(byte[] encoded, int hash) {
+        int start = this.offsets[this.size];
+        if (start + encoded.length > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length << 1, start + encoded.length));
+        }
+        if (this.size == this.hashes.length) {
+            this.hashes = Arrays.copyOf(this.hashes, this.hashes.length << 1);
+            this.offsets = Arrays.copyOf(this.offsets, this.hashes.length + 1);
+        }
+        System.arraycopy(encoded, 0, this.bytes, start, encoded.length);
+        this.hashes[this.size] = hash;
+        this.offsets[this.size + 1] = start + encoded.length;
+
+        return this.size++;
+    }
+
+    private void rehash(int capacity) {
+        var rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = this.hashes[id] & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        this.table = rehashed;
+    }
+
+    private static int hash(byte[] encoded) {
+        return hash(encoded, 0, encoded.length);
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        // same as Arrays.hashCode over the range, which has no ranged variant
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Same as {@link #hash(byte[])} over the UTF-8 encoding of the string.
+     */
+    private static int hash(String value) {
+        int hash = 1;
+        for (int i = 0; i < value.length(); ) {
+            long code = encode(value, i);
+            for (int b = 0, length = encodedLength(code); b < length; b++) {
+                hash = 31 * hash + encodedByte(code, b);
+            }
+            i += encodedChars(code);
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Tells whether a range of the arena holds the UTF-8 encoding of a string.
+     */
+    private static boolean matches(byte[] bytes, int from, int to, String value) {
+        int position = from;
+        for (int i = 0; i < value.length(); ) {
+            long code = encode(value, i);
+            int length = encodedLength(code);
+            if (position + length > to) {
+                return false;
+            }
+            for (int b = 0; b < length; b++) {
+                if (bytes[position++] != encodedByte(code, b)) {
+                    return false;
+                }
+            }
+            i += encodedChars(code);
+        }
+
+        return position == to;
+    }
+
+    /**
+     * Encodes the code point at an index of a string as {@link String#getBytes}
+     * does in UTF-8, replacing unpaired surrogates by '?'.
+     *
+     * @return the bytes in the low four bytes, first byte lowest, then the
+     * number of bytes, then the number of chars consumed
+     */
+    private static long encode(String value, int index) {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            return pack(c, 1, 1);
+        }
+        if (c < 0x800) {
+            return pack(0xC0 | c >> 6 | (0x80 | c & 0x3F) << 8, 2, 1);
+        }
+        if (!Character.isSurrogate(c)) {
+            return pack(0xE0 | c >> 12 | (0x80 | c >> 6 & 0x3F) << 8 | (0x80 | c & 0x3F) << 16, 3, 1);
+        }
+        if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int cp = Character.toCodePoint(c, value.charAt(index + 1));
+            return pack(0xF0 | cp >> 18 | (0x80 | cp >> 12 & 0x3F) << 8 | (0x80 | cp >> 6 & 0x3F) << 16
+                    | (0x80 | cp & 0x3F) << 24, 4, 2);
+        }
+
+        return pack('?', 1, 1);
+    }
+
+    private static long pack(int bytes, int length, int chars) {
+        return (bytes & 0xFFFFFFFFL) | (long) length << 32 | (long) chars << 40;
+    }
+
+    private static byte encodedByte(long code, int index) {
+        return (byte) (code >>> (index << 3));
+    }
+
+    private static int encodedLength(long code) {
+        return (int) (code >>> 32) & 0xFF;
+    }
+
+    private static int encodedChars(long code) {
+        return (int) (code >>> 40);
+    }
+}
@@ -0,0 +1,657 @@
+package com.developersboard.manager.file.index;
+
+import com.developersboard.exception.NoSuchTagException;
+import com.developersboard.exception.TagExistsException;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.shared.Page;
+import com.developersboard.shared.Tag;
+import com.developersboard.shared.TaggedFile;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Inverted index from tags to the files carrying them.
+ * <p>
+ * File paths and tag names are interned to dense int ids. Every tag owns a
+ * compressed bitmap of the ids of its files, and every file a small sorted
+ * array of the ids of its tags, so neither side holds boxed object sets.
+ * Boolean tag queries are answered with bitmap intersections and unions, and
+ * {@link TaggedFile} objects are only created for the files a caller touches.
+ * <p>
+ * The tags themselves live in a lock-free {@link TagRegistry}. The memberships
+ * are not synchronized on their own: callers guard them with {@link #getLock()},
+ * holding the write lock to mutate and the read lock to query. The list of
+ * all files is the exception: it is kept as an immutable snapshot, tagged
+ * with the version of the file set it was built from, which readers get
+ * without locking until a file is added or removed. File names are
+ * completed likewise, from the ids of the registered files sorted by path
+ * once per version of the file set.
+ */
+public class TagIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Size of a decoded page cursor: the epoch of the index, then a file id
+     */
+    private static final int CURSOR_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final StampedLock lock = new StampedLock();
+    private final TagRegistry tags;
+    private final FileLockManager fileLocks;
+
+    private StringInterner paths = new StringInterner();
+    private int[][] fileTags = new int[INITIAL_CAPACITY][];
+
+    /**
+     * Ids of the registered files; a removed file keeps its id, reused if it comes back.
+     */
+    private RoaringBitmap live = new RoaringBitmap();
+
+    /**
+     * Version of the set of registered files, bumped under the write lock
+     * after every change to it.
+     */
+    private volatile long filesVersion;
+
+    /**
+     * Changes whenever {@link #clear()} renumbers the files, expiring the
+     * page cursors; random at first so that cursors do not outlive a restart.
+     */
+    private long epoch = ThreadLocalRandom.current().nextLong();
+    private volatile FilesSnapshot filesSnapshot;
+    private volatile NamesSnapshot namesSnapshot;
+
+    /**
+     * The registered files as of a version of the file set.
+     */
+    private record FilesSnapshot(long version, Collection<TaggedFile> files) {
+    }
+
+    /**
+     * The paths of the registered files, sorted as of a version of the file set.
+     */
+    private record NamesSnapshot(long version, SortedPaths names) {
+    }
+
+    /**
+     * Tag set shared by every file that only carries its initial tag.
+     */
+    private int[] initialTags = IntArrays.EMPTY;
+
+    public TagIndex(TagRegistry tags, FileLockManager fileLocks) {
+        this.tags = tags;
+        this.fileLocks = fileLocks;
+    }
+
+    public StampedLock getLock() {
+        return this.lock;
+    }
+
+    public TagRegistry getTags() {
+        return this.tags;
+    }
+
+    /**
+     * Drops every file and tag from the index.
+     */
+    public void clear() {
+        this.paths = new StringInterner();
+        this.fileTags = new int[INITIAL_CAPACITY][];
+        this.live = new RoaringBitmap();
+        this.fileLocks.clear();
+        this.tags.clear();
+        this.initialTags = IntArrays.EMPTY;
+        this.filesVersion++;
+        this.epoch++;
+    }
+
+    /**
+     * The content of the index as written to a snapshot: every interned path,
+     * removed files included so that ids are kept, the ids of the registered
+     * files, and the tags in id order with their postings.
+     */
+    public record Image(StringInterner.View paths, RoaringBitmap live, List<String> tagNames,
+                        List<RoaringBitmap> postings) {
+    }
+
+    /**
+     * Copies the content of the index. The caller must hold the lock of the
+     * index, and keep the catalog of tags from changing meanwhile.
+     *
+     * @return an image independent of later changes
+     */
+    public Image capture() {
+        var sorted = new ArrayList<>(this.tags.tags());
+        sorted.sort(Comparator.comparingInt(Tag::getId));
+        var tagNames = new ArrayList<String>(sorted.size());
+        var postings = new ArrayList<RoaringBitmap>(sorted.size());
+        for (Tag tag : sorted) {
+            var entry = this.tags.entry(tag.getId());
+            if (entry != null) {
+                tagNames.add(entry.tag().getName());
+                postings.add(entry.posting().clone());
+            }
+        }
+
+        return new Image(this.paths.view(), this.live.clone(), tagNames, postings);
+    }
+
+    /**
+     * Replaces the content of the index by an image, keeping the ids of the
+     * files. The tags are registered anew, in the order of the image. The
+     * arrays of the paths are adopted, so the image must not be restored twice.
+     *
+     * @param image   the content to restore
+     * @param factory creates the tags for their ids
+     * @throws TagExistsException if the image holds a tag name twice
+     */
+    public void restore(Image image, TagRegistry.TagFactory factory) throws TagExistsException {
+        clear();
+        this.paths.restore(image.paths());
+        this.live = image.live().clone();
+        this.fileTags = new int[Math.max(image.paths().size(), INITIAL_CAPACITY)][];
+        // files carrying a single tag share its set, as addFile does for the initial tag
+        var singletons = new int[image.tagNames().size()][];
+        for (int i = 0; i < image.tagNames().size(); i++) {
+            var entry = this.tags.entry(this.tags.register(image.tagNames().get(i), factory).getId());
+            var posting = RoaringBitmap.and(image.postings().get(i), this.live);
+            entry.posting().or(posting);
+            entry.count().add(posting.getCardinality());
+            int tagId = entry.id();
+            singletons[i] = new int[]{tagId};
+            int single = i;
+            posting.forEach((int fileId) -> {
+                var current = this.fileTags[fileId];
+                this.fileTags[fileId] = current == null ? singletons[single] : IntArrays.insert(current, tagId);
+            });
+        }
+        this.live.forEach((int fileId) -> {
+            if (this.fileTags[fileId] == null) {
+                this.fileTags[fileId] = IntArrays.EMPTY;
+            }
+        });
+        this.filesVersion++;
+    }
+
+    /**
+     * Registers a file, assigning it the next free id.
+     *
+     * @param name       the name of the file
+     * @param initialTag the name of the tag the file starts with
+     * @return the id of the file, which is the existing one if already registered
+     * @throws NoSuchTagException if no tag exists with the initial tag name
+     */
+    public int addFile(String name, String initialTag) throws NoSuchTagException {
+        var entry = this.tags.entry(initialTag);
+        int tagId = entry.id();
+        int fileId = this.paths.intern(name);
+        if (fileId < this.fileTags.length && this.fileTags[fileId] != null) {
+            return fileId;
+        }
+        if (fileId == this.fileTags.length) {
+            this.fileTags = Arrays.copyOf(this.fileTags, this.fileTags.length << 1);
+        }
+        if (this.initialTags.length != 1 || this.initialTags[0] != tagId) {
+            this.initialTags = new int[]{tagId};
+        }
+        this.fileTags[fileId] = this.initialTags;
+        this.live.add(fileId);
+        entry.posting().add(fileId);
+        entry.count().increment();
+        this.filesVersion++;
+
+        return fileId;
+    }
+
+    /**
+     * Unregisters a file, removing it from every tag it carries.
+     *
+     * @param fileId the id of the file
+     * @return true if the file was removed, false if it was not registered
+     */
+    public boolean removeFile(int fileId) {
+        if (!this.live.checkedRemove(fileId)) {
+            return false;
+        }
+        for (int tagId : this.fileTags[fileId]) {
+            var entry = this.tags.entry(tagId);
+            if (entry != null && entry.posting().checkedRemove(fileId)) {
+                entry.count().decrement();
+            }
+        }
+        this.fileTags[fileId] = null;
+        this.filesVersion++;
+
+        return true;
+    }
+
+    /**
+     * Looks up the id of a file by name.
+     *
+     * @param name the name of the file
+     * @return the id of the file, or -1 if no such file is registered
+     */
+    public int fileId(String name) {
+        int fileId = this.paths.id(name);
+
+        return fileId >= 0 && this.live.contains(fileId) ? fileId : -1;
+    }
+
+    /**
+     * @param fileId the id of a file
+     * @return true if the file is registered
+     */
+    public boolean contains(int fileId) {
+        return this.live.contains(fileId);
+    }
+
+    /**
+     * Lists the names of the registered files starting with a prefix, one
+     * path segment at a time, searching the interned paths sorted once per
+     * version of the file set, at the cost of one int per file. Like
+     * {@link #allFiles()} this takes the read lock itself, and only to
+     * rebuild a stale sort; it must not be called with the lock held.
+     *
+     * @param prefix    the start of the names
+     * @param separator the separator of the path segments, an ASCII character
+     * @param limit     the maximum number of names listed
+     * @return the first names in code point order, cut after the first
+     * separator following the prefix, at most limit of them
+     * @see SortedPaths#complete(String, char, int)
+     */
+    public List<String> completeFiles(String prefix, char separator, int limit) {
+        var snapshot = this.namesSnapshot;
+        if (snapshot == null || snapshot.version() != this.filesVersion) {
+            long version;
+            StringInterner.View view;
+            int[] ids;
+            long stamp = this.lock.readLock();
+            try {
+                version = this.filesVersion;
+                view = this.paths.view();
+                ids = this.live.toArray();
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+            // sorted outside the lock; a racing rebuild may publish an older version, sorted again on the next call
+            snapshot = new NamesSnapshot(version, SortedPaths.sort(view, ids));
+            this.namesSnapshot = snapshot;
+        }
+
+        return snapshot.names().complete(prefix, separator, limit);
+    }
+
+    public String fileName(int fileId) {
+        return this.paths.get(fileId);
+    }
+
+    /**
+     * Creates a handle on a registered file.
+     *
+     * @param fileId the id of the file
+     * @return a file whose tags are read from this index
+     */
+    public TaggedFile file(int fileId) {
+        return new IndexedFile(this, fileId, this.paths.get(fileId));
+    }
+
+    public int fileCount() {
+        return this.live.getCardinality();
+    }
+
+    /**
+     * Lists every registered file in id order, as an immutable snapshot shared
+     * by every caller until the set of files changes. Unlike the other
+     * queries this takes the read lock itself, and only to rebuild a stale
+     * snapshot; it must not be called with the lock held.
+     *
+     * @return the files registered so far
+     */
+    public Collection<TaggedFile> allFiles() {
+        var snapshot = this.filesSnapshot;
+        if (snapshot != null && snapshot.version() == this.filesVersion) {
+            return snapshot.files();
+        }
+
+        long stamp = this.lock.readLock();
+        try {
+            // the version cannot move under the read lock, so racing rebuilds publish equal snapshots
+            snapshot = new FilesSnapshot(this.filesVersion, resolve(this.live.clone()));
+            this.filesSnapshot = snapshot;
+
+            return snapshot.files();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Lists the tags carried by a file.
+     *
+     * @param fileId the id of the file
+     * @return the tags, in id order
+     */
+    public List<Tag> tags(int fileId) {
+        var ids = this.fileTags[fileId];
+        var result = new Tag[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            result[i] = this.tags.get(ids[i]);
+        }
+
+        return List.of(result);
+    }
+
+    /**
+     * Counts the tags carried by a file.
+     *
+     * @param fileId the id of the file
+     * @return the number of tags on the file
+     */
+    public int tagCount(int fileId) {
+        return this.fileTags[fileId].length;
+    }
+
+    /**
+     * Returns the lock of a file.
+     *
+     * @param fileId the id of the file
+     * @return the lock of the file
+     */
+    public StampedLock fileLock(int fileId) {
+        return this.fileLocks.getLock(fileId);
+    }
+
+    /**
+     * Adds a file to a tag.
+     *
+     * @param tag    the name of the tag
+     * @param fileId the id of the file
+     * @return true if the file was added, false if it already carried the tag
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    public boolean tag(String tag, int fileId) throws NoSuchTagException {
+        var entry = this.tags.entry(tag);
+        if (!entry.posting().checkedAdd(fileId)) {
+            return false;
+        }
+        entry.count().increment();
+        this.fileTags[fileId] = IntArrays.insert(this.fileTags[fileId], entry.id());
+
+        return true;
+    }
+
+    /**
+     * Removes a file from a tag.
+     *
+     * @param tag    the name of the tag
+     * @param fileId the id of the file
+     * @return true if the file was removed, false if it did not carry the tag
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    public boolean untag(String tag, int fileId) throws NoSuchTagException {
+        var entry = this.tags.entry(tag);
+        if (!entry.posting().checkedRemove(fileId)) {
+            return false;
+        }
+        entry.count().decrement();
+        this.fileTags[fileId] = IntArrays.remove(this.fileTags[fileId], entry.id());
+
+        return true;
+    }
+
+    /**
+     * Adds files to a tag in one pass, resolving the tag once.
+     *
+     * @param tag     the name of the tag
+     * @param fileIds the ids of the files
+     * @return a fresh bitmap of the files that did not carry the tag yet
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    public RoaringBitmap tagAll(String tag, RoaringBitmap fileIds) throws NoSuchTagException {
+        var entry = this.tags.entry(tag);
+        var added = RoaringBitmap.andNot(fileIds, entry.posting());
+        entry.posting().or(added);
+        entry.count().add(added.getLongCardinality());
+        added.forEach((int fileId) -> this.fileTags[fileId] = IntArrays.insert(this.fileTags[fileId], entry.id()));
+
+        return added;
+    }
+
+    /**
+     * Removes files from a tag in one pass, resolving the tag once.
+     *
+     * @param tag     the name of the tag
+     * @param fileIds the ids of the files
+     * @return a fresh bitmap of the files that carried the tag
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    public RoaringBitmap untagAll(String tag, RoaringBitmap fileIds) throws NoSuchTagException {
+        var entry = this.tags.entry(tag);
+        var removed = RoaringBitmap.and(fileIds, entry.posting());
+        entry.posting().andNot(removed);
+        entry.count().add(-removed.getLongCardinality());
+        removed.forEach((int fileId) -> this.fileTags[fileId] = IntArrays.remove(this.fileTags[fileId], entry.id()));
+
+        return removed;
+    }
+
+    /**
+     * Counts the files carrying a tag, from the counter kept along with its
+     * posting.
+     *
+     * @param tag the name of the tag
+     * @return the number of files in the posting of the tag
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    public int cardinality(String tag) throws NoSuchTagException {
+        return (int) this.tags.count(tag);
+    }
+
+    /**
+     * Returns the live posting of a tag. The bitmap must not be modified, nor
+     * used once the lock guarding this call has been released.
+     *
+     * @param tag the name of the tag
+     * @return the bitmap of the ids of the files carrying the tag
+     * @throws NoSuchTagException if no tag exists with the provided name
+     */
+    public RoaringBitmap posting(String tag) throws NoSuchTagException {
+        return this.tags.entry(tag).posting();
+    }
+
+    /**
+     * Returns the ids of every registered file, the universe complemented by NOT.
+     *
+     * @return a fresh bitmap of all file ids
+     */
+    public RoaringBitmap universe() {
+        return this.live.clone();
+    }
+
+    /**
+     * Returns a page of all registered files, see {@link #page(RoaringBitmap, String, int)}.
+     *
+     * @param cursor the cursor of the page, or null for the first page
+     * @param limit  the maximum number of files in the page
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is malformed or expired, or the limit is not positive
+     */
+    public Page<TaggedFile> page(String cursor, int limit) {
+        return page(this.live, cursor, limit);
+    }
+
+    /**
+     * Returns a page of files in id order, resuming after the file recorded
+     * by a cursor. File ids never change while the index lives, so a cursor
+     * stays valid however files are added and removed: removed files are
+     * skipped, and new files show on later pages once their id lies beyond
+     * the cursor. Cursors expire with {@link #clear()}.
+     *
+     * @param ids    the ids of the files to page through, such as a posting,
+     *               only read under the lock held by the caller
+     * @param cursor the cursor of the page, or null for the first page
+     * @param limit  the maximum number of files in the page
+     * @return the page
+     * @throws IllegalArgumentException if the cursor is malformed or expired, or the limit is not positive
+     */
+    public Page<TaggedFile> page(RoaringBitmap ids, String cursor, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + limit);
+        }
+        var iterator = ids.getIntIterator();
+        if (cursor != null) {
+            int after = decodeCursor(cursor);
+            if (after == Integer.MAX_VALUE) {
+                return new Page<>(List.of(), null);
+            }
+            iterator.advanceIfNeeded(after + 1);
+        }
+
+        var pageIds = new RoaringBitmap();
+        int last = -1;
+        while (iterator.hasNext() && pageIds.getCardinality() < limit) {
+            last = iterator.next();
+            pageIds.add(last);
+        }
+        var files = List.copyOf(resolve(pageIds));
+
+        return new Page<>(files, iterator.hasNext() ? encodeCursor(last) : null);
+    }
+
+    private String encodeCursor(int fileId) {
+        var bytes = ByteBuffer.allocate(CURSOR_BYTES).putLong(this.epoch).putInt(fileId).array();
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private int decodeCursor(String cursor) {
+        ByteBuffer bytes;
+        try {
+            bytes = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor, e);
+        }
+        if (bytes.remaining() != CURSOR_BYTES) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+        if (bytes.getLong() != this.epoch) {
+            throw new IllegalArgumentException("Expired cursor, the files were reloaded: " + cursor);
+        }
+        int fileId = bytes.getInt();
+        if (fileId < 0) {
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+
+        return fileId;
+    }
+
+    /**
+     * Evaluates a boolean tag query.
+     *
+     * @param query the parsed query
+     * @return a fresh bitmap of the ids of the matching files
+     * @throws NoSuchTagException if the query references an unknown tag
+     */
+    public RoaringBitmap query(TagQuery query) throws NoSuchTagException {
+        return query.evaluate(this);
+    }
+
+    /**
+     * Resolves a bitmap of file ids into the files themselves. The files are
+     * created as the collection is traversed, from a view of the path table
+     * taken now, so it remains valid and needs no lock once the lock is
+     * released.
+     *
+     * @param ids the ids of the files, which must not be modified afterwards
+     * @return the files, in id order
+     */
+    public Collection<TaggedFile> resolve(RoaringBitmap ids) {
+        return new FileIdCollection(ids, this.paths.view());
+    }
+
+    /**
+     * A live view of the files carrying a tag, suitable for {@code Tag.getFiles()}.
+     * Each traversal takes the read lock and works on a copy of the posting.
+     * The view follows the tag through renames.
+     *
+     * @param tagId the id of the tag
+     * @return the files carrying the tag, or none once the tag is gone
+     */
+    public Collection<TaggedFile> files(int tagId) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<TaggedFile> iterator() {
+                return snapshot().iterator();
+            }
+
+            @Override
+            public int size() {
+                return snapshot().size();
+            }
+
+            private Collection<TaggedFile> snapshot() {
+                long stamp = lock.readLock();
+                try {
+                    var entry = tags.entry(tagId);
+                    return entry == null ? List.of() : resolve(entry.posting().clone());
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+        };
+    }
+
+    /**
+     * Read-only collection of files backed by a bitmap of their ids and by a
+     * view of the path table, which stays readable after {@link #clear()}
+     * replaces the table.
+     */
+    private final class FileIdCollection extends AbstractCollection<TaggedFile> {
+
+        private final RoaringBitmap ids;
+        private final StringInterner.View paths;
+
+        private FileIdCollection(RoaringBitmap ids, StringInterner.View paths) {
+            this.ids = ids;
+            this.paths = paths;
+        }
+
+        @Override
+        public Iterator<TaggedFile> iterator() {
+            var iterator = this.ids.getIntIterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public TaggedFile next() {
+                    if (!iterator.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int fileId = iterator.next();
+                    return new IndexedFile(TagIndex.this, fileId, paths.get(fileId));
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.ids.getCardinality();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.developersboard.manager.file.index;
+
+import com.developersboard.exception.NoSuchTagException;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A boolean query over tags, such as {@code a AND b AND NOT c}.
+ * <p>
+ * The grammar, from lowest to highest precedence, is:
+ * <pre>
+ * query  := term ("OR" term)*
+ * term   := factor ("AND" factor)*
+ * factor := "NOT" factor | "(" query ")" | tag
+ * </pre>
+ * Operators are case-insensitive. A tag whose name contains whitespace, a
+ * parenthesis or clashes with an operator can be written in double quotes.
+ */
+public sealed interface TagQuery {
+
+    /**
+     * Evaluates this query against an index whose read lock is held by the caller.
+     *
+     * @param index the index to evaluate against
+     * @return a fresh bitmap of the ids of the matching files
+     * @throws NoSuchTagException if the query references an unknown tag
+     */
+    RoaringBitmap evaluate(TagIndex index) throws NoSuchTagException;
+
+    /**
+     * Parses a query.
+     *
+     * @param query the textual query
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    static TagQuery parse(String query) {
+        return new Parser(query).parse();
+    }
+
+    record Name(String tag) implements TagQuery {
+
+        @Override
+        public RoaringBitmap evaluate(TagIndex index) throws NoSuchTagException {
+            return index.posting(this.tag).clone();
+        }
+    }
+
+    record Not(TagQuery operand) implements TagQuery {
+
+        @Override
+        public RoaringBitmap evaluate(TagIndex index) throws NoSuchTagException {
+            return RoaringBitmap.andNot(index.universe(), this.operand.evaluate(index));
+        }
+    }
+
+    record And(TagQuery left, TagQuery right) implements TagQuery {
+
+        @Override
+        public RoaringBitmap evaluate(TagIndex index) throws NoSuchTagException {
+            var result = this.left.evaluate(index);
+            // "a AND NOT b" subtracts b directly instead of materialising its complement
+            if (this.right instanceof Not not) {
+                result.andNot(operand(not.operand(), index));
+            } else {
+                result.and(operand(this.right, index));
+            }
+
+            return result;
+        }
+    }
+
+    record Or(TagQuery left, TagQuery right) implements TagQuery {
+
+        @Override
+        public RoaringBitmap evaluate(TagIndex index) throws NoSuchTagException {
+            var result = this.left.evaluate(index);
+            result.or(operand(this.right, index));
+
+            return result;
+        }
+    }
+
+    /**
+     * Evaluates the right-hand side of a binary operator, which is only ever
+     * read, so a bare tag can use its posting without copying it.
+     */
+    private static RoaringBitmap operand(TagQuery query, TagIndex index) throws NoSuchTagException {
+        return query instanceof Name name ? index.posting(name.tag()) : query.evaluate(index);
+    }
+
+    /**
+     * Recursive descent parser for the grammar documented on {@link TagQuery}.
+     */
+    final class Parser {
+
+        private final String query;
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Boolean> quoted = new ArrayList<>();
+        private int position;
+
+        private Parser(String query) {
+            this.query = query;
+            tokenize();
+        }
+
+        private TagQuery parse() {
+            if (this.tokens.isEmpty()) {
+                throw new IllegalArgumentException("Empty query");
+            }
+            var result = parseQuery();
+            if (this.position < this.tokens.size()) {
+                throw error("Unexpected '" + this.tokens.get(this.position) + "'");
+            }
+
+            return result;
+        }
+
+        private TagQuery parseQuery() {
+            var result = parseTerm();
+            while (acceptOperator("OR")) {
+                result = new Or(result, parseTerm());
+            }
+
+            return result;
+        }
+
+        private TagQuery parseTerm() {
+            var result = parseFactor();
+            while (acceptOperator("AND")) {
+                result = new And(result, parseFactor());
+            }
+
+            return result;
+        }
+
+        private TagQuery parseFactor() {
+            if (this.position == this.tokens.size()) {
+                throw error("Unexpected end of query");
+            }
+            if (acceptOperator("NOT")) {
+                return new Not(parseFactor());
+            }
+            if (acceptOperator("(")) {
+                var result = parseQuery();
+                if (!acceptOperator(")")) {
+                    throw error("Missing ')'");
+                }
+                return result;
+            }
+            var token = this.tokens.get(this.position);
+            if (!this.quoted.get(this.position) && isOperator(token)) {
+                throw error("Unexpected '" + token + "'");
+            }
+            this.position++;
+
+            return new Name(token);
+        }
+
+        private boolean acceptOperator(String operator) {
+            if (this.position < this.tokens.size()
+                    && !this.quoted.get(this.position)
+                    && this.tokens.get(this.position).equalsIgnoreCase(operator)) {
+                this.position++;
+                return true;
+            }
+
+            return false;
+        }
+
+        private static boolean isOperator(String token) {
+            return token.equals("(") || token.equals(")") || token.equalsIgnoreCase("AND")
+                    || token.equalsIgnoreCase("OR") || token.equalsIgnoreCase("NOT");
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < this.query.length()) {
+                char c = this.query.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    addToken(String.valueOf(c), false);
+                    i++;
+                } else if (c == '"') {
+                    int end = this.query.indexOf('"', i + 1);
+                    if (end < 0) {
+                        throw error("Unterminated quote");
+                    }
+                    addToken(this.query.substring(i + 1, end), true);
+                    i = end + 1;
+                } else {
+                    int start = i;
+                    while (i < this.query.length() && !Character.isWhitespace(this.query.charAt(i))
+                            && "()\"".indexOf(this.query.charAt(i)) < 0) {
+                        i++;
+                    }
+                    addToken(this.query.substring(start, i), false);
+                }
+            }
+        }
+
+        private void addToken(String token, boolean isQuoted) {
+            this.tokens.add(token);
+            this.quoted.add(isQuoted);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " in query: " + this.query);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.developersboard.manager.file.index;
+
+import com.developersboard.exception.NoSuchTagException;
+import com.developersboard.exception.TagExistsException;
+import com.developersboard.shared.Tag;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.file.DirectoryNotEmptyException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free catalog of the known tags.
+ * <p>
+ * Tags are keyed by name in a concurrent map and every tag is assigned a
+ * dense id, so adding a tag is a single atomic map operation that never
+ * serializes behind a shared lock. Renaming and deleting a tag change both
+ * the name key and the id slot, so they rely on the lock of the
+ * {@link TagIndex}: renames under its write lock, deletes under at least its
+ * read lock, so that they never interleave on one tag. Each entry also owns
+ * the posting of its tag, the bitmap of the ids of the files carrying it;
+ * postings are mutated under the lock of the {@link TagIndex} using them.
+ * Alongside its posting, each entry keeps the number of files in it in a
+ * striped counter, adjusted by the index with every change to the posting,
+ * so that sizes are read in constant time and without any lock.
+ * <p>
+ * Listings are served from an immutable, versioned snapshot of the catalog.
+ * Every change bumps the version; the first listing after a change copies
+ * the catalog once and publishes the copy, which later listings share until
+ * the next change. Writers never wait for listings, nor listings for writers.
+ * Completions search the names of a snapshot, sorted by the first completion
+ * after a change, so that no mirror of the names is kept in step on the
+ * mutation path.
+ */
+public class TagRegistry {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_COUNT = 1 << 16;
+
+    /**
+     * Number of ids the pages can hold
+     */
+    static final int MAX_TAGS = PAGE_COUNT * PAGE_SIZE;
+
+    /**
+     * Number of ids handed out before the registry refuses new tags
+     */
+    private final int capacity;
+
+    private final ConcurrentMap<String, Entry> byName = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private volatile AtomicReferenceArray<AtomicReferenceArray<Entry>> byId = new AtomicReferenceArray<>(PAGE_COUNT);
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(0, List.of()));
+    private final AtomicReference<SortedNames> sortedNames = new AtomicReference<>(new SortedNames(List.of(), new String[0]));
+
+    /**
+     * The tags as of a version of the catalog.
+     */
+    private record Snapshot(long version, List<Tag> tags) {
+    }
+
+    /**
+     * The names of the tags of a snapshot, in lexicographic order.
+     */
+    private record SortedNames(List<Tag> tags, String[] names) {
+    }
+
+    /**
+     * A registered tag together with its id, posting and the cardinality of
+     * its posting.
+     */
+    record Entry(int id, Tag tag, RoaringBitmap posting, LongAdder count) {
+    }
+
+    /**
+     * Creates the tag objects of the registry, once the id of the tag is known.
+     */
+    @FunctionalInterface
+    public interface TagFactory {
+
+        Tag create(int tagId, String tagName);
+    }
+
+    public TagRegistry() {
+        this(MAX_TAGS);
+    }
+
+    /**
+     * @param capacity the number of ids handed out before new tags are refused
+     */
+    TagRegistry(int capacity) {
+        if (capacity < 0 || capacity > MAX_TAGS) {
+            throw new IllegalArgumentException("Capacity must be between 0 and " + MAX_TAGS + ": " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Registers a new tag under a fresh id. Only a registration that finds
+     * the name free takes an id, so ids are never spent on duplicates.
+     *
+     * @param tagName the name of the tag
+     * @param factory creates the tag for its id
+     * @return the registered tag
+     * @throws TagExistsException    if a tag already exists with that name
+     * @throws IllegalStateException if every id is taken
+     */
+    public Tag register(String tagName, TagFactory factory) throws TagExistsException {
+        // rejects the common duplicate before creating any entry
+        if (this.byName.containsKey(tagName)) {
+            throw new TagExistsException();
+        }
+        var created = new Entry[1];
+        // runs once the name is known to be free, and before it becomes visible,
+        // so that files tagged as soon as the name is visible resolve by id
+        this.byName.computeIfAbsent(tagName, name -> created[0] = publish(name, factory));
+        if (created[0] == null) {
+            // lost a race with a concurrent registration of the name
+            throw new TagExistsException();
+        }
+        this.version.incrementAndGet();
+
+        return created[0].tag();
+    }
+
+    /**
+     * Creates the entry of a new tag under the next id and publishes it by id.
+     */
+    private Entry publish(String tagName, TagFactory factory) {
+        int tagId = this.nextId.getAndUpdate(id -> id < this.capacity ? id + 1 : id);
+        if (tagId >= this.capacity) {
+            throw new IllegalStateException("No tag id left: " + this.capacity + " tags registered since the last clear");
+        }
+        var entry = new Entry(tagId, factory.create(tagId, tagName), new RoaringBitmap(), new LongAdder());
+        page(tagId).set(tagId & (PAGE_SIZE - 1), entry);
+
+        return entry;
+    }
+
+    /**
+     * Moves a tag to a new name in constant time, keeping its id, and thus its
+     * identity and its files. Only the two name keys of the map change. The
+     * caller must hold the write lock of the index, so that the tag cannot be
+     * deleted under its new name before its id slot is updated.
+     *
+     * @param oldTagName the current name of the tag
+     * @param newTagName the new name of the tag
+     * @param factory    creates the renamed tag for its id
+     * @return the renamed tag
+     * @throws NoSuchTagException if no tag exists with the old name
+     * @throws TagExistsException if a tag already exists with the new name
+     */
+    public Tag rename(String oldTagName, String newTagName, TagFactory factory) throws NoSuchTagException, TagExistsException {
+        var oldEntry = entry(oldTagName);
+        var newEntry = new Entry(oldEntry.id(), factory.create(oldEntry.id(), newTagName), oldEntry.posting(),
+                oldEntry.count());
+        if (this.byName.putIfAbsent(newTagName, newEntry) != null) {
+            throw new TagExistsException();
+        }
+        if (!this.byName.remove(oldTagName, oldEntry)) {
+            // lost a race with a concurrent rename or delete of the old tag
+            this.byName.remove(newTagName, newEntry);
+            throw new NoSuchTagException();
+        }
+        // never brings back a tag deleted meanwhile by a caller not holding the lock
+        page(oldEntry.id()).compareAndSet(oldEntry.id() & (PAGE_SIZE - 1), oldEntry, newEntry);
+        this.version.incrementAndGet();
+
+        return newEntry.tag();
+    }
+
+    /**
+     * Removes a tag that no file carries, telling so from its counter in
+     * constant time. The caller must hold at least the read lock of the index,
+     * so that the posting and its counter cannot change meanwhile.
+     *
+     * @param tagName the name of the tag
+     * @return the removed tag
+     * @throws NoSuchTagException         if no tag exists with that name
+     * @throws DirectoryNotEmptyException if files still carry the tag
+     */
+    public Tag removeEmpty(String tagName) throws NoSuchTagException, DirectoryNotEmptyException {
+        var entry = entry(tagName);
+        if (entry.count().sum() != 0) {
+            throw new DirectoryNotEmptyException(tagName);
+        }
+        if (!this.byName.remove(tagName, entry)) {
+            throw new NoSuchTagException();
+        }
+        page(entry.id()).set(entry.id() & (PAGE_SIZE - 1), null);
+        this.version.incrementAndGet();
+
+        return entry.tag();
+    }
+
+    /**
+     * Looks up a tag by name.
+     *
+     * @param tagName the name of the tag
+     * @return the tag
+     * @throws NoSuchTagException if no tag exists with that name
+     */
+    public Tag get(String tagName) throws NoSuchTagException {
+        return entry(tagName).tag();
+    }
+
+    /**
+     * Looks up a tag by name, without throwing on a miss.
+     *
+     * @param tagName the name of the tag
+     * @return the tag, or null if no tag exists with that name
+     */
+    public Tag find(String tagName) {
+        var entry = this.byName.get(tagName);
+
+        return entry == null ? null : entry.tag();
+    }
+
+    /**
+     * Looks up a tag by id.
+     *
+     * @param tagId the id of the tag
+     * @return the tag, or null if it was deleted
+     */
+    public Tag get(int tagId) {
+        var entry = entry(tagId);
+
+        return entry == null ? null : entry.tag();
+    }
+
+    /**
+     * Counts the files carrying a tag, without walking its posting.
+     *
+     * @param tagName the name of the tag
+     * @return the number of files carrying the tag
+     * @throws NoSuchTagException if no tag exists with that name
+     */
+    public long count(String tagName) throws NoSuchTagException {
+        return entry(tagName).count().sum();
+    }
+
+    /**
+     * Counts the files carrying each tag, reading one counter per tag and
+     * taking no lock. Each count is exact as of some point during the call;
+     * a batch of files tagged meanwhile is counted wholly or not at all.
+     *
+     * @return the number of files carrying each tag, by tag name
+     */
+    public Map<String, Long> counts() {
+        var counts = new HashMap<String, Long>(this.byName.size() * 4 / 3 + 1);
+        this.byName.forEach((tagName, entry) -> counts.put(tagName, entry.count().sum()));
+
+        return counts;
+    }
+
+    /**
+     * Lists the names of the tags starting with a prefix, without locking,
+     * searching the sorted names of the current snapshot of the catalog. Only
+     * the first completion after a change sorts the names again.
+     *
+     * @param prefix the start of the names
+     * @param limit  the maximum number of names listed
+     * @return the first names in lexicographic order, at most limit of them
+     * @see #tags()
+     */
+    public List<String> complete(String prefix, int limit) {
+        var matches = new ArrayList<String>(Math.min(Math.max(limit, 0), 64));
+        if (limit <= 0) {
+            return matches;
+        }
+        var tags = tags();
+        var sorted = this.sortedNames.get();
+        if (sorted.tags() != tags) {
+            var names = new String[tags.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = tags.get(i).getName();
+            }
+            Arrays.sort(names);
+            sorted = new SortedNames(tags, names);
+            // a racing completion may publish an older snapshot, sorted again on the next call
+            this.sortedNames.set(sorted);
+        }
+
+        var names = sorted.names();
+        int position = Arrays.binarySearch(names, prefix);
+        for (int i = position < 0 ? -position - 1 : position;
+             i < names.length && matches.size() < limit && names[i].startsWith(prefix); i++) {
+            matches.add(names[i]);
+        }
+
+        return matches;
+    }
+
+    public boolean contains(String tagName) {
+        return this.byName.containsKey(tagName);
+    }
+
+    /**
+     * An immutable snapshot of the registered tags, iterable without locking
+     * or copying. It holds at least every change completed before the call;
+     * a tag renamed during the call may be listed under either name.
+     *
+     * @return the registered tags
+     */
+    public List<Tag> tags() {
+        var current = this.snapshot.get();
+        // read before the map, so that the copy holds every change up to this version
+        long version = this.version.get();
+        if (current.version() == version) {
+            return current.tags();
+        }
+
+        var tags = new ArrayList<Tag>(this.byName.size());
+        for (Entry entry : this.byName.values()) {
+            tags.add(entry.tag());
+        }
+        var fresh = new Snapshot(version, Collections.unmodifiableList(tags));
+        this.snapshot.accumulateAndGet(fresh, (published, built) -> built.version() > published.version() ? built : published);
+
+        return fresh.tags();
+    }
+
+    /**
+     * Drops every tag. Not meant to run concurrently with other operations.
+     */
+    public void clear() {
+        this.byName.clear();
+        this.byId = new AtomicReferenceArray<>(PAGE_COUNT);
+        this.nextId.set(0);
+        this.version.incrementAndGet();
+    }
+
+    Entry entry(String tagName) throws NoSuchTagException {
+        var entry = this.byName.get(tagName);
+        if (entry == null) {
+            throw new NoSuchTagException();
+        }
+
+        return entry;
+    }
+
+    Entry entry(int tagId) {
+        return page(tagId).get(tagId & (PAGE_SIZE - 1));
+    }
+
+    private AtomicReferenceArray<Entry> page(int tagId) {
+        var pages = this.byId;
+        int pageIndex = tagId >>> PAGE_BITS;
+        if (pageIndex >= PAGE_COUNT) {
+            throw new IllegalArgumentException("Tag id out of range: " + tagId);
+        }
+        var page = pages.get(pageIndex);
+        if (page == null) {
+            pages.compareAndSet(pageIndex, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(pageIndex);
+        }
+
+        return page;
+    }
+}
@@ -0,0 +1,135 @@
+package com.developersboard.manager.file.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Walks a directory tree on a fork-join pool, one task per directory, and
+ * streams the regular files found to a sink in batches as the walk goes,
+ * rather than collecting the whole tree first.
+ * <p>
+ * Like {@link Files#walk}, symbolic links to directories are not followed,
+ * while symbolic links to regular files are reported. Batches are handed to
+ * the sink concurrently and in no particular order.
+ */
+public final class DirectoryScanner {
+
+    public static final int BATCH_SIZE = 512;
+
+    private DirectoryScanner() {
+    }
+
+    /**
+     * Scans a tree in the background.
+     *
+     * @param root   the root directory
+     * @param filter the files to report
+     * @param sink   the receiver of the batches of files, called from several threads
+     * @return the number of files reported, once the scan is complete
+     */
+    public static CompletableFuture<Long> scanAsync(Path root, Predicate<Path> filter, Consumer<List<Path>> sink) {
+        var pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        var scan = new CompletableFuture<Long>();
+        pool.execute(() -> {
+            try {
+                scan.complete(new DirectoryTask(root, filter, sink).invoke());
+            } catch (Throwable e) {
+                scan.completeExceptionally(e);
+            } finally {
+                pool.shutdown();
+            }
+        });
+
+        return scan;
+    }
+
+    /**
+     * Scans a tree and collects its files.
+     *
+     * @param root   the root directory
+     * @param filter the files to report
+     * @return the files found, in no particular order
+     * @throws IOException if a directory of the tree cannot be read
+     */
+    public static List<Path> scan(Path root, Predicate<Path> filter) throws IOException {
+        var files = Collections.synchronizedList(new ArrayList<Path>());
+        try {
+            scanAsync(root, filter, files::addAll).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw e;
+        }
+
+        return files;
+    }
+
+    private static final class DirectoryTask extends RecursiveTask<Long> {
+
+        private final Path directory;
+        private final Predicate<Path> filter;
+        private final Consumer<List<Path>> sink;
+
+        DirectoryTask(Path directory, Predicate<Path> filter, Consumer<List<Path>> sink) {
+            this.directory = directory;
+            this.filter = filter;
+            this.sink = sink;
+        }
+
+        @Override
+        protected Long compute() {
+            var subdirectories = new ArrayList<DirectoryTask>();
+            var batch = new ArrayList<Path>();
+            long count = 0;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+                for (Path entry : entries) {
+                    var attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        var subdirectory = new DirectoryTask(entry, this.filter, this.sink);
+                        subdirectory.fork();
+                        subdirectories.add(subdirectory);
+                    } else if ((attributes.isRegularFile() || attributes.isSymbolicLink() && Files.isRegularFile(entry))
+                            && this.filter.test(entry)) {
+                        batch.add(entry);
+                        if (batch.size() == BATCH_SIZE) {
+                            count += flush(batch);
+                            batch = new ArrayList<>();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count += flush(batch);
+
+            for (var subdirectory : subdirectories) {
+                count += subdirectory.join();
+            }
+
+            return count;
+        }
+
+        private int flush(List<Path> batch) {
+            if (!batch.isEmpty()) {
+                this.sink.accept(batch);
+            }
+
+            return batch.size();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.developersboard.manager.file.io;
+
+/**
+ * How far written files are forced to disk before a write returns.
+ */
+public enum Durability {
+
+    /**
+     * Nothing is forced: the operating system writes the files back when it
+     * sees fit, and a crash may lose recent writes.
+     */
+    NONE,
+
+    /**
+     * Every write forces its own files, then their directories, before
+     * returning.
+     */
+    FSYNC,
+
+    /**
+     * Writes are forced before returning, as with {@link #FSYNC}, but
+     * concurrent writes share their syncs, see {@link FileSync}.
+     */
+    GROUP_COMMIT
+}
@@ -0,0 +1,171 @@
+package com.developersboard.manager.file.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Forces written files and the directories they were renamed into to disk,
+ * as configured by a {@link Durability}.
+ * <p>
+ * In group commit, callers join the round of syncs being prepared: the first
+ * one to find no round running forces every file and directory joined so
+ * far, concurrently on the I/O pool, and the others wait for it. Threads
+ * writing at the same time thus pay for about one round of syncs between
+ * them, and a directory renamed into by many files is forced once.
+ */
+public class FileSync {
+
+    private final Durability durability;
+    private final ParallelFileIo io;
+
+    /**
+     * Guards the round being joined and whether a round is running.
+     */
+    private final Object monitor = new Object();
+    private Round joining = new Round();
+    private boolean syncing;
+
+    /**
+     * @param durability how far writes are forced
+     * @param io         the pool forcing the files of a round concurrently, in group commit
+     */
+    public FileSync(Durability durability, ParallelFileIo io) {
+        this.durability = durability;
+        this.io = io;
+    }
+
+    public Durability getDurability() {
+        return this.durability;
+    }
+
+    /**
+     * Forces the content of files, before they are renamed over the files
+     * they replace.
+     *
+     * @param files the files written
+     * @throws IOException if a file cannot be forced
+     */
+    public void syncFiles(Collection<Path> files) throws IOException {
+        sync(files);
+    }
+
+    /**
+     * Forces directories, making the renames of files into them durable.
+     *
+     * @param files the files renamed, whose directories are forced
+     * @throws IOException if a directory cannot be forced
+     */
+    public void syncDirectories(Collection<Path> files) throws IOException {
+        var directories = new LinkedHashSet<Path>();
+        for (Path file : files) {
+            var directory = file.toAbsolutePath().getParent();
+            if (directory != null) {
+                directories.add(directory);
+            }
+        }
+        sync(directories);
+    }
+
+    private void sync(Collection<Path> paths) throws IOException {
+        if (paths.isEmpty()) {
+            return;
+        }
+        switch (this.durability) {
+            case NONE -> {
+            }
+            case FSYNC -> {
+                for (Path path : paths) {
+                    force(path);
+                }
+            }
+            case GROUP_COMMIT -> groupCommit(paths);
+        }
+    }
+
+    private void groupCommit(Collection<Path> paths) throws IOException {
+        Round round;
+        boolean leader = false;
+        synchronized (this.monitor) {
+            round = this.joining;
+            round.paths.addAll(paths);
+            try {
+                while (!round.done && this.syncing) {
+                    this.monitor.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting on a sync");
+            }
+            if (!round.done) {
+                // the round joined is still open, as no other round runs
+                leader = true;
+                this.syncing = true;
+                this.joining = new Round();
+            }
+        }
+        if (leader) {
+            run(round);
+        }
+        synchronized (this.monitor) {
+            if (round.failure != null) {
+                throw new IOException("Could not sync " + round.paths.size() + " files", round.failure);
+            }
+        }
+    }
+
+    private void run(Round round) {
+        IOException failure = null;
+        boolean forced = false;
+        try {
+            var names = new ArrayList<String>(round.paths.size());
+            round.paths.forEach(path -> names.add(path.toString()));
+            this.io.map(names, name -> {
+                force(Path.of(name));
+                return null;
+            });
+            forced = true;
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            synchronized (this.monitor) {
+                // an unexpected exception fails the whole round too
+                round.failure = forced || failure != null ? failure : new IOException("Sync aborted");
+                round.done = true;
+                this.syncing = false;
+                this.monitor.notifyAll();
+            }
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // directories cannot be opened, nor need to be forced, on some platforms
+            }
+            return;
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Files and directories to force together, and the outcome once forced.
+     */
+    private static final class Round {
+
+        private final Set<Path> paths = new LinkedHashSet<>();
+        private boolean done;
+        private IOException failure;
+    }
+}
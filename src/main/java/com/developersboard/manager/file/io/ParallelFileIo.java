@@ -0,0 +1,146 @@
+package com.developersboard.manager.file.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool running the I/O of many files concurrently, so that the disk
+ * queue stays full while a batch of files is read or written. Results are
+ * handed back in the order of the files, whatever order the I/O finishes in.
+ * <p>
+ * Tasks must not take file or index locks: the caller usually holds them
+ * while waiting for the tasks.
+ */
+public class ParallelFileIo implements AutoCloseable {
+
+    public static final int DEFAULT_THREADS = 16;
+
+    /**
+     * An I/O operation on one file.
+     *
+     * @param <T> the result of the operation
+     */
+    @FunctionalInterface
+    public interface FileTask<T> {
+        T apply(String file) throws IOException;
+    }
+
+    private final ExecutorService executor;
+
+    /**
+     * @param threads the maximum number of files accessed at once
+     */
+    public ParallelFileIo(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        var count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "file-io-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Applies a task to every file concurrently and waits for all of them. If
+     * any task fails, the tasks not started yet are skipped, and its exception
+     * is rethrown once the tasks already running are done, so that the caller
+     * can clean up after every one of them, such as the temporary files they
+     * wrote. If the caller is interrupted instead, the tasks are cancelled
+     * without waiting for them.
+     *
+     * @param files the files, in the order of the results
+     * @param task  the operation to apply to each file
+     * @param <T>   the result of the operation
+     * @return the result of each file, in the order of the files
+     * @throws IOException if any task fails, or the thread is interrupted while waiting
+     */
+    public <T> List<T> map(List<String> files, FileTask<T> task) throws IOException {
+        var results = new ArrayList<T>(files.size());
+        if (files.size() <= 1) {
+            for (String file : files) {
+                results.add(task.apply(file));
+            }
+            return results;
+        }
+
+        var futures = new ArrayList<Future<T>>(files.size());
+        var failed = new AtomicBoolean();
+        var finished = new CountDownLatch(files.size());
+        try {
+            for (String file : files) {
+                futures.add(this.executor.submit(() -> {
+                    try {
+                        return failed.get() ? null : task.apply(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        finished.countDown();
+                    }
+                }));
+            }
+            for (var future : futures) {
+                results.add(future.get());
+            }
+
+            return results;
+        } catch (InterruptedException e) {
+            failed.set(true);
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on " + files.size() + " files");
+        } catch (ExecutionException e) {
+            failed.set(true);
+            awaitUninterruptibly(finished);
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the pool, interrupting the tasks still running.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    private static IOException unwrap(Throwable cause) {
+        if (cause instanceof UncheckedIOException unchecked) {
+            return unchecked.getCause();
+        }
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+
+        return new IOException(cause);
+    }
+}
@@ -0,0 +1,232 @@
+package com.developersboard.manager.file.lock;
+
+import com.developersboard.manager.file.metrics.LockMetrics;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Registry of the read/write locks of files, keyed by interned file id.
+ * <p>
+ * Files are mapped to locks by a {@link LockTable}, either one lock per file or
+ * a fixed table of stripes. Batches of locks are acquired in ascending slot
+ * order, a canonical global order, and take each slot once however many of
+ * the batch's files share it, so two batches can never wait on each other in
+ * a cycle. Single locks taken through {@link #lock(int, boolean)} can still be held in any order, so
+ * batch acquisition never blocks indefinitely on one lock while holding others:
+ * when a lock is not granted within a timeout, every lock of the batch is
+ * released and the whole batch is retried after a randomized exponential
+ * back-off. The first lock of a batch is waited for without a timeout, since
+ * a thread holding nothing cannot be part of a deadlock.
+ */
+public class FileLockManager {
+
+    private static final long ACQUIRE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final LockTable table;
+    private final LockMetrics metrics;
+
+    /**
+     * Creates a manager with a lock per file, the only table under which a
+     * thread may hold the write locks of several files it locked one by one.
+     */
+    public FileLockManager() {
+        this(new PerFileLockTable());
+    }
+
+    public FileLockManager(LockTable table) {
+        this(table, new LockMetrics());
+    }
+
+    public FileLockManager(LockTable table, LockMetrics metrics) {
+        this.table = table;
+        this.metrics = metrics;
+    }
+
+    public LockMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the lock guarding a file, kept by the table for as long as it
+     * lives since the caller never tells when it is done with it. Callers
+     * that do should use {@link #pin(int)} instead.
+     *
+     * @param fileId the id of the file
+     * @return the lock of the file
+     */
+    public StampedLock getLock(int fileId) {
+        return this.table.lockAt(this.table.slot(fileId));
+    }
+
+    /**
+     * Returns the lock guarding a file, such as for optimistic reads, keeping
+     * it from being dropped by the table until {@link #unpin(int)}.
+     *
+     * @param fileId the id of the file
+     * @return the lock of the file
+     */
+    public StampedLock pin(int fileId) {
+        return this.table.acquire(this.table.slot(fileId));
+    }
+
+    /**
+     * Lets the table drop the lock of a file again once nobody uses it.
+     *
+     * @param fileId the id of a file passed to {@link #pin(int)}, whose lock
+     *               the caller does not hold
+     */
+    public void unpin(int fileId) {
+        this.table.release(this.table.slot(fileId));
+    }
+
+    /**
+     * Acquires the lock of a single file, blocking until it is granted.
+     *
+     * @param fileId   the id of the file
+     * @param forWrite true for the write lock, false for the read lock
+     * @return the stamp to release the lock with
+     */
+    public long lock(int fileId, boolean forWrite) {
+        int slot = this.table.slot(fileId);
+        var lock = this.table.acquire(slot);
+        long start = System.nanoTime();
+        long stamp = forWrite ? lock.tryWriteLock() : lock.tryReadLock();
+        if (stamp == 0L) {
+            this.metrics.contended(slot, fileId);
+            stamp = forWrite ? lock.writeLock() : lock.readLock();
+        }
+        this.metrics.acquired(1, forWrite, start);
+        this.metrics.held(slot, stamp);
+
+        return stamp;
+    }
+
+    /**
+     * Releases the lock of a single file.
+     *
+     * @param fileId   the id of the file
+     * @param stamp    the stamp returned when the lock was acquired
+     * @param forWrite true for the write lock, false for the read lock
+     * @throws IllegalMonitorStateException if the stamp does not match the lock
+     */
+    public void unlock(int fileId, long stamp, boolean forWrite) {
+        int slot = this.table.slot(fileId);
+        var lock = this.table.acquired(slot);
+        if (forWrite) {
+            lock.unlockWrite(stamp);
+        } else {
+            lock.unlockRead(stamp);
+        }
+        this.table.release(slot);
+        this.metrics.releasedSingle(slot, stamp, forWrite);
+    }
+
+    /**
+     * Acquires the locks of a batch of files in ascending slot order, each slot
+     * once, backing off and retrying the whole batch whenever one lock is
+     * contended for too long.
+     *
+     * @param fileIds  the ids of the files
+     * @param forWrite true for write locks, false for read locks
+     * @return the held locks, to be released in bulk
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public FileLockSet lockAll(RoaringBitmap fileIds, boolean forWrite) throws InterruptedIOException {
+        long start = System.nanoTime();
+        var slots = sortedSlots(fileIds);
+        long backoff = MIN_BACKOFF_NANOS;
+        while (true) {
+            var lockSet = new FileLockSet(slots.length, forWrite, this.table, this.metrics);
+            try {
+                if (tryLockAll(slots, lockSet)) {
+                    this.metrics.acquired(lockSet.size(), forWrite, start);
+                    lockSet.acquired(System.nanoTime());
+                    return lockSet;
+                }
+            } catch (InterruptedException e) {
+                lockSet.close();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while locking " + fileIds.getCardinality() + " files");
+            }
+            lockSet.close();
+
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(backoff));
+            backoff = Math.min(backoff << 1, MAX_BACKOFF_NANOS);
+        }
+    }
+
+    /**
+     * Drops every lock that can be recreated on demand. Not meant to run while
+     * locks are held.
+     */
+    public void clear() {
+        this.table.clear();
+    }
+
+    /**
+     * Maps files to the distinct slots of their locks, in ascending order.
+     *
+     * @param fileIds the ids of the files
+     * @return the slots, each in the high half of a long whose low half is
+     * the id of one of the files sharing it
+     */
+    private long[] sortedSlots(RoaringBitmap fileIds) {
+        var slots = new long[fileIds.getCardinality()];
+        var iterator = fileIds.getIntIterator();
+        for (int i = 0; i < slots.length; i++) {
+            int fileId = iterator.next();
+            slots[i] = (long) this.table.slot(fileId) << 32 | fileId;
+        }
+        Arrays.sort(slots);
+
+        int distinct = 0;
+        for (long slot : slots) {
+            if (distinct == 0 || slot >>> 32 != slots[distinct - 1] >>> 32) {
+                slots[distinct++] = slot;
+            }
+        }
+
+        return distinct == slots.length ? slots : Arrays.copyOf(slots, distinct);
+    }
+
+    private boolean tryLockAll(long[] slots, FileLockSet lockSet) throws InterruptedException {
+        for (long entry : slots) {
+            int slot = (int) (entry >>> 32);
+            var lock = this.table.acquire(slot);
+            long stamp = lockSet.isForWrite() ? lock.tryWriteLock() : lock.tryReadLock();
+            if (stamp == 0L) {
+                this.metrics.contended(slot, (int) entry);
+            }
+            try {
+                if (stamp == 0L && lockSet.size() == 0) {
+                    stamp = lockSet.isForWrite() ? lock.writeLockInterruptibly() : lock.readLockInterruptibly();
+                }
+                if (stamp == 0L) {
+                    stamp = lockSet.isForWrite()
+                            ? lock.tryWriteLock(ACQUIRE_TIMEOUT_NANOS, TimeUnit.NANOSECONDS)
+                            : lock.tryReadLock(ACQUIRE_TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+                }
+            } finally {
+                if (stamp == 0L) {
+                    this.table.release(slot);
+                }
+            }
+            if (stamp == 0L) {
+                return false;
+            }
+            lockSet.add(slot, lock, stamp);
+        }
+
+        return true;
+    }
+}
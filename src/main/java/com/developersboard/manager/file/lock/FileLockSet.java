@@ -0,0 +1,73 @@
+package com.developersboard.manager.file.lock;
+
+import com.developersboard.manager.file.metrics.LockMetrics;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A batch of file locks acquired by {@link FileLockManager#lockAll}, released
+ * together in reverse acquisition order and handed back to their table.
+ */
+public final class FileLockSet implements AutoCloseable {
+
+    private final int[] slots;
+    private final StampedLock[] locks;
+    private final long[] stamps;
+    private final boolean forWrite;
+    private final LockTable table;
+    private final LockMetrics metrics;
+    private int size;
+
+    /**
+     * When the whole batch was granted, or -1 while it is being acquired
+     */
+    private long acquiredNanos = -1;
+
+    FileLockSet(int capacity, boolean forWrite, LockTable table, LockMetrics metrics) {
+        this.slots = new int[capacity];
+        this.locks = new StampedLock[capacity];
+        this.stamps = new long[capacity];
+        this.forWrite = forWrite;
+        this.table = table;
+        this.metrics = metrics;
+    }
+
+    public boolean isForWrite() {
+        return this.forWrite;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    void acquired(long nanos) {
+        this.acquiredNanos = nanos;
+    }
+
+    void add(int slot, StampedLock lock, long stamp) {
+        this.slots[this.size] = slot;
+        this.locks[this.size] = lock;
+        this.stamps[this.size] = stamp;
+        this.size++;
+    }
+
+    /**
+     * Releases every lock still held. Calling it again has no effect.
+     */
+    @Override
+    public void close() {
+        if (this.acquiredNanos != -1 && this.size > 0) {
+            this.metrics.released(this.forWrite, this.acquiredNanos);
+        }
+        while (this.size > 0) {
+            this.size--;
+            if (this.forWrite) {
+                this.locks[this.size].unlockWrite(this.stamps[this.size]);
+            } else {
+                this.locks[this.size].unlockRead(this.stamps[this.size]);
+            }
+            this.table.release(this.slots[this.size]);
+            this.locks[this.size] = null;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.developersboard.manager.file.lock;
+
+/**
+ * How files are mapped to locks.
+ */
+public enum LockMode {
+
+    /**
+     * Files share a fixed table of locks, see {@link StripedLockTable}. Only
+     * safe when no caller holds the write locks of two files it locked one at
+     * a time, which TagManager#lockFile otherwise allows.
+     */
+    STRIPED,
+
+    /**
+     * Every file being locked gets its own lock, dropped once nobody uses it,
+     * see {@link PerFileLockTable}. The default.
+     */
+    PER_FILE;
+
+    /**
+     * Creates the lock table of this mode.
+     *
+     * @param stripes the number of stripes, used in striped mode only
+     * @return a new lock table
+     */
+    public LockTable newTable(int stripes) {
+        return this == STRIPED ? new StripedLockTable(stripes) : new PerFileLockTable();
+    }
+}
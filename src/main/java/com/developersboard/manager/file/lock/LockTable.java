@@ -0,0 +1,70 @@
+package com.developersboard.manager.file.lock;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Maps file ids to the locks guarding them.
+ * <p>
+ * Files are first mapped to a slot, and every file of a slot shares the lock
+ * of that slot. Batches lock each slot once, in ascending slot order.
+ * <p>
+ * Locks are taken between {@link #acquire(int)} and {@link #release(int)},
+ * so that a table may drop the lock of a slot nobody uses and create it again
+ * on demand.
+ */
+public interface LockTable {
+
+    /**
+     * Returns the slot of a file.
+     *
+     * @param fileId the id of the file
+     * @return the non-negative slot whose lock guards the file
+     */
+    int slot(int fileId);
+
+    /**
+     * Returns the lock of a slot, kept for as long as the table lives, for
+     * callers that do not tell when they are done with it.
+     *
+     * @param slot a slot returned by {@link #slot(int)}
+     * @return the lock of the slot
+     */
+    StampedLock lockAt(int slot);
+
+    /**
+     * Returns the lock of a slot, kept until every caller that acquired it
+     * has released it.
+     *
+     * @param slot a slot returned by {@link #slot(int)}
+     * @return the lock of the slot
+     */
+    default StampedLock acquire(int slot) {
+        return lockAt(slot);
+    }
+
+    /**
+     * Returns the lock of a slot that the caller acquired and has not
+     * released yet.
+     *
+     * @param slot a slot passed to {@link #acquire(int)}
+     * @return the lock of the slot
+     */
+    default StampedLock acquired(int slot) {
+        return lockAt(slot);
+    }
+
+    /**
+     * Ends a use of the lock of a slot begun by {@link #acquire(int)}. Must be
+     * called once the lock is no longer held by the caller.
+     *
+     * @param slot a slot passed to {@link #acquire(int)}
+     */
+    default void release(int slot) {
+        // fixed locks are never dropped
+    }
+
+    /**
+     * Drops the locks of every slot that can be recreated on demand.
+     */
+    void clear();
+}
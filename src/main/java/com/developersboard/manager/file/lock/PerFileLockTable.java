@@ -0,0 +1,83 @@
+package com.developersboard.manager.file.lock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Lock table giving every file its own lock, created the first time the file
+ * is locked. Unrelated files never contend.
+ * <p>
+ * Every entry counts the callers between {@link #acquire(int)} and
+ * {@link #release(int)}, and is removed by the release that brings its count
+ * back to zero, so only the files being locked at the moment take memory.
+ * Counts change under the lock of the map bin of their entry, so an acquire
+ * either finds the entry before it is removed or creates a fresh one, and no
+ * two callers ever hold different locks for one file. A lock handed out by
+ * {@link #lockAt(int)} is not counted, so its entry is kept until
+ * {@link #clear()}.
+ */
+public class PerFileLockTable implements LockTable {
+
+    /**
+     * The lock of a file with its number of users, guarded by the map bin.
+     */
+    private static final class Entry {
+
+        private final StampedLock lock = new StampedLock();
+        private int users;
+        private boolean pinned;
+    }
+
+    private final Map<Integer, Entry> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public int slot(int fileId) {
+        return fileId;
+    }
+
+    @Override
+    public StampedLock lockAt(int slot) {
+        return this.locks.compute(slot, (id, entry) -> {
+            var pinned = entry != null ? entry : new Entry();
+            pinned.pinned = true;
+            return pinned;
+        }).lock;
+    }
+
+    @Override
+    public StampedLock acquire(int slot) {
+        return this.locks.compute(slot, (id, entry) -> {
+            var used = entry != null ? entry : new Entry();
+            used.users++;
+            return used;
+        }).lock;
+    }
+
+    @Override
+    public StampedLock acquired(int slot) {
+        var entry = this.locks.get(slot);
+        if (entry == null) {
+            throw new IllegalMonitorStateException("Lock of file " + slot + " not acquired");
+        }
+
+        return entry.lock;
+    }
+
+    @Override
+    public void release(int slot) {
+        this.locks.computeIfPresent(slot, (id, entry) -> --entry.users > 0 || entry.pinned ? entry : null);
+    }
+
+    /**
+     * @return the number of files whose lock is currently kept
+     */
+    public int size() {
+        return this.locks.size();
+    }
+
+    @Override
+    public void clear() {
+        this.locks.clear();
+    }
+}
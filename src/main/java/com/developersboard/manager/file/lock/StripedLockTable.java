@@ -0,0 +1,57 @@
+package com.developersboard.manager.file.lock;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Lock table sharing a fixed number of locks, the stripes, between all files.
+ * <p>
+ * A file is guarded by the stripe its hashed id falls in, so memory stays
+ * constant however many files are locked. Two files may share a stripe: a
+ * thread holding the write lock of one file through
+ * {@link FileLockManager#lock(int, boolean)} must not lock another file the
+ * same way, as it could be waiting on its own stripe.
+ */
+public class StripedLockTable implements LockTable {
+
+    private final StampedLock[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    public StripedLockTable(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripes);
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new StampedLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new StampedLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public int size() {
+        return this.stripes.length;
+    }
+
+    @Override
+    public int slot(int fileId) {
+        int hash = fileId * 0x9E3779B9;
+
+        return (hash ^ (hash >>> 16)) & this.mask;
+    }
+
+    @Override
+    public StampedLock lockAt(int slot) {
+        return this.stripes[slot];
+    }
+
+    @Override
+    public void clear() {
+        // stripes are shared and fixed; nothing to drop
+    }
+}
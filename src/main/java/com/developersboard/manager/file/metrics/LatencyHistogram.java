@@ -0,0 +1,117 @@
+package com.developersboard.manager.file.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets: every power
+ * of two is split into {@value #SUB_BUCKETS} equal buckets, so percentiles
+ * are reported within 12.5% over the full range of {@code long}.
+ * <p>
+ * Recording is a single atomic increment into a fixed array, with no
+ * allocation and no lock, so it can be left on in hot paths. Reading a
+ * percentile scans the buckets and is meant for occasional queries.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param nanos the duration to record, negative durations counting as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucket(value));
+        this.sum.add(value);
+    }
+
+    /**
+     * Records the time elapsed since a start time.
+     *
+     * @param startNanos the start time, from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the sum of the recorded durations, in nanoseconds
+     */
+    public long sum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * Estimates a percentile, by the upper bound of the bucket it falls in.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @return the duration in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double quantile) {
+        var snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Same as {@link #percentile(double)}, in a given unit.
+     *
+     * @param quantile the quantile, between 0 and 1
+     * @param unit     the unit of the result
+     * @return the duration, as a fractional number of units
+     */
+    public double percentile(double quantile, TimeUnit unit) {
+        return (double) percentile(quantile) / unit.toNanos(1);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+        return lower + (1L << shift) - 1;
+    }
+}
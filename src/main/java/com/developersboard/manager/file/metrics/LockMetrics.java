@@ -0,0 +1,231 @@
+package com.developersboard.manager.file.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Wait and hold times of the file locks, read and write acquisition counts,
+ * and the files whose locks were most often contended.
+ * <p>
+ * Everything is recorded into fixed arrays and counters, without allocation.
+ * Contention is counted in a fixed table of {@value #CONTENTION_SLOTS}
+ * counters indexed by lock slot, each remembering the last file contended on
+ * it. The hold time of a single lock is matched from its acquisition to its
+ * release through a small fixed table keyed by slot and stamp; when that
+ * table is full the hold is not sampled. Readers sharing a lock may be handed
+ * the same stamp, so each entry also records the thread that took the lock,
+ * and a release first looks for an entry of its own thread. Only a lock
+ * released by another thread than the one that took it may be matched with
+ * another acquisition of the same stamp.
+ */
+public class LockMetrics {
+
+    private static final int CONTENTION_SLOTS = 1024;
+    private static final int HOLD_SLOTS = 4096;
+    private static final int MAX_PROBES = 8;
+
+    /**
+     * Key of an entry being filled or emptied, which no lookup matches
+     */
+    private static final long BUSY = -1;
+
+    private final LatencyHistogram readWait = new LatencyHistogram();
+    private final LatencyHistogram writeWait = new LatencyHistogram();
+    private final LatencyHistogram readHold = new LatencyHistogram();
+    private final LatencyHistogram writeHold = new LatencyHistogram();
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+
+    private final AtomicLongArray contention = new AtomicLongArray(CONTENTION_SLOTS);
+    private final AtomicLongArray contendedFiles = new AtomicLongArray(CONTENTION_SLOTS);
+
+    /**
+     * Open-addressing table of the single locks held, mapping a key derived
+     * from the slot and stamp (never 0, which marks a free entry, nor
+     * {@link #BUSY}) to the time of acquisition and the id of the thread that
+     * acquired. An entry is claimed by moving its key to {@link #BUSY}, and its
+     * time and thread are written before its key is published, so whoever
+     * claims a published entry reads the time of that very acquisition.
+     */
+    private final AtomicLongArray holdKeys = new AtomicLongArray(HOLD_SLOTS);
+    private final AtomicLongArray holdTimes = new AtomicLongArray(HOLD_SLOTS);
+    private final AtomicLongArray holdThreads = new AtomicLongArray(HOLD_SLOTS);
+
+    private volatile IntFunction<String> fileNames = fileId -> "#" + fileId;
+
+    /**
+     * Sets how the ids of the hottest files are turned into names.
+     *
+     * @param fileNames resolves file ids to names
+     */
+    public void setFileNames(IntFunction<String> fileNames) {
+        this.fileNames = fileNames;
+    }
+
+    /**
+     * Records locks granted after waiting.
+     *
+     * @param count      the number of locks granted
+     * @param forWrite   true for write locks
+     * @param startNanos when the caller started waiting, from {@link System#nanoTime()}
+     */
+    public void acquired(int count, boolean forWrite, long startNanos) {
+        if (forWrite) {
+            this.writes.add(count);
+            this.writeWait.recordSince(startNanos);
+        } else {
+            this.reads.add(count);
+            this.readWait.recordSince(startNanos);
+        }
+    }
+
+    /**
+     * Records the release of locks held since a given time.
+     *
+     * @param forWrite      true for write locks
+     * @param acquiredNanos when the locks were granted, from {@link System#nanoTime()}
+     */
+    public void released(boolean forWrite, long acquiredNanos) {
+        (forWrite ? this.writeHold : this.readHold).recordSince(acquiredNanos);
+    }
+
+    /**
+     * Records that a lock was not granted right away.
+     *
+     * @param slot   the slot of the lock
+     * @param fileId the id of the file that was being locked
+     */
+    public void contended(int slot, int fileId) {
+        int index = slot & (CONTENTION_SLOTS - 1);
+        this.contended.increment();
+        this.contention.incrementAndGet(index);
+        this.contendedFiles.set(index, fileId);
+    }
+
+    /**
+     * Remembers when a single lock was granted, to time its hold on release.
+     *
+     * @param slot  the slot of the lock
+     * @param stamp the stamp of the lock
+     */
+    public void held(int slot, long stamp) {
+        long key = holdKey(slot, stamp);
+        int start = (int) (key >>> 52);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = (start + probe) & (HOLD_SLOTS - 1);
+            if (this.holdKeys.get(index) == 0 && this.holdKeys.compareAndSet(index, 0, BUSY)) {
+                this.holdTimes.set(index, System.nanoTime());
+                this.holdThreads.set(index, Thread.currentThread().getId());
+                this.holdKeys.set(index, key);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Times the hold of a single lock remembered by {@link #held}.
+     *
+     * @param slot     the slot of the lock
+     * @param stamp    the stamp of the lock
+     * @param forWrite true for a write lock
+     */
+    public void releasedSingle(int slot, long stamp, boolean forWrite) {
+        long key = holdKey(slot, stamp);
+        int start = (int) (key >>> 52);
+        long thread = Thread.currentThread().getId();
+        // the acquisition of this thread, then any other one of the same stamp
+        if (!releaseHold(key, start, thread, forWrite)) {
+            releaseHold(key, start, -1, forWrite);
+        }
+    }
+
+    /**
+     * Claims and empties the entry of an acquisition, then times its hold.
+     *
+     * @param thread the id of the thread that acquired, or -1 for any thread
+     * @return true if an entry was found
+     */
+    private boolean releaseHold(long key, int start, long thread, boolean forWrite) {
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = (start + probe) & (HOLD_SLOTS - 1);
+            if (this.holdKeys.get(index) == key && (thread == -1 || this.holdThreads.get(index) == thread)
+                    && this.holdKeys.compareAndSet(index, key, BUSY)) {
+                long acquired = this.holdTimes.get(index);
+                this.holdKeys.set(index, 0);
+                released(forWrite, acquired);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public LatencyHistogram getReadWait() {
+        return this.readWait;
+    }
+
+    public LatencyHistogram getWriteWait() {
+        return this.writeWait;
+    }
+
+    public LatencyHistogram getReadHold() {
+        return this.readHold;
+    }
+
+    public LatencyHistogram getWriteHold() {
+        return this.writeHold;
+    }
+
+    public long getReads() {
+        return this.reads.sum();
+    }
+
+    public long getWrites() {
+        return this.writes.sum();
+    }
+
+    public long getContended() {
+        return this.contended.sum();
+    }
+
+    /**
+     * Lists the files most often contended, as far as the fixed table of
+     * counters can tell them apart.
+     *
+     * @param limit the maximum number of files
+     * @return the files and their contention counts, most contended first
+     */
+    public List<Contention> hottest(int limit) {
+        var fileNames = this.fileNames;
+        var hottest = new ArrayList<Contention>();
+        for (int i = 0; i < CONTENTION_SLOTS; i++) {
+            long count = this.contention.get(i);
+            if (count > 0) {
+                hottest.add(new Contention(fileNames.apply((int) this.contendedFiles.get(i)), count));
+            }
+        }
+        hottest.sort(Comparator.comparingLong(Contention::count).reversed());
+
+        return hottest.subList(0, Math.min(limit, hottest.size()));
+    }
+
+    private static long holdKey(int slot, long stamp) {
+        // the top 12 bits of the mixed key pick the first entry to probe
+        long key = (stamp ^ ((long) slot << 32)) * 0x9E3779B97F4A7C15L;
+
+        return key == 0 || key == BUSY ? 1 : key;
+    }
+
+    /**
+     * @param file  the name of the file
+     * @param count the number of times its lock was contended
+     */
+    public record Contention(String file, long count) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.developersboard.manager.file.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms of the {@link com.developersboard.manager.file.TagManager}
+ * operations, together with the metrics of the file locks.
+ * <p>
+ * Recording goes to {@link LatencyHistogram}s and is allocation free. The
+ * histograms are published to Micrometer as gauges of their percentiles and
+ * function counters of their counts, which are only computed when the
+ * registry is read.
+ */
+public class TagManagerMetrics implements MeterBinder {
+
+    public static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    /**
+     * The measured operations.
+     */
+    public enum Operation {
+        INIT, ADD_FILES, REMOVE_FILES, LIST_TAGS, COUNT_TAGS, COMPLETE_TAGS, COMPLETE_FILES, ADD_TAG,
+        EDIT_TAG, DELETE_TAG, LIST_ALL_FILES, LIST_FILES_BY_TAG, FIND_FILES, TAG_FILE, REMOVE_TAG, TAG_FILES,
+        UNTAG_FILES, GET_TAGS, CAT_ALL_FILES, ECHO_TO_ALL_FILES,
+        LOCK_FILE, UNLOCK_FILE, READ_FILE, WRITE_FILE;
+
+        /**
+         * @return the name of the operation as a tag value, e.g. {@code tag-file}
+         */
+        public String tagValue() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LockMetrics locks;
+
+    public TagManagerMetrics(LockMetrics locks) {
+        this.locks = locks;
+        for (Operation operation : Operation.values()) {
+            this.latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the latency of an operation started at a given time.
+     *
+     * @param operation  the operation
+     * @param startNanos the start time, from {@link System#nanoTime()}
+     */
+    public void record(Operation operation, long startNanos) {
+        this.latencies.get(operation).recordSince(startNanos);
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return this.latencies.get(operation);
+    }
+
+    public LockMetrics getLocks() {
+        return this.locks;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (var latency : this.latencies.entrySet()) {
+            bindHistogram(registry, "file.manager.operation", latency.getValue(),
+                    "operation", latency.getKey().tagValue());
+        }
+        bindHistogram(registry, "file.manager.lock.wait", this.locks.getReadWait(), "mode", "read");
+        bindHistogram(registry, "file.manager.lock.wait", this.locks.getWriteWait(), "mode", "write");
+        bindHistogram(registry, "file.manager.lock.hold", this.locks.getReadHold(), "mode", "read");
+        bindHistogram(registry, "file.manager.lock.hold", this.locks.getWriteHold(), "mode", "write");
+
+        FunctionCounter.builder("file.manager.lock.acquisitions", this.locks, LockMetrics::getReads)
+                .tag("mode", "read")
+                .register(registry);
+        FunctionCounter.builder("file.manager.lock.acquisitions", this.locks, LockMetrics::getWrites)
+                .tag("mode", "write")
+                .register(registry);
+        FunctionCounter.builder("file.manager.lock.contended", this.locks, LockMetrics::getContended)
+                .description("Lock acquisitions that had to wait")
+                .register(registry);
+    }
+
+    private static void bindHistogram(MeterRegistry registry, String name, LatencyHistogram histogram,
+                                      String tagKey, String tagValue) {
+        FunctionCounter.builder(name + ".count", histogram, LatencyHistogram::count)
+                .tag(tagKey, tagValue)
+                .register(registry);
+        for (double quantile : QUANTILES) {
+            Gauge.builder(name, histogram, h -> h.percentile(quantile, TimeUnit.SECONDS))
+                    .tag(tagKey, tagValue)
+                    .tag("quantile", Double.toString(quantile))
+                    .baseUnit("seconds")
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,736 @@
+package com.developersboard.manager.file.pack;
+
+import com.developersboard.manager.file.impl.AbstractFileTagManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Storage of small file contents packed into append-only segment files,
+ * instead of one file each.
+ * <p>
+ * Every write appends a record holding the path and content of a file to the
+ * active segment; an in-memory index maps each path to the offset of its
+ * latest content, and is rebuilt from the segments on startup. Segments are
+ * memory-mapped, so reading or writing a packed file costs no system call,
+ * and a batch of files is written as one sequential append and read back in
+ * segment order. Records carry a CRC32C checksum: the rebuild stops reading
+ * a segment at the first record torn by a crash or corrupt.
+ * <p>
+ * The active segment is sealed once full, and a new one started, as on every
+ * startup. A background task compacts the sealed segments once enough of
+ * their records are superseded, copying the live contents to the active
+ * segment. Compacted segments are deleted one round later, so that readers
+ * still holding their offsets finish first.
+ * <p>
+ * A packed content takes precedence over the plain file of the same path
+ * until it is {@link #export() exported} back to the plain file, or the plain
+ * file is modified after it was packed.
+ */
+public class PackStore implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackStore.class);
+
+    public static final int DEFAULT_MAX_FILE_BYTES = 4096;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    public static final long DEFAULT_COMPACT_SECONDS = 30;
+
+    private static final Pattern SEGMENT = Pattern.compile("pack-(\\d{16})\\.seg");
+
+    /**
+     * Size of the prefix of a record: its length, then its checksum
+     */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Size of a record besides its path and content: the header, the time it
+     * was written, the length of the path and the length of the content
+     */
+    private static final int RECORD_OVERHEAD = HEADER_BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+    /**
+     * Content length of a record dropping a file from the pack
+     */
+    private static final int REMOVED = -1;
+
+    /**
+     * Share of superseded bytes in the sealed segments beyond which they are compacted
+     */
+    private static final double COMPACT_RATIO = 0.5;
+
+    /**
+     * Number of sealed segments beyond which they are compacted anyway, e.g. after many restarts
+     */
+    private static final int MAX_SEALED = 8;
+
+    /**
+     * Number of live contents copied at a time by a compaction
+     */
+    private static final int COMPACT_BATCH = 1024;
+
+    /**
+     * Where the latest content of a file is.
+     *
+     * @param segment  the segment holding the record
+     * @param position the offset of the content in the segment
+     * @param length   the length of the content
+     * @param bytes    the length of the whole record
+     * @param millis   the time the content was written, in epoch milliseconds
+     */
+    private record Location(Segment segment, int position, int length, int bytes, long millis) {
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int maxFileBytes;
+    private final int segmentBytes;
+    private final long compactSeconds;
+
+    /**
+     * Latest location of every packed file, by path
+     */
+    private final Map<String, Location> locations = new ConcurrentHashMap<>();
+
+    /**
+     * Guards the appends and the lists of segments
+     */
+    private final Object appendLock = new Object();
+    private final List<Segment> sealed = new ArrayList<>();
+    private List<Segment> retired = List.of();
+    private Segment active;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * @param enabled        true to pack small files, false to keep every file plain
+     * @param directory      the directory of the segments
+     * @param maxFileBytes   the largest content packed, larger ones being written to plain files
+     * @param segmentBytes   the size of a segment
+     * @param compactSeconds the period of the compaction checks
+     */
+    public PackStore(boolean enabled, Path directory, int maxFileBytes, long segmentBytes, long compactSeconds) {
+        if (enabled && (maxFileBytes < 0 || segmentBytes > Integer.MAX_VALUE || segmentBytes < 2L * maxFileBytes + 2 * RECORD_OVERHEAD)) {
+            throw new IllegalArgumentException("Segments of " + segmentBytes + " bytes cannot hold files of " + maxFileBytes + " bytes");
+        }
+        if (enabled && compactSeconds < 1) {
+            throw new IllegalArgumentException("Compaction period must be positive: " + compactSeconds);
+        }
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.segmentBytes = (int) segmentBytes;
+        this.compactSeconds = compactSeconds;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * @param content the content of a file
+     * @return true if the content is to be packed rather than written to a plain file
+     */
+    public boolean accepts(byte[] content) {
+        return this.enabled && content.length <= this.maxFileBytes;
+    }
+
+    /**
+     * @return the number of files packed
+     */
+    public int size() {
+        return this.locations.size();
+    }
+
+    /**
+     * Rebuilds the index from the segments on disk, starts a new active
+     * segment and schedules the compactions. Does nothing if disabled.
+     *
+     * @throws IOException if the segments cannot be read or created
+     */
+    public void open() throws IOException {
+        if (!this.enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        synchronized (this.appendLock) {
+            closeSegments();
+            this.locations.clear();
+            Files.createDirectories(this.directory);
+            long next = 0;
+            for (long id : segmentIds()) {
+                var segment = Segment.open(this.directory.resolve(segmentName(id)), id, false, 0);
+                rebuild(segment);
+                this.sealed.add(segment);
+                next = id + 1;
+            }
+            this.active = newSegment(next);
+        }
+        LOG.info("Opened {} packed files from {} segments in {} ms", this.locations.size(), this.sealed.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        scheduleCompactions();
+    }
+
+    /**
+     * Reads the packed content of a file.
+     *
+     * @param file the path of the file
+     * @return the content, or null if the file is not packed
+     */
+    public byte[] read(String file) {
+        var location = this.locations.get(key(file));
+        return location == null ? null : location.segment().read(location.position(), location.length());
+    }
+
+    /**
+     * Reads the packed contents of many files, in the order they lie in the
+     * segments rather than the order asked, so that the reads are sequential.
+     *
+     * @param files the paths of the files
+     * @return the content of each file, in the order of the files, or null for those not packed
+     */
+    public byte[][] readAll(List<String> files) {
+        var found = new Location[files.size()];
+        var order = new ArrayList<Integer>(files.size());
+        for (int i = 0; i < found.length; i++) {
+            found[i] = this.locations.get(key(files.get(i)));
+            if (found[i] != null) {
+                order.add(i);
+            }
+        }
+        order.sort(Comparator.<Integer>comparingLong(i -> found[i].segment().id)
+                .thenComparingInt(i -> found[i].position()));
+        var contents = new byte[found.length][];
+        for (int i : order) {
+            contents[i] = found[i].segment().read(found[i].position(), found[i].length());
+        }
+
+        return contents;
+    }
+
+    /**
+     * Packs the content of a file, replacing any previous one.
+     *
+     * @param file    the path of the file
+     * @param content the content, of at most the largest packed size
+     * @return the segment written to, to be forced for the write to be durable
+     * @throws IOException if the segment is full and a new one cannot be created
+     */
+    public Path write(String file, byte[] content) throws IOException {
+        return writeAll(List.of(file), content);
+    }
+
+    /**
+     * Packs the same content for many files, as one append.
+     *
+     * @param files   the paths of the files
+     * @param content the content, of at most the largest packed size
+     * @return the segment written to last, to be forced for the writes to be durable
+     * @throws IOException if a segment is full and a new one cannot be created
+     */
+    public Path writeAll(Collection<String> files, byte[] content) throws IOException {
+        if (!accepts(content)) {
+            throw new IllegalArgumentException("Content of " + content.length + " bytes is not packed");
+        }
+        long millis = System.currentTimeMillis();
+        synchronized (this.appendLock) {
+            checkOpen();
+            for (String file : files) {
+                append(key(file), content, millis);
+            }
+
+            return this.active.path;
+        }
+    }
+
+    /**
+     * Drops files from the pack, so that their plain files are read again.
+     *
+     * @param files the paths of the files
+     * @throws IOException if a segment is full and a new one cannot be created
+     */
+    public void removeAll(Collection<String> files) throws IOException {
+        if (!this.enabled) {
+            return;
+        }
+        synchronized (this.appendLock) {
+            for (String file : files) {
+                var key = key(file);
+                if (this.active != null && this.locations.containsKey(key)) {
+                    append(key, null, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops a file from the pack if its plain file was modified after it was
+     * packed, as the plain file is then the newer of the two.
+     *
+     * @param file the path of the plain file
+     */
+    public void discardIfStale(Path file) {
+        var key = key(file.toString());
+        var location = this.locations.get(key);
+        if (location == null) {
+            return;
+        }
+        try {
+            if (Files.getLastModifiedTime(file).toMillis() <= location.millis()) {
+                return;
+            }
+            synchronized (this.appendLock) {
+                if (this.locations.get(key) == location) {
+                    append(key, null, System.currentTimeMillis());
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // deleted meanwhile, which the caller handles as a removal
+        } catch (IOException e) {
+            LOG.warn("Could not compare {} with its packed content", file, e);
+        }
+    }
+
+    /**
+     * Writes every packed content back to its plain file, then empties the
+     * pack. Writes wait meanwhile; reads go on.
+     *
+     * @return the number of files written back
+     * @throws IOException if a plain file cannot be written, in which case the pack is kept
+     */
+    public int export() throws IOException {
+        if (!this.enabled) {
+            return 0;
+        }
+        synchronized (this.appendLock) {
+            checkOpen();
+            var directories = new HashSet<Path>();
+            for (var entry : this.locations.entrySet()) {
+                var location = entry.getValue();
+                var file = Paths.get(entry.getKey()).toAbsolutePath();
+                exportFile(file, location.segment().read(location.position(), location.length()));
+                if (!directories.contains(file.getParent())) {
+                    directories.add(file.getParent());
+                }
+            }
+            for (Path directory : directories) {
+                forceDirectory(directory);
+            }
+            int exported = this.locations.size();
+            this.locations.clear();
+            // every segment goes, the oldest first, so that a crash midway leaves only contents already exported
+            var segments = new ArrayList<Segment>(this.retired);
+            segments.addAll(this.sealed);
+            segments.add(this.active);
+            segments.sort(Comparator.comparingLong(segment -> segment.id));
+            long next = this.active.id + 1;
+            this.sealed.clear();
+            this.retired = List.of();
+            this.active = null;
+            for (Segment segment : segments) {
+                segment.delete();
+            }
+            this.active = newSegment(next);
+            LOG.info("Exported {} packed files", exported);
+
+            return exported;
+        }
+    }
+
+    /**
+     * Compacts the sealed segments if enough of their records are superseded,
+     * or if there are too many of them.
+     *
+     * @return true if the sealed segments were compacted
+     * @throws IOException if the live contents cannot be copied
+     */
+    public boolean compact() throws IOException {
+        List<Segment> compacted;
+        synchronized (this.appendLock) {
+            if (this.active == null) {
+                return false;
+            }
+            deleteRetired();
+            long total = 0;
+            long dead = 0;
+            for (Segment segment : this.sealed) {
+                total += segment.size;
+                dead += segment.dead.sum();
+            }
+            if (this.sealed.isEmpty() || this.sealed.size() <= MAX_SEALED && dead < COMPACT_RATIO * total) {
+                return false;
+            }
+            compacted = new ArrayList<>(this.sealed);
+        }
+        var sources = new IdentityHashMap<Segment, Boolean>();
+        compacted.forEach(segment -> sources.put(segment, true));
+        var files = new ArrayList<String>(COMPACT_BATCH);
+        var expected = new ArrayList<Location>(COMPACT_BATCH);
+        int copied = 0;
+        for (var entry : this.locations.entrySet()) {
+            if (sources.containsKey(entry.getValue().segment())) {
+                files.add(entry.getKey());
+                expected.add(entry.getValue());
+                if (files.size() == COMPACT_BATCH) {
+                    copied += copy(files, expected);
+                    files.clear();
+                    expected.clear();
+                }
+            }
+        }
+        copied += copy(files, expected);
+
+        synchronized (this.appendLock) {
+            if (this.active == null) {
+                return false;
+            }
+            // the copies are durable before the originals may go
+            this.active.force();
+            this.sealed.removeAll(compacted);
+            this.retired = compacted;
+        }
+        LOG.info("Compacted {} segments, copying {} live files", compacted.size(), copied);
+
+        return true;
+    }
+
+    /**
+     * Stops the compactions and closes the segments, forcing the active one
+     * and deleting those already compacted.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.compactor != null) {
+            this.compactor.shutdownNow();
+            this.compactor = null;
+        }
+        synchronized (this.appendLock) {
+            if (this.active != null) {
+                this.active.force();
+            }
+            deleteRetired();
+            closeSegments();
+        }
+    }
+
+    /**
+     * Copies live contents to the active segment, skipping those written
+     * again since they were listed.
+     */
+    private int copy(List<String> files, List<Location> expected) throws IOException {
+        var contents = new byte[files.size()][];
+        for (int i = 0; i < contents.length; i++) {
+            var location = expected.get(i);
+            contents[i] = location.segment().read(location.position(), location.length());
+        }
+        int copied = 0;
+        synchronized (this.appendLock) {
+            if (this.active == null) {
+                return copied;
+            }
+            for (int i = 0; i < contents.length; i++) {
+                if (this.locations.get(files.get(i)) == expected.get(i)) {
+                    append(files.get(i), contents[i], expected.get(i).millis());
+                    copied++;
+                }
+            }
+        }
+
+        return copied;
+    }
+
+    /**
+     * Appends a record to the active segment, sealing it first if full, and
+     * indexes it. The caller must hold the append lock.
+     *
+     * @param file    the key of the file
+     * @param content the content, or null to drop the file
+     * @param millis  the time the content was written
+     */
+    private void append(String file, byte[] content, long millis) throws IOException {
+        var path = file.getBytes(StandardCharsets.UTF_8);
+        int length = content == null ? 0 : content.length;
+        int bytes = RECORD_OVERHEAD + path.length + length;
+        if (bytes > this.segmentBytes) {
+            throw new IOException("Record of " + bytes + " bytes does not fit a segment: " + file);
+        }
+        if (this.active.size + bytes > this.segmentBytes) {
+            this.active.force();
+            this.sealed.add(this.active);
+            this.active = newSegment(this.active.id + 1);
+        }
+        var segment = this.active;
+        var record = ByteBuffer.allocate(bytes);
+        record.putInt(bytes - HEADER_BYTES).putInt(0).putLong(millis).putInt(path.length).put(path);
+        record.putInt(content == null ? REMOVED : length);
+        int position = segment.size + record.position();
+        if (content != null) {
+            record.put(content);
+        }
+        var crc = new CRC32C();
+        crc.update(record.array(), HEADER_BYTES, bytes - HEADER_BYTES);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        segment.write(record.array());
+
+        Location previous;
+        if (content == null) {
+            previous = this.locations.remove(file);
+            // a removal only matters until the older segments are compacted
+            segment.dead.add(bytes);
+        } else {
+            previous = this.locations.put(file, new Location(segment, position, length, bytes, millis));
+        }
+        if (previous != null) {
+            previous.segment().dead.add(previous.bytes());
+        }
+    }
+
+    /**
+     * Indexes the records of a segment read back from disk, up to the first
+     * one that is incomplete or does not match its checksum.
+     */
+    private void rebuild(Segment segment) {
+        var buffer = segment.map.duplicate();
+        var crc = new CRC32C();
+        int limit = buffer.capacity();
+        int position = 0;
+        while (position + HEADER_BYTES <= limit) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                // the unwritten, zero-filled end of the segment
+                break;
+            }
+            if (length < RECORD_OVERHEAD - HEADER_BYTES || position + HEADER_BYTES + length > limit) {
+                LOG.warn("Segment {} ends with a torn record at {}", segment.path, position);
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + HEADER_BYTES, length));
+            if ((int) crc.getValue() != buffer.getInt(position + Integer.BYTES)) {
+                LOG.warn("Segment {} has a corrupt record at {}; skipping the rest of it", segment.path, position);
+                break;
+            }
+            int at = position + HEADER_BYTES;
+            long millis = buffer.getLong(at);
+            var path = new byte[buffer.getInt(at + Long.BYTES)];
+            buffer.get(at + Long.BYTES + Integer.BYTES, path);
+            int contentAt = at + Long.BYTES + Integer.BYTES + path.length;
+            int contentLength = buffer.getInt(contentAt);
+            var file = new String(path, StandardCharsets.UTF_8);
+            int bytes = HEADER_BYTES + length;
+            Location previous;
+            if (contentLength == REMOVED) {
+                previous = this.locations.remove(file);
+                segment.dead.add(bytes);
+            } else {
+                previous = this.locations.put(file, new Location(segment, contentAt + Integer.BYTES, contentLength, bytes, millis));
+            }
+            if (previous != null) {
+                previous.segment().dead.add(previous.bytes());
+            }
+            position += bytes;
+        }
+        segment.size = position;
+    }
+
+    private void scheduleCompactions() {
+        if (this.compactor != null) {
+            return;
+        }
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "pack-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not compact the packed files in {}", this.directory, e);
+            }
+        }, this.compactSeconds, this.compactSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Deletes the segments compacted by the previous round, the oldest first,
+     * so that no superseded content shows up again after a crash.
+     */
+    private void deleteRetired() throws IOException {
+        for (Segment segment : this.retired) {
+            segment.delete();
+        }
+        this.retired = List.of();
+    }
+
+    private void closeSegments() throws IOException {
+        for (Segment segment : this.retired) {
+            segment.close();
+        }
+        for (Segment segment : this.sealed) {
+            segment.close();
+        }
+        if (this.active != null) {
+            this.active.close();
+        }
+        this.retired = List.of();
+        this.sealed.clear();
+        this.active = null;
+    }
+
+    private void checkOpen() {
+        if (this.active == null) {
+            throw new IllegalStateException("Pack store is not open");
+        }
+    }
+
+    private Segment newSegment(long id) throws IOException {
+        return Segment.open(this.directory.resolve(segmentName(id)), id, true, this.segmentBytes);
+    }
+
+    private static void exportFile(Path file, byte[] content) throws IOException {
+        var parent = file.getParent();
+        Files.createDirectories(parent);
+        var temp = Files.createTempFile(parent, "." + file.getFileName(), AbstractFileTagManager.TEMP_SUFFIX);
+        try {
+            try (var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                var buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened, nor need to be forced, on some platforms
+        }
+    }
+
+    private List<Long> segmentIds() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.map(file -> SEGMENT.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static String segmentName(long id) {
+        return String.format("pack-%016d.seg", id);
+    }
+
+    private static String key(String file) {
+        return Paths.get(file).toString();
+    }
+
+    /**
+     * A segment file, mapped in memory whole. The active segment is created
+     * at its full size, sparse until written, and appended to under the
+     * append lock; readers only read contents already indexed.
+     */
+    private static final class Segment {
+
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer map;
+
+        /**
+         * Bytes of records written, guarded by the append lock
+         */
+        private int size;
+
+        /**
+         * Bytes of records superseded by later ones
+         */
+        private final LongAdder dead = new LongAdder();
+
+        private Segment(long id, Path path, FileChannel channel, MappedByteBuffer map) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.map = map;
+        }
+
+        static Segment open(Path path, long id, boolean create, int capacity) throws IOException {
+            FileChannel channel;
+            MappedByteBuffer map;
+            if (create) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                // makes the new segment itself durable, not only its content
+                channel.force(true);
+            } else {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+            }
+
+            return new Segment(id, path, channel, map);
+        }
+
+        byte[] read(int position, int length) {
+            var content = new byte[length];
+            this.map.get(position, content);
+
+            return content;
+        }
+
+        void write(byte[] record) {
+            this.map.put(this.size, record);
+            this.size += record.length;
+        }
+
+        void force() {
+            if (!this.map.isReadOnly()) {
+                this.map.force();
+            }
+        }
+
+        void close() throws IOException {
+            this.channel.close();
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(this.path);
+        }
+    }
+}
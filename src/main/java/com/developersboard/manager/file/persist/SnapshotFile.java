@@ -0,0 +1,164 @@
+package com.developersboard.manager.file.persist;
+
+import com.developersboard.manager.file.index.StringInterner;
+import com.developersboard.manager.file.index.TagIndex;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of a {@link TagIndex}, tagged with the generation
+ * of the first journal segment holding the changes made after it.
+ * <p>
+ * The interned paths are written as the raw arena of the interner, followed
+ * by its offsets, and each tag as its name and serialized posting, so that
+ * loading is a handful of bulk copies out of a memory-mapped file rather
+ * than a parse per file. The whole content is covered by a trailing CRC32C
+ * checksum. Snapshots are written next to the previous one and moved over
+ * it once on disk, so a crash never leaves a partial snapshot behind.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x54414753;
+    private static final int FORMAT = 1;
+
+    /**
+     * A snapshot read back, with the generation of the journal to replay after it.
+     */
+    public record Contents(long generation, TagIndex.Image image) {
+    }
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot durably, replacing any previous one.
+     *
+     * @param file       the path of the snapshot
+     * @param generation the generation of the first journal segment not in the snapshot
+     * @param image      the content of the index
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(Path file, long generation, TagIndex.Image image) throws IOException {
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var crc = new CRC32C();
+            var out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(generation);
+
+            var paths = image.paths();
+            out.writeInt(paths.size());
+            out.writeInt(paths.offsets()[paths.size()]);
+            out.write(paths.bytes(), 0, paths.offsets()[paths.size()]);
+            for (int i = 0; i <= paths.size(); i++) {
+                out.writeInt(paths.offsets()[i]);
+            }
+            writeBitmap(out, image.live());
+
+            out.writeInt(image.tagNames().size());
+            for (int i = 0; i < image.tagNames().size(); i++) {
+                var name = image.tagNames().get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                writeBitmap(out, image.postings().get(i));
+            }
+            out.flush();
+            // the checksum goes through the stream too, but is taken before
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a snapshot back through a memory mapping of the file.
+     *
+     * @param file the path of the snapshot
+     * @return the snapshot, or null if there is none
+     * @throws IOException if the snapshot cannot be read or is corrupt
+     */
+    public static Contents read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 2 * Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt snapshot " + file + " of " + size + " bytes");
+            }
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int contentSize = (int) size - Integer.BYTES;
+            var crc = new CRC32C();
+            crc.update(buffer.slice(0, contentSize));
+            if ((int) crc.getValue() != buffer.getInt(contentSize) || buffer.getInt() != MAGIC) {
+                throw new IOException("Corrupt snapshot " + file);
+            }
+            if (buffer.getInt() != FORMAT) {
+                throw new IOException("Unsupported snapshot format in " + file);
+            }
+            long generation = buffer.getLong();
+
+            int pathCount = buffer.getInt();
+            var bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            var offsets = new int[pathCount + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+            var live = readBitmap(buffer);
+
+            int tagCount = buffer.getInt();
+            var tagNames = new ArrayList<String>(tagCount);
+            var postings = new ArrayList<RoaringBitmap>(tagCount);
+            for (int i = 0; i < tagCount; i++) {
+                var name = new byte[buffer.getInt()];
+                buffer.get(name);
+                tagNames.add(new String(name, StandardCharsets.UTF_8));
+                postings.add(readBitmap(buffer));
+            }
+
+            var paths = new StringInterner.View(bytes, offsets, pathCount);
+            return new Contents(generation, new TagIndex.Image(paths, live, tagNames, postings));
+        }
+    }
+
+    private static void writeBitmap(DataOutputStream out, RoaringBitmap bitmap) throws IOException {
+        bitmap.runOptimize();
+        out.writeInt(bitmap.serializedSizeInBytes());
+        bitmap.serialize(out);
+    }
+
+    /**
+     * Deserializes a bitmap from a slice of its own, as the deserializer may
+     * change the position and byte order of the buffer it is given.
+     */
+    private static RoaringBitmap readBitmap(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        var bitmap = new RoaringBitmap();
+        bitmap.deserialize(buffer.slice(buffer.position(), length));
+        buffer.position(buffer.position() + length);
+
+        return bitmap;
+    }
+}
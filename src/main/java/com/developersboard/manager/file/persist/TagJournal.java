@@ -0,0 +1,396 @@
+package com.developersboard.manager.file.persist;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the changes made to the tags, replayed on restart on
+ * top of the last snapshot of the index.
+ * <p>
+ * The log is split into segments numbered by generation: each restart and
+ * each snapshot starts a new one, so that a snapshot only needs the segments
+ * from its own generation on, and a segment torn by a crash is never
+ * appended to again. Every record is prefixed with its length and a CRC32C
+ * checksum of its content; replay stops at the first record of a segment
+ * that is incomplete or does not match its checksum.
+ * <p>
+ * Records are appended to memory, which is cheap enough to do under the
+ * locks ordering the changes, and made durable by {@link #sync()} once the
+ * locks are released. Syncs are committed in groups: the first caller
+ * writes and forces every record appended so far, and callers arriving
+ * meanwhile wait for it rather than forcing the file once each.
+ */
+public class TagJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TagJournal.class);
+
+    private static final Pattern SEGMENT = Pattern.compile("journal-(\\d{16})\\.wal");
+
+    /**
+     * Size of the prefix of a record: its length, then its checksum
+     */
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Largest record accepted on replay, beyond which a length is taken as corrupt
+     */
+    private static final int MAX_RECORD_BYTES = 1 << 30;
+
+    /**
+     * The kinds of changes, each with its own arguments.
+     */
+    public enum Op {
+        /**
+         * A tag was added: its name
+         */
+        ADD_TAG,
+        /**
+         * A tag was renamed: its old name, then its new one
+         */
+        EDIT_TAG,
+        /**
+         * An empty tag was deleted: its name
+         */
+        DELETE_TAG,
+        /**
+         * Files were tagged: the tag, then the files that did not carry it yet
+         */
+        TAG_FILES,
+        /**
+         * Files were untagged: the tag, then the files that carried it
+         */
+        UNTAG_FILES,
+        /**
+         * Files or directories were deleted: their paths
+         */
+        FORGET_FILES
+    }
+
+    /**
+     * A change read back from the journal.
+     */
+    public record Entry(Op op, List<String> args) {
+    }
+
+    private final Path directory;
+
+    /**
+     * Guards the pending records and the progress of the syncs.
+     */
+    private final Object monitor = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Number of records appended, and made durable, since the journal was opened
+     */
+    private long appended;
+    private long durable;
+
+    /**
+     * Records appended to the current segment, guarded by the monitor
+     */
+    private long segmentRecords;
+    private boolean flushing;
+    private IOException failure;
+
+    /**
+     * Written by the caller flushing, under the monitor's flushing flag
+     */
+    private long generation;
+    private FileChannel channel;
+
+    private TagJournal(Path directory, long generation) throws IOException {
+        this.directory = directory;
+        this.generation = generation;
+        this.channel = openSegment(generation);
+    }
+
+    /**
+     * Opens the journal on a new segment, after every existing one.
+     *
+     * @param directory     the directory of the segments
+     * @param minGeneration the lowest generation for the new segment
+     * @return the journal
+     * @throws IOException if the segment cannot be created
+     */
+    public static TagJournal open(Path directory, long minGeneration) throws IOException {
+        Files.createDirectories(directory);
+        long generation = minGeneration;
+        for (long existing : generations(directory)) {
+            generation = Math.max(generation, existing + 1);
+        }
+
+        return new TagJournal(directory, generation);
+    }
+
+    /**
+     * Replays the segments of a directory from a generation on, in order.
+     *
+     * @param directory      the directory of the segments
+     * @param fromGeneration the generation of the first segment to replay
+     * @param handler        receives every record read back
+     * @return the number of records replayed
+     * @throws IOException if a segment cannot be read
+     */
+    public static long replay(Path directory, long fromGeneration, Consumer<Entry> handler) throws IOException {
+        long replayed = 0;
+        if (!Files.isDirectory(directory)) {
+            return replayed;
+        }
+        for (long generation : generations(directory)) {
+            if (generation >= fromGeneration) {
+                replayed += replaySegment(directory.resolve(segmentName(generation)), handler);
+            }
+        }
+
+        return replayed;
+    }
+
+    public long getGeneration() {
+        synchronized (this.monitor) {
+            return this.generation;
+        }
+    }
+
+    /**
+     * @return true if records were appended since the current segment was started
+     */
+    public boolean hasRecords() {
+        synchronized (this.monitor) {
+            return this.segmentRecords > 0;
+        }
+    }
+
+    /**
+     * Appends a record to memory. Records are replayed in the order they
+     * were appended in, so callers append under the locks ordering the
+     * changes they record.
+     *
+     * @param op   the kind of change
+     * @param args the arguments of the change
+     */
+    public void append(Op op, List<String> args) {
+        var record = encode(op, args);
+        synchronized (this.monitor) {
+            this.pending.writeBytes(record);
+            this.segmentRecords++;
+            this.appended++;
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is on disk, writing them
+     * together with those of the callers syncing meanwhile.
+     *
+     * @throws IOException if the journal cannot be written, now or before
+     */
+    public void sync() throws IOException {
+        long position;
+        synchronized (this.monitor) {
+            position = this.appended;
+        }
+        flush(position, false);
+    }
+
+    /**
+     * Makes every record durable and starts a new segment, to be called while
+     * no record is appended.
+     *
+     * @return the generation of the new segment
+     * @throws IOException if the journal cannot be written
+     */
+    public long rotate() throws IOException {
+        return flush(Long.MAX_VALUE, true);
+    }
+
+    /**
+     * Deletes the segments older than a generation, once a snapshot holds
+     * their changes.
+     *
+     * @param generation the generation of the oldest segment to keep
+     * @throws IOException if a segment cannot be deleted
+     */
+    public void deleteBefore(long generation) throws IOException {
+        for (long existing : generations(this.directory)) {
+            if (existing < generation) {
+                Files.deleteIfExists(this.directory.resolve(segmentName(existing)));
+            }
+        }
+    }
+
+    /**
+     * Makes the pending records durable and closes the journal.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush(Long.MAX_VALUE, false);
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    private long flush(long position, boolean rotate) throws IOException {
+        byte[] batch;
+        long upTo;
+        synchronized (this.monitor) {
+            try {
+                while (this.flushing && (rotate || this.durable < position)) {
+                    this.monitor.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting on the journal");
+            }
+            if (this.failure != null) {
+                throw new IOException("Journal failed on an earlier write", this.failure);
+            }
+            if (!rotate && this.durable >= Math.min(position, this.appended)) {
+                return this.generation;
+            }
+            this.flushing = true;
+            batch = this.pending.toByteArray();
+            this.pending.reset();
+            upTo = this.appended;
+        }
+
+        IOException error = null;
+        try {
+            var buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+            this.channel.force(false);
+            if (rotate) {
+                var next = openSegment(this.generation + 1);
+                this.channel.close();
+                this.channel = next;
+            }
+        } catch (IOException e) {
+            error = e;
+            throw e;
+        } finally {
+            synchronized (this.monitor) {
+                this.flushing = false;
+                if (error == null) {
+                    this.durable = upTo;
+                    if (rotate) {
+                        this.generation++;
+                        this.segmentRecords = 0;
+                    }
+                } else {
+                    // the batch is lost, so no later record may be taken as durable
+                    this.failure = error;
+                }
+                this.monitor.notifyAll();
+            }
+        }
+
+        return getGeneration();
+    }
+
+    private FileChannel openSegment(long generation) throws IOException {
+        var channel = FileChannel.open(this.directory.resolve(segmentName(generation)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // makes the new segment itself durable, not only its content
+        channel.force(true);
+
+        return channel;
+    }
+
+    private static byte[] encode(Op op, List<String> args) {
+        var encoded = new byte[args.size()][];
+        int length = 1 + Integer.BYTES;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = args.get(i).getBytes(StandardCharsets.UTF_8);
+            length += Integer.BYTES + encoded[i].length;
+        }
+        var buffer = ByteBuffer.allocate(HEADER_BYTES + length);
+        buffer.putInt(length).putInt(0);
+        buffer.put((byte) op.ordinal()).putInt(encoded.length);
+        for (byte[] arg : encoded) {
+            buffer.putInt(arg.length).put(arg);
+        }
+        var crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(Integer.BYTES, (int) crc.getValue());
+
+        return buffer.array();
+    }
+
+    private static long replaySegment(Path segment, Consumer<Entry> handler) throws IOException {
+        long replayed = 0;
+        try (var channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            var crc = new CRC32C();
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                    LOG.warn("Journal {} ends with a torn record at {}", segment, start);
+                    return replayed;
+                }
+                var content = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(content.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    LOG.warn("Journal {} has a corrupt record at {}; skipping the rest of it", segment, start);
+                    return replayed;
+                }
+                handler.accept(decode(content));
+                buffer.position(buffer.position() + length);
+                replayed++;
+            }
+            if (buffer.hasRemaining()) {
+                LOG.warn("Journal {} ends with a torn record at {}", segment, buffer.position());
+            }
+        }
+
+        return replayed;
+    }
+
+    private static Entry decode(ByteBuffer content) {
+        var op = Op.values()[content.get()];
+        int count = content.getInt();
+        var args = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            var arg = new byte[content.getInt()];
+            content.get(arg);
+            args.add(new String(arg, StandardCharsets.UTF_8));
+        }
+
+        return new Entry(op, args);
+    }
+
+    private static List<Long> generations(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> SEGMENT.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static String segmentName(long generation) {
+        return String.format("journal-%016d.wal", generation);
+    }
+}
@@ -0,0 +1,178 @@
+package com.developersboard.manager.file.persist;
+
+import com.developersboard.manager.file.index.TagIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Persistence of the tags across restarts, in a directory holding the last
+ * {@link SnapshotFile snapshot} of the index and the {@link TagJournal}
+ * segments written since.
+ * <p>
+ * On startup the snapshot is loaded and the journal replayed on top of it;
+ * a new journal segment then records the changes from there on. A checkpoint
+ * writes a fresh snapshot and drops the segments it covers, periodically and
+ * once after a restart that replayed changes, so that the journal to replay
+ * stays short.
+ */
+public class TagStore implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TagStore.class);
+
+    public static final String SNAPSHOT_FILE = "tags.snapshot";
+
+    public static final long DEFAULT_CHECKPOINT_SECONDS = 60;
+
+    /**
+     * Restores the index from a snapshot.
+     */
+    @FunctionalInterface
+    public interface Restore {
+        void apply(TagIndex.Image image) throws IOException;
+    }
+
+    /**
+     * A checkpoint of the index, run by the store when due.
+     */
+    @FunctionalInterface
+    public interface Checkpoint {
+        void run() throws IOException;
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long checkpointSeconds;
+    private ScheduledExecutorService scheduler;
+    private TagJournal journal;
+
+    /**
+     * True while the snapshot lacks changes replayed from older segments
+     */
+    private volatile boolean behind;
+
+    /**
+     * @param enabled           true to persist the tags, false to start empty every time
+     * @param directory         the directory of the snapshot and the journal
+     * @param checkpointSeconds the period of the checkpoints
+     */
+    public TagStore(boolean enabled, Path directory, long checkpointSeconds) {
+        if (enabled && checkpointSeconds < 1) {
+            throw new IllegalArgumentException("Checkpoint period must be positive: " + checkpointSeconds);
+        }
+        this.enabled = enabled;
+        this.directory = directory;
+        this.checkpointSeconds = checkpointSeconds;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Loads the last snapshot, replays the journal written after it and opens
+     * a new journal segment, closing the journal opened by an earlier call.
+     *
+     * @param restore restores the index from the snapshot, if there is one
+     * @param replay  applies every change read back from the journal, in order
+     * @return the journal recording the changes from now on
+     * @throws IOException if the snapshot is corrupt, or the journal cannot be read or opened
+     */
+    public synchronized TagJournal recover(Restore restore, Consumer<TagJournal.Entry> replay)
+            throws IOException {
+        if (this.journal != null) {
+            this.journal.close();
+            this.journal = null;
+        }
+        long start = System.nanoTime();
+        var snapshot = SnapshotFile.read(this.directory.resolve(SNAPSHOT_FILE));
+        long generation = 0;
+        if (snapshot != null) {
+            restore.apply(snapshot.image());
+            generation = snapshot.generation();
+        }
+        long replayed = TagJournal.replay(this.directory, generation, replay);
+        this.journal = TagJournal.open(this.directory, generation);
+        this.behind = replayed > 0;
+        LOG.info("Recovered {} files and replayed {} changes from {} in {} ms",
+                snapshot == null ? 0 : snapshot.image().live().getCardinality(), replayed, this.directory,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return this.journal;
+    }
+
+    /**
+     * Schedules the periodic checkpoints, the first one at once if the last
+     * recovery replayed changes. Checkpoints are skipped while the journal
+     * holds no change.
+     *
+     * @param checkpoint captures the index and hands it to {@link #writeSnapshot}
+     */
+    public synchronized void scheduleCheckpoints(Checkpoint checkpoint) {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "tag-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var journal = this.journal;
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            if (journal == null || !this.behind && !journal.hasRecords()) {
+                return;
+            }
+            try {
+                checkpoint.run();
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Could not checkpoint the tags into {}", this.directory, e);
+            }
+        }, 0, this.checkpointSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes a snapshot of the index, then drops the journal segments it covers.
+     *
+     * @param generation the generation of the first journal segment not in the snapshot
+     * @param image      the content of the index
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot(long generation, TagIndex.Image image) throws IOException {
+        long start = System.nanoTime();
+        SnapshotFile.write(this.directory.resolve(SNAPSHOT_FILE), generation, image);
+        TagJournal journal;
+        synchronized (this) {
+            journal = this.journal;
+        }
+        if (journal != null) {
+            journal.deleteBefore(generation);
+        }
+        this.behind = false;
+        LOG.debug("Wrote snapshot of {} files in {} ms", image.live().getCardinality(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Stops the checkpoints and closes the journal, making its records durable.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+        if (this.journal != null) {
+            this.journal.close();
+            this.journal = null;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.developersboard.manager.file.version;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multi-version store of file contents, letting a reader see every file as of
+ * a single generation without holding file locks.
+ * <p>
+ * Every batch write is a commit that advances the generation. A reader opens
+ * a {@link Snapshot} on the current generation and, for each file, sees the
+ * newest version committed at or before it. Only files written while readers
+ * are open get versions in memory, each chain starting with the content the
+ * file had before the first such write; any other file is read from disk,
+ * whose content is then the newest version. Versions no open reader can see
+ * any more are dropped, and a chain left with a single version visible to
+ * every reader is dropped whole, as the disk holds that version.
+ * <p>
+ * Commits are made while the write locks of their files are held, and
+ * readers validate each read against the lock of the file, so that a reader
+ * never observes a file halfway through a commit.
+ */
+public class ContentVersions {
+
+    /**
+     * Generation of the content a file had before its chain was created, seen
+     * by every reader.
+     */
+    private static final long BASE_GENERATION = 0L;
+
+    /**
+     * A content committed at a generation, linked to the version it superseded.
+     */
+    private record Version(long generation, String content, Version older) {
+    }
+
+    private final boolean enabled;
+
+    /**
+     * Guards the generation counter, the open readers and the pending commits.
+     */
+    private final Object monitor = new Object();
+    private volatile long generation = BASE_GENERATION;
+
+    /**
+     * Number of open snapshots per generation, guarded by the monitor
+     */
+    private final TreeMap<Long, Integer> readers = new TreeMap<>();
+
+    /**
+     * Number of commits between {@link #prepare} and {@link Commit#finish},
+     * during which no chain may be dropped; guarded by the monitor
+     */
+    private int pending;
+
+    /**
+     * Version chains of the files written while readers were open, newest first
+     */
+    private final Map<Integer, Version> chains = new ConcurrentHashMap<>();
+
+    /**
+     * @param enabled true to serve reads from versions, false to keep the
+     *                locking behaviour and never allocate versions
+     */
+    public ContentVersions(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * @return the number of files currently holding versions in memory
+     */
+    public int getChainCount() {
+        return this.chains.size();
+    }
+
+    /**
+     * Opens a reader on the current generation. The snapshot must be closed
+     * so that the versions it sees can be collected.
+     *
+     * @return the snapshot
+     */
+    public Snapshot open() {
+        synchronized (this.monitor) {
+            long current = this.generation;
+            this.readers.merge(current, 1, Integer::sum);
+
+            return new Snapshot(current);
+        }
+    }
+
+    /**
+     * Starts a commit over a set of files, whose write locks the caller holds
+     * until {@link Commit#finish} returns.
+     * <p>
+     * With no reader open, the generation is advanced at once: readers opening
+     * from now on see the new contents, waiting on the file locks for the
+     * files not committed yet. Otherwise the generation only advances when the
+     * commit finishes, and the current content of the files without a chain
+     * must be handed to {@link Commit#finish} for the open readers.
+     *
+     * @param fileIds the ids of the files about to be written
+     * @return the commit, telling which previous contents it needs
+     */
+    public Commit prepare(RoaringBitmap fileIds) {
+        synchronized (this.monitor) {
+            this.pending++;
+            if (this.readers.isEmpty()) {
+                return new Commit(fileIds, ++this.generation, new RoaringBitmap());
+            }
+
+            var missing = new RoaringBitmap();
+            fileIds.forEach((int fileId) -> {
+                if (!this.chains.containsKey(fileId)) {
+                    missing.add(fileId);
+                }
+            });
+
+            return new Commit(fileIds, -1L, missing);
+        }
+    }
+
+    /**
+     * Records a write of a single file made outside of any commit, so that a
+     * chain holding the file does not keep serving its previous content to
+     * readers opened from now on.
+     *
+     * @param fileId  the id of the file
+     * @param content the new content of the file
+     */
+    public void overwrite(int fileId, String content) {
+        if (!this.chains.containsKey(fileId)) {
+            return;
+        }
+        synchronized (this.monitor) {
+            var chain = this.chains.get(fileId);
+            if (chain != null) {
+                this.chains.put(fileId, new Version(++this.generation, content, chain));
+                collect();
+            }
+        }
+    }
+
+    /**
+     * Drops every version. Readers still open read the files from disk.
+     */
+    public void clear() {
+        synchronized (this.monitor) {
+            this.chains.clear();
+        }
+    }
+
+    /**
+     * Drops the versions no open reader can see. The caller must hold the monitor.
+     */
+    private void collect() {
+        if (this.pending > 0 || this.chains.isEmpty()) {
+            return;
+        }
+        long oldest = this.readers.isEmpty() ? this.generation : this.readers.firstKey();
+        for (Iterator<Map.Entry<Integer, Version>> it = this.chains.entrySet().iterator(); it.hasNext(); ) {
+            var entry = it.next();
+            var chain = entry.getValue();
+            if (chain.generation() <= oldest) {
+                // the newest version is seen by everyone, and is on disk
+                it.remove();
+            } else {
+                entry.setValue(prune(chain, oldest));
+            }
+        }
+    }
+
+    /**
+     * Copies a chain up to the newest version seen by the oldest reader.
+     */
+    private static Version prune(Version chain, long oldest) {
+        if (chain.older() == null) {
+            return chain;
+        }
+        if (chain.generation() <= oldest) {
+            return new Version(chain.generation(), chain.content(), null);
+        }
+        var older = prune(chain.older(), oldest);
+
+        return older == chain.older() ? chain : new Version(chain.generation(), chain.content(), older);
+    }
+
+    /**
+     * A commit in progress, see {@link #prepare(RoaringBitmap)}.
+     */
+    public final class Commit {
+
+        private final RoaringBitmap fileIds;
+        private final long generation;
+        private final RoaringBitmap missing;
+
+        private Commit(RoaringBitmap fileIds, long generation, RoaringBitmap missing) {
+            this.fileIds = fileIds;
+            this.generation = generation;
+            this.missing = missing;
+        }
+
+        /**
+         * @return the ids of the files whose current content must be handed
+         * to {@link #finish}, in ascending order
+         */
+        public RoaringBitmap getMissing() {
+            return this.missing;
+        }
+
+        /**
+         * Publishes the new content of the files, to be called once it is on
+         * disk and before their write locks are released. Also ends a commit
+         * that failed, with a null content, keeping the versions as they were.
+         *
+         * @param content  the content written to every file, or null if the commit failed
+         * @param previous the current contents of {@link #getMissing()}, in the same order
+         */
+        public void finish(String content, String[] previous) {
+            synchronized (monitor) {
+                try {
+                    if (content != null) {
+                        publish(content, previous);
+                    }
+                } finally {
+                    pending--;
+                    collect();
+                }
+            }
+        }
+
+        private void publish(String content, String[] previous) {
+            long committed = this.generation >= 0 ? this.generation : ++ContentVersions.this.generation;
+            int next = 0;
+            var fileIds = this.fileIds.getIntIterator();
+            while (fileIds.hasNext()) {
+                int fileId = fileIds.next();
+                var chain = chains.get(fileId);
+                // the missing files come in the same ascending order as their previous contents
+                if (chain == null && this.missing.contains(fileId)) {
+                    chain = new Version(BASE_GENERATION, previous[next++], null);
+                }
+                if (chain != null) {
+                    chains.put(fileId, new Version(committed, content, chain));
+                }
+            }
+        }
+    }
+
+    /**
+     * A reader pinned to a generation.
+     */
+    public final class Snapshot implements AutoCloseable {
+
+        private final long generation;
+        private boolean closed;
+
+        private Snapshot(long generation) {
+            this.generation = generation;
+        }
+
+        public long getGeneration() {
+            return this.generation;
+        }
+
+        /**
+         * Returns the content of a file as of the generation of the snapshot.
+         * The caller validates the read against the lock of the file.
+         *
+         * @param fileId the id of the file
+         * @return the content, or null if the file is to be read from disk
+         */
+        public String get(int fileId) {
+            for (var version = chains.get(fileId); version != null; version = version.older()) {
+                if (version.generation() <= this.generation) {
+                    return version.content();
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public void close() {
+            synchronized (monitor) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                int count = readers.merge(this.generation, -1, Integer::sum);
+                if (count == 0) {
+                    readers.remove(this.generation);
+                    collect();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.developersboard.manager.file.watch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory tree for created, deleted and modified entries, and
+ * reports them in debounced batches.
+ * <p>
+ * The paths of the events are only collected: a batch is delivered once no
+ * event has arrived for a quiet period, or once the oldest pending event has
+ * waited for the maximum delay, so that a storm of events, such as a bulk
+ * copy, turns into a few large batches. The batch does not say what happened
+ * to each path; listeners look at the file system, which is the final state
+ * whatever sequence of events led to it. Directories created later are
+ * watched as well, and the files already in them when they are registered
+ * are reported too.
+ */
+public class DirectoryWatcher implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+    /**
+     * Receiver of the batches, called from the watcher thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param paths the paths that changed since the previous batch
+         */
+        void onChanges(Set<Path> paths);
+
+        /**
+         * Called instead of {@link #onChanges} when events were lost, after
+         * which the whole tree must be looked at again.
+         */
+        void onOverflow();
+    }
+
+    private final Path root;
+    private final Listener listener;
+    private final long quietNanos;
+    private final long maxDelayNanos;
+
+    /**
+     * Watched directories, only accessed by the watcher thread once started
+     */
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Set<Path> pending = new LinkedHashSet<>();
+    private boolean overflow;
+
+    private WatchService service;
+    private Thread thread;
+
+    /**
+     * @param root     the root of the tree to watch
+     * @param listener the receiver of the batches
+     * @param quiet    the quiet period after which a batch is delivered
+     * @param maxDelay the longest time an event waits before being delivered
+     * @param unit     the unit of the periods
+     */
+    public DirectoryWatcher(Path root, Listener listener, long quiet, long maxDelay, TimeUnit unit) {
+        this.root = root;
+        this.listener = listener;
+        this.quietNanos = unit.toNanos(quiet);
+        this.maxDelayNanos = Math.max(unit.toNanos(maxDelay), this.quietNanos);
+    }
+
+    /**
+     * Registers the tree and starts the watcher thread.
+     *
+     * @throws IOException if the tree cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (this.service != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.service = this.root.getFileSystem().newWatchService();
+        registerTree(this.root, false);
+
+        this.thread = new Thread(this::run, "directory-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops watching. Pending events are dropped.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.service != null) {
+            this.service.close();
+        }
+    }
+
+    private void run() {
+        long first = 0;
+        long last = 0;
+        try {
+            while (true) {
+                WatchKey key;
+                if (this.pending.isEmpty() && !this.overflow) {
+                    key = this.service.take();
+                } else {
+                    long deadline = Math.min(last + this.quietNanos, first + this.maxDelayNanos);
+                    key = this.service.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+
+                if (key != null) {
+                    long now = System.nanoTime();
+                    if (this.pending.isEmpty() && !this.overflow) {
+                        first = now;
+                    }
+                    last = now;
+                    collect(key);
+                } else {
+                    deliver();
+                }
+                if ((!this.pending.isEmpty() || this.overflow) && System.nanoTime() - first >= this.maxDelayNanos) {
+                    deliver();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Stopped watching {}", this.root);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void collect(WatchKey key) {
+        var directory = this.directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                this.overflow = true;
+                continue;
+            }
+            var path = directory.resolve((Path) event.context());
+            this.pending.add(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(path, true);
+            }
+        }
+        if (!key.reset()) {
+            this.directories.remove(key);
+        }
+    }
+
+    private void deliver() {
+        try {
+            if (this.overflow) {
+                this.listener.onOverflow();
+            } else if (!this.pending.isEmpty()) {
+                this.listener.onChanges(Set.copyOf(this.pending));
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Could not apply changes of {}", this.root, e);
+        } finally {
+            this.pending.clear();
+            this.overflow = false;
+        }
+    }
+
+    /**
+     * Watches a directory and its subdirectories.
+     *
+     * @param directory   the directory
+     * @param reportFiles whether the files found are reported, as they were
+     *                    created before the directory could be watched
+     */
+    private void registerTree(Path directory, boolean reportFiles) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    var key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    directories.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (reportFiles) {
+                        pending.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // deleted meanwhile; its delete event follows
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn("Could not watch {}", directory, e);
+        }
+    }
+}
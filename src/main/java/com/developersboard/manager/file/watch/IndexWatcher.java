@@ -0,0 +1,116 @@
+package com.developersboard.manager.file.watch;
+
+import com.developersboard.manager.file.TagManager;
+import com.developersboard.manager.file.cache.ContentCache;
+import com.developersboard.manager.file.impl.AbstractFileTagManager;
+import com.developersboard.manager.file.io.DirectoryScanner;
+import com.developersboard.manager.file.pack.PackStore;
+import com.developersboard.shared.TaggedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the tag index in step with the files of {@link TagManager#BASEDIR}
+ * as they are created, deleted and modified after startup.
+ * <p>
+ * New files start untagged, deleted files are dropped from every tag, and
+ * the cached or packed content of modified files is discarded. Each debounced batch of
+ * changes is applied with one call per kind of change, so a bulk copy takes
+ * the index lock a handful of times rather than once per file.
+ */
+@Component
+public class IndexWatcher implements DirectoryWatcher.Listener, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexWatcher.class);
+
+    private final TagManager tagManager;
+    private final ContentCache cache;
+    private final PackStore pack;
+    private final boolean enabled;
+    private final DirectoryWatcher watcher;
+
+    public IndexWatcher(TagManager tagManager, ContentCache cache, PackStore pack,
+                        @Value("${file-manager.watch.enabled:true}") boolean enabled,
+                        @Value("${file-manager.watch.quiet-millis:200}") long quietMillis,
+                        @Value("${file-manager.watch.max-delay-millis:2000}") long maxDelayMillis) {
+        this.tagManager = tagManager;
+        this.cache = cache;
+        this.pack = pack;
+        this.enabled = enabled;
+        this.watcher = new DirectoryWatcher(TagManager.BASEDIR, this, quietMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts watching, unless disabled. Meant to be called once the tag
+     * manager is initialized and before the files are scanned, so that no
+     * file created meanwhile is missed.
+     */
+    public void start() {
+        if (!this.enabled) {
+            return;
+        }
+        try {
+            this.watcher.start();
+        } catch (IOException e) {
+            LOG.error("Could not watch {}; files created from now on will not be indexed", TagManager.BASEDIR, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watcher.close();
+    }
+
+    @Override
+    public void onChanges(Set<Path> paths) {
+        var present = new ArrayList<Path>();
+        var gone = new ArrayList<Path>();
+        for (Path path : paths) {
+            if (!AbstractFileTagManager.isManagedFile(path)) {
+                continue;
+            }
+            if (Files.isRegularFile(path)) {
+                present.add(path);
+                this.cache.invalidate(path);
+                this.pack.discardIfStale(path);
+            } else if (!Files.isDirectory(path)) {
+                gone.add(path);
+            }
+        }
+
+        int added = present.isEmpty() ? 0 : this.tagManager.addFiles(present);
+        int removed = gone.isEmpty() ? 0 : this.tagManager.removeFiles(gone);
+        LOG.debug("Applied {} changes: {} files added, {} removed", paths.size(), added, removed);
+    }
+
+    @Override
+    public void onOverflow() {
+        LOG.warn("Lost track of changes in {}; rescanning", TagManager.BASEDIR);
+        try {
+            var found = new HashSet<>(DirectoryScanner.scan(TagManager.BASEDIR, AbstractFileTagManager::isManagedFile));
+            var gone = new ArrayList<Path>();
+            for (TaggedFile file : this.tagManager.listAllFiles()) {
+                var path = Paths.get(file.getName());
+                if (!found.contains(path)) {
+                    gone.add(path);
+                }
+            }
+            this.cache.clear();
+            this.tagManager.addFiles(found);
+            this.tagManager.removeFiles(gone);
+        } catch (IOException e) {
+            LOG.error("Could not rescan {}", TagManager.BASEDIR, e);
+        }
+    }
+}
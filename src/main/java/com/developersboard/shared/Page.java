@@ -0,0 +1,17 @@
+package com.developersboard.shared;
+
+import java.util.List;
+
+/**
+ * One page of a listing, together with the opaque cursor of the next page.
+ *
+ * @param items      the items of the page
+ * @param nextCursor the cursor resuming the listing, or null on the last page
+ * @param <T>        the type of the items
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+
+    public boolean hasNext() {
+        return this.nextCursor != null;
+    }
+}
@@ -1,13 +1,18 @@
 package com.developersboard.shared;
 
 import java.util.Collection;
-import java.util.concurrent.locks.StampedLock;
 
 public interface Tag {
 
-    String getName();
+    /**
+     * The identity of the tag, which survives renames. Two tag objects stand
+     * for the same tag when their ids are equal, whatever their names.
+     *
+     * @return the id of the tag
+     */
+    int getId();
 
-    StampedLock getLock();
+    String getName();
 
     Collection<TaggedFile> getFiles();
 }
@@ -2,37 +2,62 @@ package com.developersboard.shared.impl;
 
 import com.developersboard.shared.Tag;
 import com.developersboard.shared.TaggedFile;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.locks.StampedLock;
 
+/**
+ * An immutable tag. Tags are equal when their ids are, so renaming a tag,
+ * which yields a new object with the same id, never disturbs the hash
+ * collections holding it. Tags not registered yet have no id and are equal
+ * by name.
+ */
 @Component
 public class DefaultTag implements Tag {
 
-    private String name;
-    private final StampedLock lock = new StampedLock();
-    private final Set<TaggedFile> files = new HashSet<>();
+    /**
+     * Id of the tags not registered with a tag manager
+     */
+    public static final int NO_ID = -1;
 
+    private final int id;
+    private final String name;
+    private final Collection<TaggedFile> files;
+
+    @Autowired
     public DefaultTag(String name) {
-        this.name = name;
+        this(NO_ID, name);
     }
 
-    @Override
-    public String getName() {
-        return this.name;
+    public DefaultTag(int id, String name) {
+        this(id, name, Collections.emptySet());
     }
 
-    public void setName(String name) {
+    /**
+     * Creates a tag whose files are provided by a view, typically over the
+     * posting of the tag in an index.
+     *
+     * @param id    the id of the tag
+     * @param name  the name of the tag
+     * @param files the files carrying the tag
+     */
+    public DefaultTag(int id, String name, Collection<TaggedFile> files) {
+        this.id = id;
         this.name = name;
+        this.files = files;
     }
 
     @Override
-    public StampedLock getLock() {
-        return this.lock;
+    public int getId() {
+        return this.id;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
     }
 
     @Override
@@ -50,18 +75,19 @@ public class DefaultTag implements Tag {
         }
         var that = (DefaultTag) o;
 
-        return getName().equals(that.getName());
+        return this.id == that.id && (this.id != NO_ID || this.name.equals(that.name));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getName());
+        return this.id != NO_ID ? Integer.hashCode(this.id) : Objects.hash(this.name);
     }
 
     @Override
     public String toString() {
         return "DefaultTag{" +
-                "name='" + name + '\'' +
+                "id=" + id +
+                ", name='" + name + '\'' +
                 '}';
     }
 }
@@ -5,7 +5,6 @@ import com.developersboard.internal.DeadlockDetectorAndRerunRule;
 import com.developersboard.manager.command.FileTagCommandManager;
 import com.developersboard.manager.file.impl.FileTagManager;
 import com.developersboard.shared.impl.DefaultTag;
-import com.developersboard.shared.impl.DefaultTaggedFile;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.RepeatedTest;
@@ -22,7 +21,6 @@ import java.nio.file.Paths;
 @ContextConfiguration(classes = {
         DefaultTag.class,
         FileTagManager.class,
-        DefaultTaggedFile.class,
         ApplicationConfig.class,
 })
 @Execution(ExecutionMode.CONCURRENT)
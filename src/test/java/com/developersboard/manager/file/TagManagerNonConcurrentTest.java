@@ -8,24 +8,27 @@ import com.developersboard.manager.file.impl.FileTagManager;
 import com.developersboard.shared.Tag;
 import com.developersboard.shared.TaggedFile;
 import com.developersboard.shared.impl.DefaultTag;
-import com.developersboard.shared.impl.DefaultTaggedFile;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 @ContextConfiguration(classes = {
         DefaultTag.class,
         FileTagManager.class,
-        DefaultTaggedFile.class,
         ApplicationConfig.class,
 })
 @ExtendWith(SpringExtension.class)
@@ -34,6 +37,9 @@ class TagManagerNonConcurrentTest {
     @Autowired
     private TagManager cut; // cut = class under test
 
+    @Autowired
+    private AsyncTagManager asyncCut;
+
     @BeforeEach
     @Timeout(value = 8000, unit = TimeUnit.MILLISECONDS)
     void setUp() {
@@ -300,12 +306,146 @@ class TagManagerNonConcurrentTest {
                 () -> cut.removeTag(file, tagName));
     }
 
+    @Test
+    void shouldReportTaggingOutcomesByStatus(TestInfo testInfo) {
+        // given
+        var tagName = testInfo.getDisplayName();
+        cut.init(List.of(Paths.get("a.txt")));
+
+        // when
+        var added = cut.tryAddTag(tagName);
+        var tagged = cut.tryTagFile("a.txt", tagName);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(TagManager.AddTagStatus.ADDED, added);
+            Assertions.assertEquals(TagManager.AddTagStatus.TAG_EXISTS, cut.tryAddTag(tagName));
+            Assertions.assertEquals(TagManager.TagFileStatus.TAGGED, tagged);
+            Assertions.assertEquals(TagManager.TagFileStatus.ALREADY_TAGGED, cut.tryTagFile("a.txt", tagName));
+            Assertions.assertEquals(TagManager.TagFileStatus.NO_SUCH_TAG, cut.tryTagFile("a.txt", tagName + "-missing"));
+            Assertions.assertEquals(TagManager.TagFileStatus.NO_SUCH_FILE, cut.tryTagFile("b.txt", tagName));
+            Assertions.assertEquals(TagManager.RemoveTagStatus.NOT_TAGGED, cut.tryRemoveTag("a.txt", TagManager.DEFAULT_TAG_NAME));
+            Assertions.assertEquals(TagManager.RemoveTagStatus.REMOVED, cut.tryRemoveTag("a.txt", tagName));
+            Assertions.assertEquals(TagManager.RemoveTagStatus.NOT_TAGGED, cut.tryRemoveTag("a.txt", tagName));
+        });
+    }
+
+    @Test
+    void shouldReportMissesByStatusWithoutSideEffects(TestInfo testInfo) throws Exception {
+        // given
+        var tagName = testInfo.getDisplayName();
+        var files = List.of("a.txt", "b.txt", "dir/c.txt", "d.txt");
+        cut.init(files.stream().map(Paths::get).toList());
+        var tag = cut.addTag(tagName);
+        cut.tagFile(files.get(1), tagName);
+
+        // when
+        var statuses = new ArrayList<Object>();
+        for (int i = 0; i < 1000; i++) {
+            statuses.add(cut.tryAddTag(tagName));
+            statuses.add(cut.tryTagFile("b.tx", tagName));
+            statuses.add(cut.tryTagFile("b.txt.bak", tagName));
+            statuses.add(cut.tryTagFile("c.txt", tagName));
+            statuses.add(cut.tryTagFile(files.get(0), tagName + "-missing"));
+            statuses.add(cut.tryTagFile(files.get(1), tagName));
+            statuses.add(cut.tryRemoveTag("dir/c", tagName));
+            statuses.add(cut.tryRemoveTag(files.get(2), tagName + "-missing"));
+            statuses.add(cut.tryRemoveTag(files.get(3), tagName));
+        }
+
+        // then
+        var expected = List.<Object>of(
+                TagManager.AddTagStatus.TAG_EXISTS,
+                TagManager.TagFileStatus.NO_SUCH_FILE,
+                TagManager.TagFileStatus.NO_SUCH_FILE,
+                TagManager.TagFileStatus.NO_SUCH_FILE,
+                TagManager.TagFileStatus.NO_SUCH_TAG,
+                TagManager.TagFileStatus.ALREADY_TAGGED,
+                TagManager.RemoveTagStatus.NO_SUCH_FILE,
+                TagManager.RemoveTagStatus.NO_SUCH_TAG,
+                TagManager.RemoveTagStatus.NOT_TAGGED);
+        var next = cut.addTag(tagName + "-next");
+        long count = cut.countTags().get(tagName);
+        Assertions.assertAll(() -> {
+            for (int i = 0; i < statuses.size(); i++) {
+                Assertions.assertEquals(expected.get(i % expected.size()), statuses.get(i));
+            }
+            Assertions.assertEquals(tag.getId() + 1, next.getId(), "no tag id spent on duplicates");
+            Assertions.assertEquals(1, count);
+            Assertions.assertEquals(TagManager.TagFileStatus.TAGGED, cut.tryTagFile(files.get(3), tagName));
+        });
+    }
+
+    @Test
+    void shouldTagAndUntagFilesInBatch(TestInfo testInfo) throws Exception {
+        // given
+        var tagName = testInfo.getDisplayName();
+        cut.init(List.of(Paths.get("a.txt"), Paths.get("b.txt"), Paths.get("c.log")));
+        cut.addTag(tagName);
+
+        // when
+        var tagged = cut.tagFilesMatching("*.txt", tagName);
+        var retagged = cut.tagFiles(List.of("a.txt", "c.log"), tagName);
+        var untagged = cut.untagFiles(List.of("a.txt", "b.txt"), tagName);
+
+        // then
+        Iterator<? extends Tag> tags = cut.getTags("a.txt").iterator();
+
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(2, tagged);
+            Assertions.assertEquals(1, retagged);
+            Assertions.assertEquals(2, untagged);
+            Assertions.assertEquals(TagManager.DEFAULT_TAG_NAME, tags.next().getName());
+            Assertions.assertFalse(tags.hasNext());
+            Assertions.assertThrows(NoSuchFileException.class, () -> cut.tagFiles(List.of("c.log", "d.txt"), tagName));
+            Assertions.assertEquals(1, cut.untagFilesMatching("*", tagName));
+        });
+    }
+
+    @Test
+    void shouldPipelineOperationsAsynchronously(TestInfo testInfo) throws Exception {
+        // given
+        var tagName = testInfo.getDisplayName();
+        cut.init(List.of(Paths.get("a.txt"), Paths.get("b.txt")));
+
+        // when
+        int tagged = asyncCut.addTag(tagName)
+                .thenCompose(tag -> asyncCut.tagFiles(List.of("a.txt", "b.txt"), tag.getName()))
+                .get(5, TimeUnit.SECONDS);
+        var missing = asyncCut.tagFile("a.txt", tagName + "-missing");
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(2, tagged);
+            Assertions.assertEquals(tagName, cut.getTags("b.txt").iterator().next().getName());
+            var failure = Assertions.assertThrows(ExecutionException.class, () -> missing.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(failure.getCause() instanceof NoSuchTagException);
+        });
+    }
+
     @Test
     void shouldCatToAllExistingTagsSuccessfully() throws Exception {
         cut.init(FileTagCommandManager.listAllFiles());
         cut.catAllFiles(TagManager.DEFAULT_TAG_NAME);
     }
 
+    @Test
+    void shouldStreamSameContentAsCatAll() throws Exception {
+        // given
+        cut.init(FileTagCommandManager.listAllFiles());
+        var out = new ByteArrayOutputStream();
+
+        // when
+        long written = cut.catAllFiles(TagManager.DEFAULT_TAG_NAME, Channels.newChannel(out));
+
+        // then
+        var expected = cut.catAllFiles(TagManager.DEFAULT_TAG_NAME);
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(expected, out.toString());
+            Assertions.assertEquals(out.size(), written);
+        });
+    }
+
     @Test
     void shouldThrowExceptionOnCatAllWhenTagDoesNotExist(TestInfo testInfo) throws Exception {
         cut.init(FileTagCommandManager.listAllFiles());
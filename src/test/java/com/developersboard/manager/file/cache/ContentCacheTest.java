@@ -0,0 +1,119 @@
+package com.developersboard.manager.file.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ContentCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void shouldServeUnchangedFileFromMemory() throws Exception {
+        // given
+        var cut = new ContentCache(1 << 20);
+        var file = Files.writeString(dir.resolve("a"), "hello");
+
+        // when
+        var first = cut.read(file);
+        var second = cut.read(file);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("hello", first);
+            Assertions.assertSame(first, second);
+            Assertions.assertEquals(1, cut.getMisses());
+            Assertions.assertEquals(1, cut.getHits());
+        });
+    }
+
+    @Test
+    void shouldRereadInvalidatedFile() throws Exception {
+        // given
+        var cut = new ContentCache(1 << 20);
+        var file = Files.writeString(dir.resolve("a"), "hello");
+        cut.read(file);
+
+        // when
+        Files.writeString(file, "world");
+        cut.invalidate(file);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("world", cut.read(file));
+            Assertions.assertEquals(2, cut.getMisses());
+        });
+    }
+
+    @Test
+    void shouldDetectChangeMadeBehindItsBack() throws Exception {
+        var cut = new ContentCache(1 << 20);
+        var file = Files.writeString(dir.resolve("a"), "short");
+        cut.read(file);
+
+        Files.writeString(file, "much longer");
+
+        Assertions.assertEquals("much longer", cut.read(file));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedBeyondBudget() throws Exception {
+        // given room for two entries of 100 characters only
+        var cut = new ContentCache(2 * (96 + 200) + 10);
+        var a = Files.writeString(dir.resolve("a"), "a".repeat(100));
+        var b = Files.writeString(dir.resolve("b"), "b".repeat(100));
+        var c = Files.writeString(dir.resolve("c"), "c".repeat(100));
+
+        // when
+        cut.read(a);
+        cut.read(b);
+        cut.read(a);
+        cut.read(c);
+
+        // then b, the least recently used, is gone
+        cut.read(a);
+        cut.read(b);
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(2, cut.getEvictions());
+            Assertions.assertEquals(2, cut.getHits());
+            Assertions.assertTrue(cut.getBytes() <= cut.getMaxBytes());
+        });
+    }
+
+    @Test
+    void shouldNotCacheWhenDisabled() throws Exception {
+        var cut = new ContentCache(0);
+        var file = Files.writeString(dir.resolve("a"), "hello");
+
+        cut.read(file);
+        cut.read(file);
+
+        Assertions.assertEquals(0, cut.getHits() + cut.getMisses());
+    }
+
+    @Test
+    void shouldLeaveFilesTooLargeToBeCachedToTheCaller() throws Exception {
+        // given room for 100 characters only
+        var cut = new ContentCache(96 + 200);
+        var small = Files.writeString(dir.resolve("small"), "s".repeat(100));
+        var large = Files.writeString(dir.resolve("large"), "l".repeat(101));
+
+        // when
+        var first = cut.readIfFits(small);
+        var second = cut.readIfFits(small);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("s".repeat(100), first);
+            Assertions.assertSame(first, second);
+            Assertions.assertNull(cut.readIfFits(large));
+            Assertions.assertEquals("l".repeat(101), cut.read(large));
+            Assertions.assertEquals(1, cut.getHits());
+            Assertions.assertEquals(0, cut.getEvictions());
+        });
+    }
+}
@@ -0,0 +1,224 @@
+package com.developersboard.manager.file.impl;
+
+import com.developersboard.manager.file.TagManager;
+import com.developersboard.manager.file.cache.ContentCache;
+import com.developersboard.manager.file.io.DirectoryScanner;
+import com.developersboard.manager.file.io.Durability;
+import com.developersboard.manager.file.io.FileSync;
+import com.developersboard.manager.file.io.ParallelFileIo;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.manager.file.pack.PackStore;
+import com.developersboard.manager.file.persist.TagStore;
+import com.developersboard.manager.file.version.ContentVersions;
+import com.developersboard.manager.file.watch.IndexWatcher;
+import com.developersboard.shared.TaggedFile;
+import com.developersboard.shared.impl.DefaultTag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Tests of the two phases of {@link FileTagManager#echoToAllFiles}: the
+ * temporary files written without locks, then renamed under the write locks.
+ */
+@Isolated("writes files under the base directory, which the other tag manager tests scan")
+class FileTagManagerEchoTest {
+
+    private static final String TAG = "echoed";
+    private static final String OLD_CONTENT = "old";
+    private static final int FILE_COUNT = 20;
+
+    private final ParallelFileIo io = new ParallelFileIo(4);
+    private final ContentCache cache = new ContentCache(0);
+    private final PackStore pack = new PackStore(false, null, PackStore.DEFAULT_MAX_FILE_BYTES,
+            PackStore.DEFAULT_SEGMENT_BYTES, PackStore.DEFAULT_COMPACT_SECONDS);
+
+    /**
+     * Run once by the next sync of files, which ends the first phase of an echo
+     */
+    private final AtomicReference<Runnable> betweenPhases = new AtomicReference<>();
+
+    private Path directory;
+    private List<String> files;
+    private FileTagManager cut;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.createDirectories(TagManager.BASEDIR);
+        directory = Files.createTempDirectory(TagManager.BASEDIR, "echo");
+        var sync = new FileSync(Durability.NONE, io) {
+            @Override
+            public void syncFiles(Collection<Path> files) throws IOException {
+                super.syncFiles(files);
+                var hook = betweenPhases.getAndSet(null);
+                if (hook != null) {
+                    hook.run();
+                }
+            }
+        };
+        cut = new FileTagManager(new DefaultTag(TagManager.DEFAULT_TAG_NAME), new FileLockManager(), io, cache,
+                new ContentVersions(false), new TagStore(false, null, 0), sync, pack);
+
+        var paths = new ArrayList<Path>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            paths.add(Files.writeString(directory.resolve("f" + i), OLD_CONTENT));
+        }
+        cut.init(paths);
+        cut.addTag(TAG);
+        files = paths.stream().map(Path::toString).toList();
+        cut.tagFiles(files, TAG);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        io.close();
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void shouldCommitEveryFileAndLeaveNoTempFiles() throws Exception {
+        // when
+        cut.echoToAllFiles(TAG, "new");
+
+        // then
+        for (String file : files) {
+            Assertions.assertEquals("new", Files.readString(Path.of(file)), file);
+        }
+        Assertions.assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void shouldLeaveNoTempFilesWhenEchoFails() throws Exception {
+        // given
+        var gone = Files.createDirectory(directory.resolve("gone"));
+        var file = Files.writeString(gone.resolve("f"), OLD_CONTENT);
+        cut.addFiles(List.of(file));
+        cut.tagFile(file.toString(), TAG);
+        Files.delete(file);
+        Files.delete(gone);
+
+        // when
+        Assertions.assertThrows(IOException.class, () -> cut.echoToAllFiles(TAG, "new"));
+
+        // then
+        Assertions.assertEquals(List.of(), tempFiles());
+        for (String name : files) {
+            Assertions.assertEquals(OLD_CONTENT, Files.readString(Path.of(name)), "no file committed");
+        }
+    }
+
+    @Test
+    void shouldEchoIntoFileTaggedBetweenPhases() throws Exception {
+        // given
+        var late = Files.writeString(directory.resolve("late"), OLD_CONTENT);
+        cut.addFiles(List.of(late));
+        betweenPhases.set(() -> {
+            try {
+                cut.tagFile(late.toString(), TAG);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // when
+        cut.echoToAllFiles(TAG, "new");
+
+        // then
+        Assertions.assertAll(
+                () -> Assertions.assertNull(betweenPhases.get()),
+                () -> Assertions.assertEquals("new", Files.readString(late)),
+                () -> Assertions.assertEquals(List.of(), tempFiles())
+        );
+    }
+
+    @Test
+    void shouldNeverExposePartialContentToConcurrentReaders() throws Exception {
+        // given
+        var xs = "x".repeat(64 * 1024);
+        var ys = "y".repeat(64 * 1024);
+        var file = Path.of(files.get(0));
+        var done = new AtomicBoolean();
+        var seen = new AtomicReference<String>();
+        var reader = new Thread(() -> {
+            while (!done.get()) {
+                try {
+                    var content = Files.readString(file);
+                    if (!content.equals(OLD_CONTENT) && !content.equals(xs) && !content.equals(ys)) {
+                        seen.compareAndSet(null, content.length() + " chars starting with " + content.charAt(0));
+                    }
+                } catch (IOException e) {
+                    seen.compareAndSet(null, e.toString());
+                }
+            }
+        });
+        reader.start();
+
+        // when
+        try {
+            for (int i = 0; i < 30; i++) {
+                cut.echoToAllFiles(TAG, i % 2 == 0 ? xs : ys);
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+
+        // then
+        Assertions.assertAll(
+                () -> Assertions.assertNull(seen.get()),
+                () -> Assertions.assertEquals(ys, Files.readString(file)),
+                () -> Assertions.assertEquals(List.of(), tempFiles())
+        );
+    }
+
+    @Test
+    void shouldKeepTempFilesOutOfScansAndWatcher() throws Exception {
+        // given
+        var temp = Files.writeString(directory.resolve(".f0-123" + AbstractFileTagManager.TEMP_SUFFIX), "new");
+        var created = Files.writeString(directory.resolve("created"), OLD_CONTENT);
+
+        // when
+        var scanned = DirectoryScanner.scan(directory, AbstractFileTagManager::isManagedFile);
+        try (var watcher = new IndexWatcher(cut, cache, pack, false, 200, 2000)) {
+            watcher.onChanges(Set.of(temp, created));
+        }
+
+        // then
+        var indexed = new ArrayList<String>();
+        for (TaggedFile file : cut.listAllFiles()) {
+            indexed.add(file.getName());
+        }
+        Assertions.assertAll(
+                () -> Assertions.assertFalse(AbstractFileTagManager.isManagedFile(temp)),
+                () -> Assertions.assertTrue(AbstractFileTagManager.isManagedFile(created)),
+                () -> Assertions.assertFalse(scanned.contains(temp), "scan excludes temp files"),
+                () -> Assertions.assertEquals(FILE_COUNT + 1, scanned.size()),
+                () -> Assertions.assertTrue(indexed.contains(created.toString()), "watcher indexes new files"),
+                () -> Assertions.assertFalse(indexed.contains(temp.toString()), "watcher skips temp files")
+        );
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(path -> !AbstractFileTagManager.isManagedFile(path)).toList();
+        }
+    }
+}
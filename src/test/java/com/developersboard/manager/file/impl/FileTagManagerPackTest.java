@@ -0,0 +1,138 @@
+package com.developersboard.manager.file.impl;
+
+import com.developersboard.manager.file.TagManager;
+import com.developersboard.manager.file.cache.ContentCache;
+import com.developersboard.manager.file.io.Durability;
+import com.developersboard.manager.file.io.FileSync;
+import com.developersboard.manager.file.io.ParallelFileIo;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.manager.file.pack.PackStore;
+import com.developersboard.manager.file.persist.TagStore;
+import com.developersboard.manager.file.version.ContentVersions;
+import com.developersboard.shared.impl.DefaultTag;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tests of {@link FileTagManager} with the small files packed, switching
+ * files between packed and plain contents.
+ */
+@Isolated("writes files under the base directory, which the other tag manager tests scan")
+class FileTagManagerPackTest {
+
+    private static final String TAG = "packed";
+    private static final int FILE_COUNT = 5;
+
+    private final ParallelFileIo io = new ParallelFileIo(4);
+
+    @TempDir
+    Path packDirectory;
+
+    private PackStore pack;
+    private ContentCache cache;
+    private Path directory;
+    private List<String> files;
+    private FileTagManager cut;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.createDirectories(TagManager.BASEDIR);
+        directory = Files.createTempDirectory(TagManager.BASEDIR, "pack");
+        pack = new PackStore(true, packDirectory, PackStore.DEFAULT_MAX_FILE_BYTES, PackStore.DEFAULT_SEGMENT_BYTES,
+                PackStore.DEFAULT_COMPACT_SECONDS);
+        cache = new ContentCache(1 << 20);
+        cut = new FileTagManager(new DefaultTag(TagManager.DEFAULT_TAG_NAME), new FileLockManager(), io, cache, new ContentVersions(false), new TagStore(false, null, 0),
+                new FileSync(Durability.NONE, io), pack);
+
+        var paths = new ArrayList<Path>();
+        for (int i = 0; i < FILE_COUNT; i++) {
+            paths.add(Files.writeString(directory.resolve("f" + i), "plain"));
+        }
+        cut.init(paths);
+        cut.addTag(TAG);
+        files = paths.stream().map(Path::toString).toList();
+        cut.tagFiles(files, TAG);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        pack.close();
+        io.close();
+        try (var paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void shouldReadLargeEchoOverPackedContents() throws Exception {
+        // given every file packed
+        cut.echoToAllFiles(TAG, "small");
+        var large = "x".repeat(PackStore.DEFAULT_MAX_FILE_BYTES + 1);
+
+        // when
+        cut.echoToAllFiles(TAG, large);
+
+        // then
+        var out = new ByteArrayOutputStream();
+        long written = cut.catAllFiles(TAG, Channels.newChannel(out));
+        Assertions.assertAll(() -> {
+            for (String file : files) {
+                Assertions.assertEquals(large, cut.readFile(file), file);
+                Assertions.assertEquals(large, Files.readString(Path.of(file)), file);
+            }
+            Assertions.assertEquals(large.repeat(FILE_COUNT), cut.catAllFiles(TAG));
+            Assertions.assertEquals(large.repeat(FILE_COUNT), out.toString());
+            Assertions.assertEquals(large.length() * (long) FILE_COUNT, written);
+            Assertions.assertEquals(0, pack.size());
+        });
+    }
+
+    @Test
+    void shouldPackSmallEchoOverPlainContents() throws Exception {
+        // given
+        cut.echoToAllFiles(TAG, "x".repeat(PackStore.DEFAULT_MAX_FILE_BYTES + 1));
+
+        // when
+        cut.echoToAllFiles(TAG, "small");
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("small".repeat(FILE_COUNT), cut.catAllFiles(TAG));
+            Assertions.assertEquals(FILE_COUNT, pack.size());
+        });
+    }
+
+    @Test
+    void shouldStreamPlainContentsFromTheCache() throws Exception {
+        // given plain files, read once
+        cut.echoToAllFiles(TAG, "x".repeat(PackStore.DEFAULT_MAX_FILE_BYTES + 1));
+        cut.catAllFiles(TAG, Channels.newChannel(new ByteArrayOutputStream()));
+        long hits = cache.getHits();
+
+        // when
+        var out = new ByteArrayOutputStream();
+        cut.catAllFiles(TAG, Channels.newChannel(out));
+
+        // then
+        long hitsSince = cache.getHits() - hits;
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("x".repeat(PackStore.DEFAULT_MAX_FILE_BYTES + 1).repeat(FILE_COUNT), out.toString());
+            Assertions.assertEquals(FILE_COUNT, hitsSince);
+        });
+    }
+}
@@ -0,0 +1,85 @@
+package com.developersboard.manager.file.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+class SortedPathsTest {
+
+    private final StringInterner paths = new StringInterner();
+
+    @Test
+    void shouldCompleteInOrder() {
+        // given
+        var cut = sorted(List.of("tea", "ten", "inn", "to", "te", "in", "team"));
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(List.of("te", "tea", "team", "ten", "to"), cut.complete("t", '/', 10));
+            Assertions.assertEquals(List.of("tea", "team"), cut.complete("tea", '/', 10));
+            Assertions.assertEquals(List.of("te", "tea"), cut.complete("", '/', 10).subList(2, 4));
+            Assertions.assertEquals(List.of("in", "inn"), cut.complete("i", '/', 2));
+            Assertions.assertEquals(List.of(), cut.complete("tx", '/', 10));
+            Assertions.assertEquals(List.of(), cut.complete("teams", '/', 10));
+            Assertions.assertEquals(List.of(), cut.complete("t", '/', 0));
+        });
+    }
+
+    @Test
+    void shouldCompleteOneSegmentAtATime() {
+        // given
+        var cut = sorted(List.of("/base/a/x.txt", "/base/a/y.txt", "/base/ab.txt", "/base/b/c/d.txt", "/base/a-z"));
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(List.of("/base/a-z", "/base/a/", "/base/ab.txt", "/base/b/"), cut.complete("/base/", '/', 10));
+            Assertions.assertEquals(List.of("/base/a-z", "/base/a/", "/base/ab.txt"), cut.complete("/base/a", '/', 10));
+            Assertions.assertEquals(List.of("/base/a/x.txt", "/base/a/y.txt"), cut.complete("/base/a/", '/', 10));
+            Assertions.assertEquals(List.of("/base/b/c/"), cut.complete("/base/b/", '/', 10));
+            Assertions.assertEquals(List.of("/"), cut.complete("", '/', 10));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> cut.complete("", '\u00e9', 10));
+        });
+    }
+
+    @Test
+    void shouldSortInCodePointOrder() {
+        // given
+        var cut = sorted(List.of("d/\ud834\udd1e", "d/\uffff", "d/\u00e9", "d/z"));
+
+        // then
+        Assertions.assertEquals(List.of("d/z", "d/\u00e9", "d/\uffff", "d/\ud834\udd1e"), cut.complete("d/", '/', 10));
+    }
+
+    @Test
+    void shouldMatchReferenceSet() {
+        // given
+        var reference = new TreeSet<String>();
+        var random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            reference.add("k" + random.nextInt(50_000));
+        }
+
+        // when
+        var cut = sorted(new ArrayList<>(reference.descendingSet()));
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(reference.size(), cut.size());
+            Assertions.assertEquals(new ArrayList<>(reference), cut.complete("", '/', Integer.MAX_VALUE));
+            Assertions.assertEquals(new ArrayList<>(reference.subSet("k12", "k13")), cut.complete("k12", '/', Integer.MAX_VALUE));
+        });
+    }
+
+    private SortedPaths sorted(List<String> values) {
+        var ids = new int[values.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = paths.intern(values.get(i));
+        }
+
+        return SortedPaths.sort(paths.view(), ids);
+    }
+}
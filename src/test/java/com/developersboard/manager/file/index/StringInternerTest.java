@@ -0,0 +1,85 @@
+package com.developersboard.manager.file.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+class StringInternerTest {
+
+    /**
+     * Chars of one to three UTF-8 bytes, and both halves of a surrogate pair
+     */
+    private static final char[] CHARS = {'a', 'b', '/', '.', '\u00e9', '\u07ff', '\u0800', '\u65e5', '\uffff',
+            '\ud834', '\udd1e'};
+
+    private final StringInterner cut = new StringInterner();
+
+    @Test
+    void shouldLookUpEveryEncodingWithoutInterning() {
+        // given
+        var random = new Random(42);
+        var ids = new HashMap<String, Integer>();
+        for (int i = 0; i < 5000; i++) {
+            var value = randomString(random);
+            int id = cut.intern(value);
+            ids.putIfAbsent(value, id);
+        }
+        int size = cut.size();
+
+        // when
+        var mismatches = new ArrayList<String>();
+        ids.forEach((value, id) -> {
+            if (cut.id(value) != id) {
+                mismatches.add(value);
+            }
+        });
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(new ArrayList<String>(), mismatches);
+            Assertions.assertEquals(size, cut.size());
+        });
+    }
+
+    @Test
+    void shouldMissStringsSharingAPrefixOrBytes() {
+        // given
+        int id = cut.intern("dir/\u65e5\u672c.txt");
+        cut.intern("\ud834\udd1e");
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(id, cut.id("dir/\u65e5\u672c.txt"));
+            Assertions.assertEquals(-1, cut.id("dir/\u65e5\u672c.tx"));
+            Assertions.assertEquals(-1, cut.id("dir/\u65e5\u672c.txt2"));
+            Assertions.assertEquals(-1, cut.id("dir/\u65e5.txt"));
+            Assertions.assertEquals(-1, cut.id("\ud834"));
+            Assertions.assertEquals(-1, cut.id(""));
+        });
+    }
+
+    @Test
+    void shouldEncodeUnpairedSurrogatesAsGetBytesDoes() {
+        // given
+        int id = cut.intern("a\ud834b");
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(id, cut.id("a?b"));
+            Assertions.assertEquals(id, cut.id("a\udd1eb"));
+            Assertions.assertEquals("a?b", cut.get(id));
+        });
+    }
+
+    private static String randomString(Random random) {
+        var chars = new char[random.nextInt(12)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = CHARS[random.nextInt(CHARS.length)];
+        }
+
+        return new String(chars);
+    }
+}
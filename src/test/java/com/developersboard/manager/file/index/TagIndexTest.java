@@ -0,0 +1,271 @@
+package com.developersboard.manager.file.index;
+
+import com.developersboard.exception.NoSuchTagException;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.shared.TaggedFile;
+import com.developersboard.shared.impl.DefaultTag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class TagIndexTest {
+
+    private TagIndex index;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        index = new TagIndex(new TagRegistry(), new FileLockManager());
+        index.getTags().register("untagged", DefaultTag::new);
+        for (int i = 0; i < 6; i++) {
+            index.addFile("file" + i, "untagged");
+        }
+        index.getTags().register("a", DefaultTag::new);
+        index.getTags().register("b", DefaultTag::new);
+        index.getTags().register("c", DefaultTag::new);
+        for (int fileId : new int[]{0, 1, 2, 3}) {
+            index.tag("a", fileId);
+        }
+        for (int fileId : new int[]{1, 2, 4}) {
+            index.tag("b", fileId);
+        }
+        index.tag("c", 2);
+    }
+
+    @Test
+    void shouldIntersectAndSubtractTags() throws Exception {
+        var files = find("a AND b AND NOT c");
+
+        Assertions.assertEquals(List.of("file1"), files);
+    }
+
+    @Test
+    void shouldUnionTagsWithPrecedence() throws Exception {
+        var files = find("c OR a AND NOT b");
+
+        Assertions.assertEquals(List.of("file0", "file2", "file3"), files);
+    }
+
+    @Test
+    void shouldComplementAgainstAllFiles() throws Exception {
+        var files = find("not (a or b)");
+
+        Assertions.assertEquals(List.of("file5"), files);
+    }
+
+    @Test
+    void shouldNotModifyPostingsWhenQuerying() throws Exception {
+        find("a AND b");
+        find("a OR c");
+
+        Assertions.assertEquals(4, index.cardinality("a"));
+        Assertions.assertEquals(3, index.cardinality("b"));
+    }
+
+    @Test
+    void shouldKeepTagsOfFilesInSyncWithPostings() throws Exception {
+        index.untag("a", 2);
+        index.getTags().rename("b", "renamed", DefaultTag::new);
+
+        var tags = new ArrayList<String>();
+        for (var tag : index.file(2).getTags()) {
+            tags.add(tag.getName());
+        }
+
+        Assertions.assertEquals(List.of("untagged", "renamed", "c"), tags);
+    }
+
+    @Test
+    void shouldInternFilesOnce() throws Exception {
+        int fileId = index.addFile("file3", "untagged");
+
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(3, fileId);
+            Assertions.assertEquals(6, index.fileCount());
+            Assertions.assertEquals("file3", index.fileName(fileId));
+            Assertions.assertEquals(-1, index.fileId("missing"));
+        });
+    }
+
+    @Test
+    void shouldRemoveFileFromEveryTagAndReuseItsId() throws Exception {
+        // when
+        boolean removed = index.removeFile(2);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertTrue(removed);
+            Assertions.assertFalse(index.removeFile(2));
+            Assertions.assertEquals(-1, index.fileId("file2"));
+            Assertions.assertEquals(5, index.fileCount());
+            Assertions.assertEquals(List.of("file0", "file1", "file3"), find("a"));
+            Assertions.assertEquals(List.of("file5"), find("NOT (a OR b)"));
+            Assertions.assertEquals(0, index.cardinality("c"));
+        });
+
+        // and the file comes back untagged under the same id
+        Assertions.assertEquals(2, index.addFile("file2", "untagged"));
+        Assertions.assertEquals(List.of("file2", "file5"), find("untagged AND NOT (a OR b)"));
+    }
+
+    @Test
+    void shouldThrowExceptionOnUnknownTag() {
+        Assertions.assertThrows(NoSuchTagException.class, () -> find("a AND missing"));
+    }
+
+    @Test
+    void shouldRejectMalformedQuery() {
+        Assertions.assertAll(() -> {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("a AND"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("(a OR b"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> TagQuery.parse(""));
+        });
+    }
+
+    @Test
+    void shouldParseQuotedTagNames() throws Exception {
+        index.getTags().register("and", DefaultTag::new);
+        index.tag("and", 5);
+
+        Assertions.assertEquals(List.of("file5"), find("\"and\""));
+    }
+
+    @Test
+    void shouldTagAndUntagInBulk() throws Exception {
+        // when
+        var added = index.tagAll("c", RoaringBitmap.bitmapOf(1, 2, 3));
+        var removed = index.untagAll("b", RoaringBitmap.bitmapOf(0, 1, 4));
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 3), added);
+            Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 4), removed);
+            Assertions.assertEquals(List.of("file1", "file2", "file3"), find("c"));
+            Assertions.assertEquals(List.of("file2"), find("b"));
+            Assertions.assertEquals(3, index.tagCount(1));
+        });
+    }
+
+    @Test
+    void shouldKeepTagCountsInSyncWithPostings() throws Exception {
+        // when
+        index.tag("c", 3);
+        index.tag("c", 3);
+        index.untag("a", 0);
+        index.tagAll("b", RoaringBitmap.bitmapOf(0, 1, 5));
+        index.untagAll("a", RoaringBitmap.bitmapOf(1, 4));
+        index.removeFile(2);
+        index.getTags().rename("b", "d", DefaultTag::new);
+        var counts = index.getTags().counts();
+
+        // then
+        Assertions.assertAll(() -> {
+            for (String tag : List.of("untagged", "a", "c", "d")) {
+                Assertions.assertEquals(index.posting(tag).getLongCardinality(), index.getTags().count(tag), tag);
+                Assertions.assertEquals(index.posting(tag).getLongCardinality(), (long) counts.get(tag), tag);
+            }
+            Assertions.assertEquals(1, index.cardinality("a"));
+            Assertions.assertEquals(4, index.cardinality("d"));
+            Assertions.assertEquals(4, counts.size());
+        });
+    }
+
+    @Test
+    void shouldCompleteRegisteredFileNames() throws Exception {
+        // given names sorted for a first completion
+        var before = index.completeFiles("", '/', 10);
+
+        // when
+        index.addFile("dir/file6", "untagged");
+        index.removeFile(index.fileId("file1"));
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(List.of("file0", "file1", "file2", "file3", "file4", "file5"), before);
+            Assertions.assertEquals(List.of("file0", "file2", "file3", "file4", "file5"), index.completeFiles("file", '/', 10));
+            Assertions.assertEquals(List.of("dir/"), index.completeFiles("d", '/', 10));
+            Assertions.assertEquals(List.of("dir/file6"), index.completeFiles("dir/", '/', 10));
+        });
+    }
+
+    @Test
+    void shouldShareFileSnapshotUntilFilesChange() throws Exception {
+        // given
+        var before = index.allFiles();
+        var iterator = before.iterator();
+
+        // when
+        var unchanged = index.allFiles();
+        index.tag("c", 0);
+        var retagged = index.allFiles();
+        index.removeFile(5);
+        index.addFile("file6", "untagged");
+
+        // then
+        var names = new ArrayList<String>();
+        iterator.forEachRemaining(file -> names.add(file.getName()));
+        Assertions.assertAll(() -> {
+            Assertions.assertSame(before, unchanged);
+            Assertions.assertSame(before, retagged);
+            Assertions.assertEquals(List.of("file0", "file1", "file2", "file3", "file4", "file5"), names);
+            Assertions.assertEquals(6, index.allFiles().size());
+            Assertions.assertNotSame(before, index.allFiles());
+        });
+    }
+
+    @Test
+    void shouldPageThroughFilesAcrossMutations() throws Exception {
+        // given
+        var first = index.page(null, 4);
+
+        // when
+        index.removeFile(4);
+        index.addFile("file6", "untagged");
+        var second = index.page(first.nextCursor(), 4);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(List.of("file0", "file1", "file2", "file3"), names(first.items()));
+            Assertions.assertEquals(List.of("file5", "file6"), names(second.items()));
+            Assertions.assertFalse(second.hasNext());
+            Assertions.assertEquals(List.of("file1", "file2"), names(index.page(index.posting("b"), null, 2).items()));
+        });
+    }
+
+    @Test
+    void shouldRejectExpiredOrMalformedCursor() {
+        // given
+        var cursor = index.page(null, 2).nextCursor();
+
+        // when
+        index.clear();
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> index.page(cursor, 2));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> index.page("not a cursor", 2));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> index.page(null, 0));
+        });
+    }
+
+    private static List<String> names(List<TaggedFile> files) {
+        var names = new ArrayList<String>();
+        for (TaggedFile file : files) {
+            names.add(file.getName());
+        }
+
+        return names;
+    }
+
+    private List<String> find(String query) throws NoSuchTagException {
+        var names = new ArrayList<String>();
+        for (TaggedFile file : index.resolve(index.query(TagQuery.parse(query)))) {
+            names.add(file.getName());
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,295 @@
+package com.developersboard.manager.file.index;
+
+import com.developersboard.exception.NoSuchTagException;
+import com.developersboard.exception.TagExistsException;
+import com.developersboard.shared.Tag;
+import com.developersboard.shared.impl.DefaultTag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.DirectoryNotEmptyException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TagRegistryTest {
+
+    private static final int N_THREADS = 6;
+    private static final int N_TAGS = 1000;
+
+    private final TagRegistry registry = new TagRegistry();
+
+    @Test
+    void shouldAddEachTagExactlyOnceUnderContention() throws Exception {
+        // given
+        var added = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(N_THREADS);
+
+        // when
+        for (int t = 0; t < N_THREADS; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < N_TAGS; i++) {
+                    try {
+                        registry.register("tag" + i, DefaultTag::new);
+                        added.incrementAndGet();
+                    } catch (TagExistsException ignored) {
+                        // another thread won the race
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // then
+        var names = new HashSet<String>();
+        for (Tag tag : registry.tags()) {
+            names.add(tag.getName());
+        }
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(N_TAGS, added.get());
+            Assertions.assertEquals(N_TAGS, names.size());
+        });
+    }
+
+    @Test
+    void shouldReportEachMissWithItsOwnStacklessException() throws Exception {
+        // given
+        registry.register("tag", DefaultTag::new);
+        var earlier = Assertions.assertThrows(NoSuchTagException.class, () -> registry.get("other"));
+        earlier.addSuppressed(new IllegalStateException("cleanup failed"));
+
+        // when
+        var exists = Assertions.assertThrows(TagExistsException.class, () -> registry.register("tag", DefaultTag::new));
+        var missing = Assertions.assertThrows(NoSuchTagException.class, () -> registry.get("other"));
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertNotSame(earlier, missing);
+            Assertions.assertEquals(0, missing.getSuppressed().length);
+            Assertions.assertEquals(0, missing.getStackTrace().length);
+            Assertions.assertEquals(0, exists.getStackTrace().length);
+            Assertions.assertNull(registry.find("other"));
+        });
+    }
+
+    @Test
+    void shouldNotSpendIdsOnDuplicates() throws Exception {
+        // given
+        var first = registry.register("tag", DefaultTag::new);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThrows(TagExistsException.class, () -> registry.register("tag", DefaultTag::new));
+        }
+        var second = registry.register("other", DefaultTag::new);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(0, first.getId());
+            Assertions.assertEquals(1, second.getId());
+            Assertions.assertEquals(second, registry.get(1));
+            Assertions.assertNull(registry.get(2));
+        });
+    }
+
+    @Test
+    void shouldRefuseTagsOnceIdsRunOut() throws Exception {
+        // given
+        var small = new TagRegistry(2);
+        small.register("a", DefaultTag::new);
+        small.register("b", DefaultTag::new);
+
+        // when
+        var thrown = Assertions.assertThrows(IllegalStateException.class, () -> small.register("c", DefaultTag::new));
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertTrue(thrown.getMessage().contains("No tag id left"), thrown.getMessage());
+            Assertions.assertFalse(small.contains("c"));
+            Assertions.assertEquals(2, small.tags().size());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> registry.get(TagRegistry.MAX_TAGS));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> registry.get(-1));
+        });
+    }
+
+    @Test
+    void shouldKeepIdWhenRenaming() throws Exception {
+        // given
+        registry.register("old", DefaultTag::new);
+        int tagId = registry.entry("old").id();
+
+        // when
+        registry.rename("old", "new", DefaultTag::new);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("new", registry.get(tagId).getName());
+            Assertions.assertFalse(registry.contains("old"));
+            Assertions.assertThrows(NoSuchTagException.class, () -> registry.rename("old", "other", DefaultTag::new));
+        });
+    }
+
+    @Test
+    void shouldKeepIdentityInHashSetsWhenRenaming() throws Exception {
+        // given
+        var tag = registry.register("before", DefaultTag::new);
+        var tags = new HashSet<Tag>();
+        tags.add(tag);
+
+        // when
+        var renamed = registry.rename("before", "after", DefaultTag::new);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(tag, renamed);
+            Assertions.assertTrue(tags.contains(renamed));
+            Assertions.assertTrue(tags.remove(registry.get("after")));
+            Assertions.assertNotEquals(new DefaultTag(0, "a"), new DefaultTag(1, "a"));
+        });
+    }
+
+    @Test
+    void shouldShareSnapshotUntilCatalogChanges() throws Exception {
+        // given
+        registry.register("a", DefaultTag::new);
+        var before = registry.tags();
+
+        // when
+        var unchanged = registry.tags();
+        registry.register("b", DefaultTag::new);
+        var after = registry.tags();
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertSame(before, unchanged);
+            Assertions.assertEquals(1, before.size());
+            Assertions.assertEquals(2, after.size());
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> after.remove(0));
+        });
+    }
+
+    @Test
+    void shouldNotRenameOntoExistingTag() throws Exception {
+        registry.register("a", DefaultTag::new);
+        registry.register("b", DefaultTag::new);
+
+        Assertions.assertThrows(TagExistsException.class, () -> registry.rename("a", "b", DefaultTag::new));
+        Assertions.assertTrue(registry.contains("a"));
+    }
+
+    @Test
+    void shouldNotBringBackTagDeletedWhileRenamed() throws Exception {
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 2000; round++) {
+                // given
+                var oldName = "old" + round;
+                var newName = "new" + round;
+                registry.register(oldName, DefaultTag::new);
+                int tagId = registry.entry(oldName).id();
+                var barrier = new CyclicBarrier(2);
+
+                // when
+                var rename = executor.submit(() -> {
+                    barrier.await();
+                    return registry.rename(oldName, newName, DefaultTag::new);
+                });
+                var delete = executor.submit(() -> {
+                    barrier.await();
+                    // spins until the rename makes the new name visible
+                    for (int i = 0; i < 10_000; i++) {
+                        try {
+                            return registry.removeEmpty(newName);
+                        } catch (NoSuchTagException ignored) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    return null;
+                });
+                rename.get(10, TimeUnit.SECONDS);
+                delete.get(10, TimeUnit.SECONDS);
+
+                // then
+                var byId = registry.get(tagId);
+                if (registry.contains(newName)) {
+                    Assertions.assertEquals(newName, byId.getName());
+                } else {
+                    Assertions.assertNull(byId, "tag " + newName + " deleted but still found by id");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldOnlyRemoveEmptyTags() throws Exception {
+        registry.register("full", DefaultTag::new);
+        registry.entry("full").posting().add(0);
+        registry.entry("full").count().increment();
+
+        Assertions.assertThrows(DirectoryNotEmptyException.class, () -> registry.removeEmpty("full"));
+        Assertions.assertTrue(registry.contains("full"));
+    }
+
+    @Test
+    void shouldCountFilesWithoutWalkingPostings() throws Exception {
+        // given
+        registry.register("a", DefaultTag::new);
+        registry.entry("a").count().add(3);
+
+        // when
+        registry.rename("a", "b", DefaultTag::new);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(3L, registry.count("b"));
+            Assertions.assertEquals(Map.of("b", 3L), registry.counts());
+            Assertions.assertThrows(DirectoryNotEmptyException.class, () -> registry.removeEmpty("b"));
+        });
+    }
+
+    @Test
+    void shouldCompleteNamesAcrossRenamesAndDeletes() throws Exception {
+        // given
+        registry.register("alpha", DefaultTag::new);
+        registry.register("alps", DefaultTag::new);
+        registry.register("beta", DefaultTag::new);
+
+        // when
+        registry.rename("beta", "alto", DefaultTag::new);
+        registry.removeEmpty("alps");
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(List.of("alpha", "alto"), registry.complete("al", 10));
+            Assertions.assertEquals(List.of(), registry.complete("b", 10));
+        });
+    }
+
+    @Test
+    void shouldCompleteFromTheCatalogAsOfTheLastChange() throws Exception {
+        // given names sorted for a first completion
+        for (String name : List.of("b2", "a", "b1", "b3")) {
+            registry.register(name, DefaultTag::new);
+        }
+        var before = registry.complete("b", 2);
+
+        // when
+        registry.register("b0", DefaultTag::new);
+        registry.rename("b1", "c", DefaultTag::new);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(List.of("b1", "b2"), before);
+            Assertions.assertEquals(List.of("b0", "b2", "b3"), registry.complete("b", 10));
+            Assertions.assertEquals(List.of("a", "b0"), registry.complete("", 2));
+            Assertions.assertEquals(List.of(), registry.complete("b", 0));
+        });
+    }
+}
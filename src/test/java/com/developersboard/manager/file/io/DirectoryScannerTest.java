@@ -0,0 +1,72 @@
+package com.developersboard.manager.file.io;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+class DirectoryScannerTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void shouldFindEveryFileOfNestedTree() throws Exception {
+        // given
+        var expected = new HashSet<Path>();
+        var directory = root;
+        for (int depth = 0; depth < 4; depth++) {
+            directory = Files.createDirectory(directory.resolve("d" + depth));
+            for (int i = 0; i < 3; i++) {
+                expected.add(Files.createFile(directory.resolve("f" + i)));
+            }
+        }
+
+        // when
+        var found = DirectoryScanner.scan(root, path -> true);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(expected.size(), found.size());
+            Assertions.assertEquals(expected, new HashSet<>(found));
+        });
+    }
+
+    @Test
+    void shouldStreamLargeDirectoryInBatches() throws Exception {
+        // given
+        int fileCount = DirectoryScanner.BATCH_SIZE * 2 + 1;
+        for (int i = 0; i < fileCount; i++) {
+            Files.createFile(root.resolve("f" + i));
+        }
+        var batches = new ConcurrentLinkedQueue<List<Path>>();
+
+        // when
+        long count = DirectoryScanner.scanAsync(root, path -> true, batches::add).get(10, TimeUnit.SECONDS);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(fileCount, count);
+            Assertions.assertEquals(3, batches.size());
+            Assertions.assertTrue(batches.stream().allMatch(batch -> batch.size() <= DirectoryScanner.BATCH_SIZE));
+        });
+    }
+
+    @Test
+    void shouldSkipFilteredFiles() throws Exception {
+        Files.createFile(root.resolve("kept"));
+        Files.createFile(root.resolve("skipped.tmp"));
+
+        var found = DirectoryScanner.scan(root, path -> !path.toString().endsWith(".tmp"));
+
+        Assertions.assertEquals(List.of("kept"),
+                found.stream().map(path -> path.getFileName().toString()).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,68 @@
+package com.developersboard.manager.file.io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class FileSyncTest {
+
+    private final ParallelFileIo io = new ParallelFileIo(4);
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void tearDown() {
+        io.close();
+    }
+
+    @Test
+    void shouldSyncConcurrentWritersInSharedRounds() throws Exception {
+        // given
+        var cut = new FileSync(Durability.GROUP_COMMIT, io);
+        var syncs = new ArrayList<CompletableFuture<Void>>();
+
+        // when
+        for (int i = 0; i < 32; i++) {
+            var file = Files.writeString(directory.resolve("f" + i), "content " + i);
+            syncs.add(CompletableFuture.runAsync(() -> {
+                try {
+                    cut.syncFiles(List.of(file));
+                    cut.syncDirectories(List.of(file));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+
+        // then
+        CompletableFuture.allOf(syncs.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        Assertions.assertTrue(syncs.stream().noneMatch(CompletableFuture::isCompletedExceptionally));
+    }
+
+    @Test
+    void shouldFailEveryWriterOfFailedRound() {
+        // given
+        var missing = directory.resolve("missing");
+
+        // when, then
+        Assertions.assertAll(() -> {
+            var group = Assertions.assertThrows(IOException.class,
+                    () -> new FileSync(Durability.GROUP_COMMIT, io).syncFiles(List.of(missing)));
+            Assertions.assertTrue(group.getCause() instanceof NoSuchFileException);
+            Assertions.assertThrows(NoSuchFileException.class,
+                    () -> new FileSync(Durability.FSYNC, io).syncFiles(List.of(missing)));
+            new FileSync(Durability.NONE, io).syncFiles(List.of(missing));
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package com.developersboard.manager.file.io;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ParallelFileIoTest {
+
+    private final ParallelFileIo cut = new ParallelFileIo(4);
+
+    @AfterEach
+    void tearDown() {
+        cut.close();
+    }
+
+    @Test
+    void shouldKeepFileOrderWhateverTheCompletionOrder() throws Exception {
+        // given
+        var files = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            files.add("file" + i);
+        }
+
+        // when
+        var results = cut.map(files, file -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextInt(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return file.toUpperCase();
+        });
+
+        // then
+        Assertions.assertEquals(50, results.size());
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertEquals("FILE" + i, results.get(i));
+        }
+    }
+
+    @Test
+    void shouldRethrowIOExceptionOfFailedFile() {
+        var files = List.of("a", "missing", "c");
+
+        var thrown = Assertions.assertThrows(NoSuchFileException.class, () -> cut.map(files, file -> {
+            if (file.equals("missing")) {
+                throw new NoSuchFileException(file);
+            }
+            return file;
+        }));
+        Assertions.assertEquals("missing", thrown.getMessage());
+    }
+
+    @Test
+    void shouldWaitForRunningTasksBeforeRethrowing() {
+        // given
+        var files = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            files.add("file" + i);
+        }
+        var started = new AtomicInteger();
+        var finished = new AtomicInteger();
+
+        // when
+        Assertions.assertThrows(NoSuchFileException.class, () -> cut.map(files, file -> {
+            started.incrementAndGet();
+            try {
+                if (file.equals("file0")) {
+                    throw new NoSuchFileException(file);
+                }
+                TimeUnit.MILLISECONDS.sleep(50);
+                return file;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return file;
+            } finally {
+                finished.incrementAndGet();
+            }
+        }));
+
+        // then
+        int startedCount = started.get();
+        int finishedCount = finished.get();
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(startedCount, finishedCount),
+                () -> Assertions.assertTrue(startedCount < files.size(), "pending tasks are skipped")
+        );
+    }
+
+    @Test
+    void shouldRejectEmptyPool() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ParallelFileIo(0));
+    }
+
+    @Test
+    void shouldRunSingleFileInline() throws IOException {
+        var caller = Thread.currentThread();
+
+        var results = cut.map(List.of("only"), file -> Thread.currentThread() == caller);
+
+        Assertions.assertEquals(List.of(true), results);
+    }
+}
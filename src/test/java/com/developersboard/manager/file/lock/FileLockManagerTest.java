@@ -0,0 +1,198 @@
+package com.developersboard.manager.file.lock;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class FileLockManagerTest {
+
+    private static final int N_THREADS = 8;
+    private static final int N_INCREMENTS = 20_000;
+
+    private final FileLockManager cut = new FileLockManager();
+
+    @Test
+    void shouldLockAndReleaseBatchInBulk() throws Exception {
+        // given
+        var fileIds = RoaringBitmap.bitmapOf(5, 1, 3);
+
+        // when
+        try (var lockSet = cut.lockAll(fileIds, true)) {
+            Assertions.assertEquals(3, lockSet.size());
+            Assertions.assertTrue(cut.getLock(3).isWriteLocked());
+        }
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertFalse(cut.getLock(1).isWriteLocked());
+            Assertions.assertFalse(cut.getLock(3).isWriteLocked());
+            Assertions.assertFalse(cut.getLock(5).isWriteLocked());
+        });
+    }
+
+    @Test
+    void shouldBackOffFromSingleLockHeldOutOfOrder() throws Exception {
+        // given
+        long stamp = cut.lock(3, true);
+        var batch = CompletableFuture.supplyAsync(() -> {
+            try (var lockSet = cut.lockAll(RoaringBitmap.bitmapOf(1, 3), false)) {
+                return lockSet.size();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // when the batch is stuck on file 3 it must not keep file 1 locked
+        Thread.sleep(200);
+        long other = cut.getLock(1).tryWriteLock(1, TimeUnit.SECONDS);
+        Assertions.assertNotEquals(0L, other);
+        cut.getLock(1).unlockWrite(other);
+        cut.unlock(3, stamp, true);
+
+        // then
+        int locked = batch.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, locked);
+    }
+
+    @Test
+    void shouldHoldWriteLocksOfManyFilesFromOneThreadByDefault() throws Exception {
+        // given more files than the default stripe count, so that a striped table would collide
+        var stamps = new long[2 * FileLockManager.DEFAULT_STRIPES];
+
+        // when
+        var locked = CompletableFuture.supplyAsync(() -> {
+            for (int fileId = 0; fileId < stamps.length; fileId++) {
+                stamps[fileId] = cut.lock(fileId, true);
+            }
+            return stamps.length;
+        });
+
+        // then
+        int count = locked.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(stamps.length, count);
+        for (int fileId = 0; fileId < stamps.length; fileId++) {
+            cut.unlock(fileId, stamps[fileId], true);
+        }
+    }
+
+    @Test
+    void shouldTakeSharedStripeOnce() throws Exception {
+        // given
+        var striped = new FileLockManager(new StripedLockTable(2));
+        var fileIds = RoaringBitmap.bitmapOf(0, 1, 2, 3, 4);
+
+        // when
+        try (var lockSet = striped.lockAll(fileIds, true)) {
+
+            // then
+            Assertions.assertAll(() -> {
+                Assertions.assertTrue(lockSet.size() <= 2);
+                Assertions.assertEquals(4, new StripedLockTable(3).size());
+            });
+        }
+    }
+
+    @Test
+    void shouldRecordContentionAndHoldTimes() throws Exception {
+        // given
+        long stamp = cut.lock(4, true);
+        var waiter = CompletableFuture.runAsync(() -> cut.unlock(4, cut.lock(4, false), false));
+        Thread.sleep(50);
+
+        // when
+        cut.unlock(4, stamp, true);
+        waiter.get(5, TimeUnit.SECONDS);
+        try (var ignored = cut.lockAll(RoaringBitmap.bitmapOf(1, 2), true)) {
+            Assertions.assertEquals(3, cut.getMetrics().getWrites());
+        }
+
+        // then
+        var metrics = cut.getMetrics();
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(1, metrics.getReads());
+            Assertions.assertEquals(1, metrics.getContended());
+            Assertions.assertEquals(1, metrics.getReadHold().count());
+            Assertions.assertEquals(2, metrics.getWriteHold().count());
+            Assertions.assertTrue(metrics.getWriteHold().percentile(1.0) >= TimeUnit.MILLISECONDS.toNanos(50));
+            Assertions.assertEquals("#4", metrics.hottest(1).get(0).file());
+        });
+    }
+
+    @Test
+    void shouldRejectMismatchedStamp() {
+        long stamp = cut.lock(7, false);
+
+        Assertions.assertThrows(IllegalMonitorStateException.class, () -> cut.unlock(7, stamp, true));
+        cut.unlock(7, stamp, false);
+    }
+
+    @Test
+    void shouldDropPerFileLocksOnceNobodyUsesThem() throws Exception {
+        // given
+        var table = new PerFileLockTable();
+        var manager = new FileLockManager(table);
+        long stamp = manager.lock(1, true);
+        var lockSet = manager.lockAll(RoaringBitmap.bitmapOf(2, 3), false);
+        manager.pin(4);
+        int held = table.size();
+
+        // when
+        manager.unlock(1, stamp, true);
+        lockSet.close();
+        manager.unpin(4);
+        int released = table.size();
+        manager.getLock(5);
+
+        // then only the lock handed out for good is kept
+        int afterwards = table.size();
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(4, held);
+            Assertions.assertEquals(0, released);
+            Assertions.assertEquals(1, afterwards);
+        });
+    }
+
+    @Test
+    void shouldKeepFilesExclusiveWhileTheirLocksComeAndGo() throws Exception {
+        // given
+        var table = new PerFileLockTable();
+        var manager = new FileLockManager(table);
+        var counts = new int[4];
+        var executor = Executors.newFixedThreadPool(N_THREADS);
+
+        // when
+        for (int t = 0; t < N_THREADS; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < N_INCREMENTS; i++) {
+                    int fileId = i % counts.length;
+                    if (i % 2 == 0) {
+                        long stamp = manager.lock(fileId, true);
+                        counts[fileId]++;
+                        manager.unlock(fileId, stamp, true);
+                    } else {
+                        try (var ignored = manager.lockAll(RoaringBitmap.bitmapOf(fileId), true)) {
+                            counts[fileId]++;
+                        } catch (InterruptedIOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        // then
+        Assertions.assertAll(() -> {
+            for (int count : counts) {
+                Assertions.assertEquals(N_THREADS * N_INCREMENTS / counts.length, count);
+            }
+            Assertions.assertEquals(0, table.size());
+        });
+    }
+}
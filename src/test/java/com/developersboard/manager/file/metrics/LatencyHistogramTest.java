@@ -0,0 +1,45 @@
+package com.developersboard.manager.file.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    private final LatencyHistogram cut = new LatencyHistogram();
+
+    @Test
+    void shouldBoundEveryValueByItsBucket() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            long upper = LatencyHistogram.upperBound(bucket);
+
+            Assertions.assertTrue(value <= upper, () -> value + " above " + upper);
+            Assertions.assertTrue(upper - value <= value / 8, () -> value + " too far from " + upper);
+        }
+    }
+
+    @Test
+    void shouldEstimatePercentilesWithinBucketPrecision() {
+        // given 1..1000 microseconds
+        for (int i = 1; i <= 1000; i++) {
+            cut.record(i * 1000L);
+        }
+
+        // when
+        long p50 = cut.percentile(0.5);
+        long p99 = cut.percentile(0.99);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(1000, cut.count());
+            Assertions.assertEquals(500_500_000L, cut.sum());
+            Assertions.assertTrue(p50 >= 500_000 && p50 <= 500_000 * 9 / 8, () -> "p50 " + p50);
+            Assertions.assertTrue(p99 >= 990_000 && p99 <= 990_000 * 9 / 8, () -> "p99 " + p99);
+        });
+    }
+
+    @Test
+    void shouldReportZeroWhenEmpty() {
+        Assertions.assertEquals(0, cut.percentile(0.999));
+    }
+}
@@ -0,0 +1,127 @@
+package com.developersboard.manager.file.metrics;
+
+import com.developersboard.manager.file.lock.FileLockManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class LockMetricsTest {
+
+    private static final int N_THREADS = 8;
+    private static final int N_HOLDS = 10_000;
+
+    private final LockMetrics cut = new LockMetrics();
+
+    @Test
+    void shouldMatchReadHoldsSharingAStampWithTheirOwnAcquisition() throws Exception {
+        // given a read hold taken long before another one with the same stamp
+        cut.held(3, 257);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // when the later one is released first, from another thread
+        var other = new Thread(() -> {
+            cut.held(3, 257);
+            cut.releasedSingle(3, 257, false);
+        });
+        other.start();
+        other.join();
+        long shortHold = cut.getReadHold().sum();
+        cut.releasedSingle(3, 257, false);
+        long bothHolds = cut.getReadHold().sum();
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(2, cut.getReadHold().count());
+            Assertions.assertTrue(shortHold < TimeUnit.MILLISECONDS.toNanos(50), () -> "short hold " + shortHold);
+            Assertions.assertTrue(bothHolds - shortHold >= TimeUnit.MILLISECONDS.toNanos(100),
+                    () -> "long hold " + (bothHolds - shortHold));
+        });
+    }
+
+    @Test
+    void shouldTimeEveryConcurrentReadHoldOfOneLock() throws Exception {
+        // given
+        var locks = new FileLockManager();
+        var metrics = locks.getMetrics();
+        var executor = Executors.newFixedThreadPool(N_THREADS);
+        var barrier = new CyclicBarrier(N_THREADS);
+
+        // when
+        for (int t = 0; t < N_THREADS; t++) {
+            executor.execute(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < N_HOLDS; i++) {
+                    long stamp = locks.lock(0, false);
+                    locks.unlock(0, stamp, false);
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        // then no hold is lost, nor timed from another acquisition's clock
+        long count = metrics.getReadHold().count();
+        long longest = metrics.getReadHold().percentile(1.0);
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(N_THREADS * N_HOLDS, metrics.getReads());
+            Assertions.assertEquals(N_THREADS * N_HOLDS, count);
+            Assertions.assertTrue(longest < TimeUnit.SECONDS.toNanos(10), () -> "longest hold " + longest);
+        });
+    }
+
+    @Test
+    void shouldNotTimeUnknownReleases() {
+        // when
+        cut.releasedSingle(1, 2, true);
+
+        // then
+        Assertions.assertEquals(0, cut.getWriteHold().count());
+    }
+
+    @Test
+    void shouldCountAcquisitionsByMode() {
+        // given
+        long start = System.nanoTime();
+
+        // when
+        cut.acquired(3, true, start);
+        cut.acquired(1, false, start);
+        cut.released(true, start);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(3, cut.getWrites());
+            Assertions.assertEquals(1, cut.getReads());
+            Assertions.assertEquals(1, cut.getWriteWait().count());
+            Assertions.assertEquals(1, cut.getReadWait().count());
+            Assertions.assertEquals(1, cut.getWriteHold().count());
+        });
+    }
+
+    @Test
+    void shouldListHottestFilesByName() {
+        // given
+        cut.setFileNames(fileId -> "file" + fileId);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            cut.contended(5, 42);
+        }
+        cut.contended(6, 7);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(4, cut.getContended());
+            Assertions.assertEquals(List.of(new LockMetrics.Contention("file42", 3)), cut.hottest(1));
+            Assertions.assertEquals(2, cut.hottest(10).size());
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package com.developersboard.manager.file.metrics;
+
+import com.developersboard.manager.file.metrics.TagManagerMetrics.Operation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class TagManagerMetricsTest {
+
+    private final LockMetrics locks = new LockMetrics();
+    private final TagManagerMetrics cut = new TagManagerMetrics(locks);
+
+    @Test
+    void shouldRecordEachOperationInItsOwnHistogram() {
+        // when
+        cut.record(Operation.TAG_FILE, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        cut.record(Operation.TAG_FILE, System.nanoTime());
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(2, cut.getLatency(Operation.TAG_FILE).count());
+            Assertions.assertTrue(cut.getLatency(Operation.TAG_FILE).sum() >= TimeUnit.MILLISECONDS.toNanos(5));
+            Assertions.assertEquals(0, cut.getLatency(Operation.REMOVE_TAG).count());
+            Assertions.assertSame(locks, cut.getLocks());
+        });
+    }
+
+    @Test
+    void shouldNameOperationsAsTagValues() {
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("tag-file", Operation.TAG_FILE.tagValue());
+            Assertions.assertEquals("echo-to-all-files", Operation.ECHO_TO_ALL_FILES.tagValue());
+        });
+    }
+
+    @Test
+    void shouldPublishHistogramsAndLockCountersWhenRead() {
+        // given
+        var registry = new SimpleMeterRegistry();
+        cut.bindTo(registry);
+
+        // when recorded after binding, as the meters read the metrics lazily
+        cut.getLatency(Operation.ADD_TAG).record(TimeUnit.MILLISECONDS.toNanos(2));
+        locks.acquired(2, false, System.nanoTime());
+        locks.contended(1, 1);
+
+        // then
+        double count = registry.get("file.manager.operation.count").tag("operation", "add-tag")
+                .functionCounter().count();
+        double median = registry.get("file.manager.operation").tags("operation", "add-tag", "quantile", "0.5")
+                .gauge().value();
+        double reads = registry.get("file.manager.lock.acquisitions").tag("mode", "read").functionCounter().count();
+        double contended = registry.get("file.manager.lock.contended").functionCounter().count();
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(1.0, count);
+            Assertions.assertTrue(median >= 0.002 && median <= 0.002 * 9 / 8, () -> "median " + median);
+            Assertions.assertEquals(2.0, reads);
+            Assertions.assertEquals(1.0, contended);
+        });
+    }
+}
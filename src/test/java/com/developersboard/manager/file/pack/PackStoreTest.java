@@ -0,0 +1,156 @@
+package com.developersboard.manager.file.pack;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+class PackStoreTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    private PackStore cut;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        cut.close();
+    }
+
+    @Test
+    void shouldReadLatestContentsBackAfterReopening() throws Exception {
+        // given
+        cut = open();
+        cut.writeAll(List.of("a", "b", "c"), bytes("old"));
+        cut.write("b", bytes("new"));
+        cut.removeAll(List.of("c"));
+        cut.close();
+
+        // when
+        cut = open();
+
+        // then
+        var contents = cut.readAll(List.of("a", "b", "c"));
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(2, cut.size());
+            Assertions.assertEquals("old", new String(contents[0]));
+            Assertions.assertEquals("new", new String(contents[1]));
+            Assertions.assertNull(contents[2]);
+        });
+    }
+
+    @Test
+    void shouldIgnoreCorruptRecordOnReopening() throws Exception {
+        // given
+        cut = open();
+        cut.write("kept", bytes("content"));
+        var segment = segments().get(0);
+        long end = recordEnd(segment);
+        cut.write("corrupt", bytes("content"));
+        cut.close();
+        try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), end + 20);
+        }
+
+        // when
+        cut = open();
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals("content", new String(cut.read("kept")));
+            Assertions.assertNull(cut.read("corrupt"));
+        });
+    }
+
+    @Test
+    void shouldKeepLiveContentsThroughCompaction() throws Exception {
+        // given
+        cut = open();
+        var files = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            files.add("f" + i);
+        }
+        for (int round = 0; round < 5; round++) {
+            cut.writeAll(files, bytes("round " + round));
+        }
+
+        // when
+        boolean compacted = cut.compact();
+        cut.compact();
+
+        // then
+        var contents = cut.readAll(files);
+        Assertions.assertAll(() -> {
+            Assertions.assertTrue(compacted);
+            Assertions.assertEquals(100, cut.size());
+            for (byte[] content : contents) {
+                Assertions.assertEquals("round 4", new String(content));
+            }
+            Assertions.assertTrue(segments().size() <= 4);
+        });
+    }
+
+    @Test
+    void shouldExportContentsToPlainFiles() throws Exception {
+        // given
+        cut = open();
+        var file = directory.resolve("plain").resolve("file.txt");
+        cut.write(file.toString(), bytes("packed"));
+
+        // when
+        int exported = cut.export();
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(1, exported);
+            Assertions.assertEquals("packed", Files.readString(file));
+            Assertions.assertNull(cut.read(file.toString()));
+            Assertions.assertEquals(1, segments().size());
+        });
+    }
+
+    private PackStore open() throws Exception {
+        var store = new PackStore(true, directory.resolve("pack"), 64, SEGMENT_BYTES, 3600);
+        store.open();
+
+        return store;
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory.resolve("pack"))) {
+            return files.sorted().toList();
+        }
+    }
+
+    /**
+     * Finds the end of the records of a segment, before its zero-filled tail.
+     */
+    private static long recordEnd(Path segment) throws Exception {
+        var bytes = Files.readAllBytes(segment);
+        int position = 0;
+        while (position + 4 <= bytes.length) {
+            int length = ByteBuffer.wrap(bytes, position, 4).getInt();
+            if (length == 0) {
+                break;
+            }
+            position += 8 + length;
+        }
+
+        return position;
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes();
+    }
+}
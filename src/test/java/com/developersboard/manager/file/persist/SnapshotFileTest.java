@@ -0,0 +1,74 @@
+package com.developersboard.manager.file.persist;
+
+import com.developersboard.manager.file.index.TagIndex;
+import com.developersboard.manager.file.index.TagRegistry;
+import com.developersboard.manager.file.lock.FileLockManager;
+import com.developersboard.shared.impl.DefaultTag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class SnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldRestoreIndexFromSnapshot() throws Exception {
+        // given
+        var index = newIndex();
+        index.getTags().register("untagged", DefaultTag::new);
+        index.getTags().register("work", DefaultTag::new);
+        for (int i = 0; i < 100; i++) {
+            index.addFile("f" + i, "untagged");
+        }
+        index.tag("work", index.fileId("f7"));
+        index.untag("untagged", index.fileId("f7"));
+        index.removeFile(index.fileId("f3"));
+        var file = directory.resolve(TagStore.SNAPSHOT_FILE);
+
+        // when
+        SnapshotFile.write(file, 5, index.capture());
+        var contents = SnapshotFile.read(file);
+        var restored = newIndex();
+        restored.restore(contents.image(), DefaultTag::new);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(5, contents.generation());
+            Assertions.assertEquals(99, restored.fileCount());
+            Assertions.assertEquals(index.fileId("f7"), restored.fileId("f7"));
+            Assertions.assertEquals(-1, restored.fileId("f3"));
+            Assertions.assertEquals(1, restored.posting("work").getCardinality());
+            Assertions.assertEquals(98, restored.posting("untagged").getCardinality());
+            Assertions.assertTrue(restored.posting("work").contains(restored.fileId("f7")));
+        });
+    }
+
+    @Test
+    void shouldRejectCorruptSnapshot() throws Exception {
+        // given
+        var index = newIndex();
+        index.getTags().register("untagged", DefaultTag::new);
+        index.addFile("f", "untagged");
+        var file = directory.resolve(TagStore.SNAPSHOT_FILE);
+        SnapshotFile.write(file, 0, index.capture());
+        var bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        // when, then
+        Assertions.assertAll(() -> {
+            Assertions.assertThrows(IOException.class, () -> SnapshotFile.read(file));
+            Assertions.assertNull(SnapshotFile.read(directory.resolve("missing")));
+        });
+    }
+
+    private static TagIndex newIndex() {
+        return new TagIndex(new TagRegistry(), new FileLockManager());
+    }
+}
@@ -0,0 +1,150 @@
+package com.developersboard.manager.file.persist;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+class TagJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReplayRecordsInOrderAcrossRestarts() throws Exception {
+        // given
+        try (var journal = TagJournal.open(directory, 0)) {
+            journal.append(TagJournal.Op.ADD_TAG, List.of("work"));
+            journal.append(TagJournal.Op.TAG_FILES, List.of("work", "a.txt", "b.txt"));
+            journal.sync();
+        }
+        try (var journal = TagJournal.open(directory, 0)) {
+            journal.append(TagJournal.Op.EDIT_TAG, List.of("work", "jobs"));
+        }
+
+        // when
+        var entries = new ArrayList<TagJournal.Entry>();
+        long replayed = TagJournal.replay(directory, 0, entries::add);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(3, replayed);
+            Assertions.assertEquals(List.of(
+                    new TagJournal.Entry(TagJournal.Op.ADD_TAG, List.of("work")),
+                    new TagJournal.Entry(TagJournal.Op.TAG_FILES, List.of("work", "a.txt", "b.txt")),
+                    new TagJournal.Entry(TagJournal.Op.EDIT_TAG, List.of("work", "jobs"))), entries);
+        });
+    }
+
+    @Test
+    void shouldStopReplayAtTornRecord() throws Exception {
+        // given
+        try (var journal = TagJournal.open(directory, 0)) {
+            journal.append(TagJournal.Op.ADD_TAG, List.of("kept"));
+            journal.append(TagJournal.Op.ADD_TAG, List.of("torn"));
+        }
+        var segment = segments().get(0);
+        try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        // when
+        var entries = new ArrayList<TagJournal.Entry>();
+        long replayed = TagJournal.replay(directory, 0, entries::add);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(1, replayed);
+            Assertions.assertEquals(List.of("kept"), entries.get(0).args());
+        });
+    }
+
+    @Test
+    void shouldSkipCorruptRecord() throws Exception {
+        // given
+        try (var journal = TagJournal.open(directory, 0)) {
+            journal.append(TagJournal.Op.DELETE_TAG, List.of("corrupt"));
+        }
+        var segment = segments().get(0);
+        var bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        // when
+        long replayed = TagJournal.replay(directory, 0, entry -> Assertions.fail("Replayed " + entry));
+
+        // then
+        Assertions.assertEquals(0, replayed);
+    }
+
+    @Test
+    void shouldDropSegmentsCoveredBySnapshot() throws Exception {
+        // given
+        var entries = new ArrayList<TagJournal.Entry>();
+        long generation;
+        try (var journal = TagJournal.open(directory, 0)) {
+            journal.append(TagJournal.Op.ADD_TAG, List.of("old"));
+            generation = journal.rotate();
+            journal.append(TagJournal.Op.ADD_TAG, List.of("new"));
+
+            // when
+            journal.deleteBefore(generation);
+        }
+        long replayed = TagJournal.replay(directory, generation, entries::add);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(1, generation);
+            Assertions.assertEquals(1, segments().size());
+            Assertions.assertEquals(1, replayed);
+            Assertions.assertEquals(List.of("new"), entries.get(0).args());
+        });
+    }
+
+    @Test
+    void shouldCommitConcurrentSyncsTogether() throws Exception {
+        // given
+        int threadCount = 8;
+        int perThread = 200;
+        var threads = new ArrayList<Thread>();
+        try (var journal = TagJournal.open(directory, 0)) {
+            for (int t = 0; t < threadCount; t++) {
+                var tag = "t" + t;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        journal.append(TagJournal.Op.TAG_FILES, List.of(tag, "f" + i));
+                        try {
+                            journal.sync();
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }));
+            }
+
+            // when
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        // then
+        long replayed = TagJournal.replay(directory, 0, entry -> {
+        });
+        Assertions.assertEquals((long) threadCount * perThread, replayed);
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.developersboard.manager.file.version;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+class ContentVersionsTest {
+
+    private final ContentVersions cut = new ContentVersions(true);
+
+    @Test
+    void shouldNotKeepVersionsWithoutReaders() {
+        // given
+        var commit = cut.prepare(RoaringBitmap.bitmapOf(1, 2));
+
+        // when
+        commit.finish("new", new String[0]);
+
+        // then
+        try (var snapshot = cut.open()) {
+            Assertions.assertAll(() -> {
+                Assertions.assertEquals(0, commit.getMissing().getCardinality());
+                Assertions.assertNull(snapshot.get(1));
+                Assertions.assertEquals(0, cut.getChainCount());
+            });
+        }
+    }
+
+    @Test
+    void shouldKeepPreviousContentForOpenReaders() {
+        // given
+        var before = cut.open();
+        var commit = cut.prepare(RoaringBitmap.bitmapOf(1, 2));
+
+        // when
+        commit.finish("new", new String[]{"old1", "old2"});
+        var after = cut.open();
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(RoaringBitmap.bitmapOf(1, 2), commit.getMissing());
+            Assertions.assertEquals("old1", before.get(1));
+            Assertions.assertEquals("old2", before.get(2));
+            Assertions.assertEquals("new", after.get(1));
+            Assertions.assertNull(before.get(3));
+        });
+        before.close();
+        after.close();
+    }
+
+    @Test
+    void shouldCollectVersionsOnceReadersClose() {
+        // given
+        var first = cut.open();
+        cut.prepare(RoaringBitmap.bitmapOf(1)).finish("a", new String[]{"base"});
+        var second = cut.open();
+        var commit = cut.prepare(RoaringBitmap.bitmapOf(1));
+        commit.finish("b", new String[0]);
+
+        // when
+        first.close();
+        int afterFirst = cut.getChainCount();
+        var seen = second.get(1);
+        var third = cut.open();
+        second.close();
+        third.close();
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(0, commit.getMissing().getCardinality());
+            Assertions.assertEquals("a", seen);
+            Assertions.assertEquals(1, afterFirst);
+            Assertions.assertEquals(0, cut.getChainCount());
+        });
+    }
+
+    @Test
+    void shouldKeepVersionsWhenCommitFails() {
+        // given
+        var reader = cut.open();
+        var commit = cut.prepare(RoaringBitmap.bitmapOf(1));
+        long generation = cut.getGeneration();
+
+        // when
+        commit.finish(null, null);
+
+        // then
+        Assertions.assertAll(() -> {
+            Assertions.assertEquals(generation, cut.getGeneration());
+            Assertions.assertNull(reader.get(1));
+        });
+        reader.close();
+    }
+}
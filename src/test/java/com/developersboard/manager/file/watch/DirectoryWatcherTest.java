@@ -0,0 +1,85 @@
+package com.developersboard.manager.file.watch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class DirectoryWatcherTest {
+
+    @TempDir
+    Path root;
+
+    private final LinkedBlockingQueue<Set<Path>> batches = new LinkedBlockingQueue<>();
+    private DirectoryWatcher watcher;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        watcher.close();
+    }
+
+    @Test
+    void shouldBatchStormOfCreations() throws Exception {
+        // given
+        start(300, 5000);
+        var expected = new HashSet<Path>();
+
+        // when
+        for (int i = 0; i < 200; i++) {
+            expected.add(Files.writeString(root.resolve("f" + i), "x"));
+        }
+
+        // then every file is reported, in far fewer batches than events
+        var seen = new HashSet<Path>();
+        int count = 0;
+        while (!seen.containsAll(expected)) {
+            var batch = batches.poll(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(batch);
+            seen.addAll(batch);
+            count++;
+        }
+        Assertions.assertTrue(count <= 3);
+    }
+
+    @Test
+    void shouldReportFilesOfNewDirectoriesAndDeletions() throws Exception {
+        // given
+        var existing = Files.writeString(root.resolve("old"), "x");
+        start(100, 1000);
+
+        // when
+        var directory = Files.createDirectory(root.resolve("sub"));
+        var nested = Files.writeString(directory.resolve("new"), "x");
+        Files.delete(existing);
+
+        // then
+        var seen = new HashSet<Path>();
+        while (!seen.contains(nested) || !seen.contains(existing)) {
+            var batch = batches.poll(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(batch);
+            seen.addAll(batch);
+        }
+    }
+
+    private void start(long quietMillis, long maxDelayMillis) throws Exception {
+        watcher = new DirectoryWatcher(root, new DirectoryWatcher.Listener() {
+            @Override
+            public void onChanges(Set<Path> paths) {
+                batches.add(paths);
+            }
+
+            @Override
+            public void onOverflow() {
+                Assertions.fail("No event should be lost");
+            }
+        }, quietMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+        watcher.start();
+    }
+}